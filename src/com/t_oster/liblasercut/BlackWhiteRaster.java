@@ -19,12 +19,13 @@
 package com.t_oster.liblasercut;
 
 import com.t_oster.liblasercut.dithering.*;
+import java.nio.LongBuffer;
 
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class BlackWhiteRaster extends TimeIntensiveOperation implements GreyscaleRaster
+public class BlackWhiteRaster extends TimeIntensiveOperation implements ScanlineRaster
 {
 
   public static enum DitherAlgorithm
@@ -37,7 +38,13 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
   }
   private int width;
   private int height;
-  private byte[][] raster;
+  /**
+   * the pixels, row by row. Each row starts at a new word and every long
+   * holds 64 pixels, the leftmost pixel in the most significant bit.
+   * 1=black, 0=white. Bits beyond the width are always 0.
+   */
+  private long[] raster;
+  private int wordsPerRow;
 
   public static DitheringAlgorithm getDitheringAlgorithm(DitherAlgorithm alg)
   {
@@ -64,9 +71,7 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
     {
       this.addProgressListener(listener);
     }
-    this.width = src.getWidth();
-    this.height = src.getHeight();
-    raster = new byte[(src.getWidth() + 7) / 8][src.getHeight()];
+    this.init(src.getWidth(), src.getHeight());
     if (listener != null)
     {
       alg.addProgressListener(listener);
@@ -89,32 +94,72 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
     this(src, alg, null);
   }
 
+  /**
+   * Creates a raster from bytes where every bit represents one pixel,
+   * see getByte(int, int). The array is indexed by [x][y] and copied.
+   */
   public BlackWhiteRaster(int width, int height, byte[][] raster)
   {
-    this.width = width;
-    this.height = height;
-    this.raster = raster;
+    this.init(width, height);
+    int bytes = Math.min(raster.length, (width + 7) >>> 3);
+    for (int bx = 0; bx < bytes; bx++)
+    {
+      long mask = byteMask(bx);
+      for (int y = 0; y < height; y++)
+      {
+        this.raster[y * wordsPerRow + (bx >>> 3)] |= ((raster[bx][y] & mask)) << (56 - 8 * (bx & 7));
+      }
+    }
   }
 
   public BlackWhiteRaster(int width, int height)
+  {
+    this.init(width, height);
+  }
+
+  private void init(int width, int height)
   {
     this.width = width;
     this.height = height;
-    this.raster = new byte[(width + 7) / 8][height];
+    this.wordsPerRow = (width + 63) >>> 6;
+    this.raster = new long[wordsPerRow * height];
+  }
+
+  /**
+   * mask for the bits of the bx-th byte of a row, which are inside the width
+   */
+  private int byteMask(int bx)
+  {
+    int valid = width - 8 * bx;
+    return valid >= 8 ? 0xFF : valid <= 0 ? 0 : (0xFF << (8 - valid)) & 0xFF;
+  }
+
+  /**
+   * mask for the bits of the last word of a row, which are inside the width
+   */
+  private long lastWordMask()
+  {
+    int valid = width & 63;
+    return valid == 0 ? -1L : -1L << (64 - valid);
   }
 
   public boolean isBlack(int x, int y)
   {
-    int bx = x / 8;
-    int ix = 7 - (x % 8);
-    return ((raster[bx][y] & 0xFF) & (int) Math.pow(2,ix)) != 0;
+    return (raster[y * wordsPerRow + (x >>> 6)] << (x & 63)) < 0;
   }
 
   public void setBlack(int x, int y, boolean black)
   {
-    int bx = x / 8;
-    int ix = 7 - (x % 8);
-    raster[bx][y] = (byte) (((raster[bx][y] & 0xFF) & ~((int) Math.pow(2,ix))) | (black ? (int) Math.pow(2,ix) : 0 ));
+    int index = y * wordsPerRow + (x >>> 6);
+    long mask = Long.MIN_VALUE >>> (x & 63);
+    if (black)
+    {
+      raster[index] |= mask;
+    }
+    else
+    {
+      raster[index] &= ~mask;
+    }
   }
 
   /**
@@ -127,9 +172,145 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
    */
   public byte getByte(int x, int y)
   {
-    return raster[x][y];
+    return (byte) (raster[y * wordsPerRow + (x >>> 3)] >>> (56 - 8 * (x & 7)));
   }
-  
+
+  /**
+   * Copies one row as bytes (see getByte(int, int)) into dst,
+   * which has to hold at least (getWidth() + 7) / 8 bytes.
+   * @param y
+   * @param dst
+   * @return dst
+   */
+  public byte[] getRowBytes(int y, byte[] dst)
+  {
+    int start = y * wordsPerRow;
+    int bytes = (width + 7) >>> 3;
+    for (int bx = 0; bx < bytes; bx++)
+    {
+      dst[bx] = (byte) (raster[start + (bx >>> 3)] >>> (56 - 8 * (bx & 7)));
+    }
+    return dst;
+  }
+
+  /**
+   * @return the number of longs, which represent one row
+   */
+  public int getWordsPerRow()
+  {
+    return wordsPerRow;
+  }
+
+  /**
+   * Copies one row into dst, which has to hold at least getWordsPerRow()
+   * longs. Each long holds 64 pixels, the leftmost pixel in the most
+   * significant bit, 1=black.
+   * @param y
+   * @param dst
+   * @return dst
+   */
+  public long[] getRowWords(int y, long[] dst)
+  {
+    System.arraycopy(raster, y * wordsPerRow, dst, 0, wordsPerRow);
+    return dst;
+  }
+
+  /**
+   * Replaces one row by the words in src, see getRowWords(int, long[]).
+   * Bits beyond the width are ignored.
+   * @param y
+   * @param src
+   */
+  public void setRowWords(int y, long[] src)
+  {
+    int start = y * wordsPerRow;
+    System.arraycopy(src, 0, raster, start, wordsPerRow);
+    if (wordsPerRow > 0)
+    {
+      raster[start + wordsPerRow - 1] &= lastWordMask();
+    }
+  }
+
+  /**
+   * Returns a read-only view on the words of one row without copying
+   * them, see getRowWords(int, long[]).
+   * @param y
+   * @return
+   */
+  public LongBuffer getRowView(int y)
+  {
+    return LongBuffer.wrap(raster, y * wordsPerRow, wordsPerRow).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * @param y
+   * @return the number of black pixels in the given row
+   */
+  public int countBlack(int y)
+  {
+    int result = 0;
+    for (int i = y * wordsPerRow; i < (y + 1) * wordsPerRow; i++)
+    {
+      result += Long.bitCount(raster[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @param y
+   * @return the x coordinate of the leftmost black pixel in the given row
+   * or -1 if the row is completely white
+   */
+  public int firstBlack(int y)
+  {
+    return nextBlack(0, y);
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the x coordinate of the first black pixel at or right of x
+   * in the given row or -1 if there is none
+   */
+  public int nextBlack(int x, int y)
+  {
+    if (x >= width)
+    {
+      return -1;
+    }
+    int start = y * wordsPerRow;
+    int w = x >>> 6;
+    long word = raster[start + w] & (-1L >>> (x & 63));
+    while (word == 0)
+    {
+      if (++w == wordsPerRow)
+      {
+        return -1;
+      }
+      word = raster[start + w];
+    }
+    return (w << 6) + Long.numberOfLeadingZeros(word);
+  }
+
+  /**
+   * @param y
+   * @return the x coordinate of the rightmost black pixel in the given row
+   * or -1 if the row is completely white
+   */
+  public int lastBlack(int y)
+  {
+    int start = y * wordsPerRow;
+    for (int w = wordsPerRow - 1; w >= 0; w--)
+    {
+      long word = raster[start + w];
+      if (word != 0)
+      {
+        return (w << 6) + 63 - Long.numberOfTrailingZeros(word);
+      }
+    }
+    return -1;
+  }
+
   /**
    * Convenience function to pretend this B&W image is greyscale
    * @param x
@@ -146,6 +327,41 @@ public class BlackWhiteRaster extends TimeIntensiveOperation implements Greyscal
     this.setBlack(x, y, color < 128);
   }
 
+  public int[] getRow(int y, int[] dst)
+  {
+    int start = y * wordsPerRow;
+    for (int w = 0; w < wordsPerRow; w++)
+    {
+      long word = raster[start + w];
+      int x = w << 6;
+      int end = Math.min(x + 64, width);
+      for (; x < end; x++, word <<= 1)
+      {
+        dst[x] = word < 0 ? 0 : 255;
+      }
+    }
+    return dst;
+  }
+
+  public void setRow(int y, int[] src)
+  {
+    int start = y * wordsPerRow;
+    for (int w = 0; w < wordsPerRow; w++)
+    {
+      long word = 0;
+      int x = w << 6;
+      int end = Math.min(x + 64, width);
+      for (int bit = 63; x < end; x++, bit--)
+      {
+        if (src[x] < 128)
+        {
+          word |= 1L << bit;
+        }
+      }
+      raster[start + w] = word;
+    }
+  }
+
   public int getWidth()
   {
     return width;
@@ -28,6 +28,9 @@ package com.t_oster.liblasercut;
  * because there are some plattfroms (ie Android) where BufferedImage
  * is not available but other Image classes which can be used.
  *
+ * Implement ScanlineRaster as well, if whole rows can be accessed faster
+ * than single pixels.
+ *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
 public interface GreyscaleRaster
@@ -35,4 +35,28 @@ public abstract class JobPart {
   
   public abstract int getMaxY();
 
+  /**
+   * The point where the head starts working on this part, used to order
+   * the parts of a job. By default the top left corner of the part.
+   */
+  public int getEntryX() {
+    return getMinX();
+  }
+
+  public int getEntryY() {
+    return getMinY();
+  }
+
+  /**
+   * The point where the head stops working on this part.
+   * By default the bottom left corner of the part.
+   */
+  public int getExitX() {
+    return getMinX();
+  }
+
+  public int getExitY() {
+    return getMaxY();
+  }
+
 }
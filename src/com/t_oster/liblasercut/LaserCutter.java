@@ -24,6 +24,8 @@ package com.t_oster.liblasercut;
 
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.vectoroptimizers.CostModel;
+import com.t_oster.liblasercut.vectoroptimizers.DistanceCostModel;
 import java.io.PrintStream;
 
 import java.util.LinkedList;
@@ -167,6 +169,29 @@ public abstract class LaserCutter implements Cloneable, Customizable {
         throw new RuntimeException("Method not implemented");
     }
 
+    /**
+     * Returns a model of the time this cutter needs for moves and setting
+     * changes, which the vector optimizers use to order the paths.
+     * The default only measures the travel distance.
+     * @return 
+     */
+    public CostModel getVectorCostModel() {
+        return new DistanceCostModel();
+    }
+
+    /**
+     * Returns if next can be sent in the same job as previous, which
+     * comes directly before it. Drivers which have to split jobs, because
+     * the machine does not support some combinations of parts, override this.
+     * JobPartOptimizer uses it to avoid splits.
+     * @param previous
+     * @param next
+     * @return 
+     */
+    public boolean canCombineJobParts(JobPart previous, JobPart next) {
+        return true;
+    }
+
     public LaserProperty getLaserPropertyForVectorPart() {
         return new PowerSpeedFocusFrequencyProperty();
     }
@@ -101,44 +101,66 @@ public class LaserJob
     return parts;
   }
 
+  /**
+   * Returns a copy of this job, in which every part is moved by the
+   * start-point (in the corresponding resolution) and the start-point
+   * is 0,0. The parts of the copy are views on the parts of this job,
+   * so this is O(number of parts) and neither this job nor its parts
+   * are modified. Thus one job can be sent with different start-points.
+   * If the start-point is already 0,0, this job itself is returned.
+   */
+  public LaserJob getTranslatedJob()
+  {
+    if (startX == 0 && startY == 0)
+    {
+      return this;
+    }
+    LaserJob result = new LaserJob(title, name, user);
+    for (JobPart p : this.getParts())
+    {
+      result.addPart(translated(p));
+    }
+    return result;
+  }
+
   /**
    * This mehtod will substract the start-point coordinates
    * from all parts of the job (in the corresponding resolution)
    * and then set the start-point to 0,0. This way multiple calls
    * to this method won't result in corrupted jobs.
+   * The parts are replaced by translated views, the original
+   * part objects are not modified.
+   * @see #getTranslatedJob()
    */
   public void applyStartPoint()
   {
     if (startX != 0 || startY != 0)
     {
-      for (JobPart p : this.getParts())
+      for (int i = 0; i < parts.size(); i++)
       {
-        if (p instanceof VectorPart)
-        {
-          for (VectorCommand c : ((VectorPart) p).getCommandList())
-          {
-            if (c.getType().equals(VectorCommand.CmdType.LINETO) || c.getType().equals(VectorCommand.CmdType.MOVETO))
-            {
-              c.setX((int) (c.getX() - Util.mm2inch(startX)*p.getDPI()));
-              c.setY((int) (c.getY() - Util.mm2inch(startY)*p.getDPI()));
-            }
-          }
-        }
-        else if (p instanceof RasterPart)
-        {
-          RasterPart rp = (RasterPart) p;
-          rp.start.x -= (int) (Util.mm2inch(startX)*p.getDPI());
-          rp.start.y -= (int) (Util.mm2inch(startY)*p.getDPI());
-        }
-        else if (p instanceof Raster3dPart)
-        {
-          Raster3dPart rp = (Raster3dPart) p;
-          rp.start.x -= (int) (Util.mm2inch(startX)*p.getDPI());
-          rp.start.y -= (int) (Util.mm2inch(startY)*p.getDPI());
-        }
+        parts.set(i, translated(parts.get(i)));
       }
       startX = 0;
       startY = 0;
     }
   }
+
+  private JobPart translated(JobPart p)
+  {
+    double dx = Util.mm2inch(startX)*p.getDPI();
+    double dy = Util.mm2inch(startY)*p.getDPI();
+    if (p instanceof VectorPart)
+    {
+      return ((VectorPart) p).translated(-dx, -dy);
+    }
+    else if (p instanceof RasterPart)
+    {
+      return ((RasterPart) p).translated(-(int) dx, -(int) dy);
+    }
+    else if (p instanceof Raster3dPart)
+    {
+      return ((Raster3dPart) p).translated(-(int) dx, -(int) dy);
+    }
+    return p;
+  }
 }
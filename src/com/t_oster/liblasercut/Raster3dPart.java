@@ -31,6 +31,8 @@ public class Raster3dPart extends RasterizableJobPart
 
   private LaserProperty property = null;
   private double resolution = 500;
+  //reused by getRasterLine
+  private int[] row;
 
   public Raster3dPart(GreyscaleRaster image, LaserProperty laserProperty, Point offset, double resolution)
   {
@@ -40,6 +42,27 @@ public class Raster3dPart extends RasterizableJobPart
     this.start = offset;
   }
 
+  private Raster3dPart(Raster3dPart source, int dx, int dy)
+  {
+    this.image = source.image;
+    this.resolution = source.resolution;
+    this.property = source.property;
+    this.start = new Point(source.start.x + dx, source.start.y + dy);
+    this.cutDirectionleftToRight = source.cutDirectionleftToRight;
+  }
+
+  /**
+   * Returns a copy of this part, which shares the raster with this part
+   * but starts dx,dy pixels further. This part is not modified.
+   * @param dx
+   * @param dy
+   * @return
+   */
+  public Raster3dPart translated(int dx, int dy)
+  {
+    return new Raster3dPart(this, dx, dy);
+  }
+
   @Override
   public double getDPI()
   {
@@ -88,18 +111,77 @@ public class Raster3dPart extends RasterizableJobPart
    * @param raster
    * @param line
    * @return
+   * @deprecated use getRasterLine(int, byte[], int[])
    */
+  @Deprecated
   public List<Byte> getRasterLine(int line)
   {
+    byte[] bytes = new byte[getRasterWidth()];
+    getRasterLine(line, bytes, new int[2]);
     List<Byte> result = new LinkedList<Byte>();
-    for (int x = 0; x < image.getWidth(); x++)
+    for (byte b : bytes)
     {
-      //TOTEST: Black white (byte converssion)
-      result.add((byte) image.getGreyScale(x, line));
+      result.add(b);
     }
     return result;
   }
 
+  /**
+   * Writes one line of the given rasterpart into buffer, which has to hold
+   * at least getRasterWidth() bytes. Every byte represents one pixel
+   * and the value corresponds to the raster power.
+   * The bounds of the non-zero part of the line are stored in bounds:
+   * bounds[0] is the index of the first non-zero byte and bounds[1]
+   * the index after the last non-zero byte. Both are 0 if the line is empty.
+   *
+   * @param line
+   * @param buffer
+   * @param bounds array of at least 2 ints
+   * @return the number of bytes between the bounds
+   */
+  public int getRasterLine(int line, byte[] buffer, int[] bounds)
+  {
+    return fillLine(line, buffer, bounds, false);
+  }
+
+  /**
+   * Like getRasterLine(int, byte[], int[]), but every byte is 255 minus
+   * the raster power
+   */
+  public int getInvertedRasterLine(int line, byte[] buffer, int[] bounds)
+  {
+    return fillLine(line, buffer, bounds, true);
+  }
+
+  private int fillLine(int line, byte[] buffer, int[] bounds, boolean inverted)
+  {
+    int width = getRasterWidth();
+    if (row == null || row.length != width)
+    {
+      row = new int[width];
+    }
+    ScanlineRasters.getRow(image, line, row);
+    int first = -1;
+    int last = -1;
+    for (int x = 0; x < width; x++)
+    {
+      //TOTEST: Black white (byte converssion)
+      byte b = (byte) (inverted ? 255 - row[x] : row[x]);
+      buffer[x] = b;
+      if (b != 0)
+      {
+        if (first < 0)
+        {
+          first = x;
+        }
+        last = x;
+      }
+    }
+    bounds[0] = first < 0 ? 0 : first;
+    bounds[1] = last + 1;
+    return bounds[1] - bounds[0];
+  }
+
   public int getRasterWidth()
   {
     return this.image.getWidth();
@@ -115,13 +197,18 @@ public class Raster3dPart extends RasterizableJobPart
     return this.property;
   }
 
+  /**
+   * @deprecated use getInvertedRasterLine(int, byte[], int[])
+   */
+  @Deprecated
   public List<Byte> getInvertedRasterLine(int line)
   {
+    byte[] bytes = new byte[getRasterWidth()];
+    getInvertedRasterLine(line, bytes, new int[2]);
     List<Byte> result = new LinkedList<Byte>();
-    for (int x = 0; x < image.getWidth(); x++)
+    for (byte b : bytes)
     {
-      //TOTEST: Black white (byte converssion)
-      result.add((byte) (255 - image.getGreyScale(x, line)));
+      result.add(b);
     }
     return result;
   }
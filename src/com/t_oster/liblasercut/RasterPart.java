@@ -48,6 +48,28 @@ public class RasterPart extends RasterizableJobPart
     }
   }
 
+  private RasterPart(RasterPart source, int dx, int dy)
+  {
+    this.image = source.image;
+    this.start = new Point(source.start.x + dx, source.start.y + dy);
+    this.resolution = source.resolution;
+    this.blackPixelProperty = source.blackPixelProperty;
+    this.whitePixelProperty = source.whitePixelProperty;
+    this.cutDirectionleftToRight = source.cutDirectionleftToRight;
+  }
+
+  /**
+   * Returns a copy of this part, which shares the raster with this part
+   * but starts dx,dy pixels further. This part is not modified.
+   * @param dx
+   * @param dy
+   * @return
+   */
+  public RasterPart translated(int dx, int dy)
+  {
+    return new RasterPart(this, dx, dy);
+  }
+
   @Override
   public double getDPI()
   {
@@ -94,17 +116,92 @@ public class RasterPart extends RasterizableJobPart
    * 1 when black or 0 when white
    * @param line
    * @return
+   * @deprecated use getRasterLine(int, byte[], int[])
    */
+  @Deprecated
   public List<Byte> getRasterLine(int line)
   {
+    byte[] bytes = ((BlackWhiteRaster) image).getRowBytes(line, new byte[getRasterLineLength()]);
     List<Byte> result = new LinkedList<Byte>();
-    for (int x = 0; x < (image.getWidth() + 7) / 8; x++)
+    for (byte b : bytes)
     {
-      result.add(((BlackWhiteRaster) image).getByte(x, line));
+      result.add(b);
     }
     return result;
   }
 
+  /**
+   * @return the number of bytes in one raster line, each
+   * representing 8 pixels
+   */
+  public int getRasterLineLength()
+  {
+    return (image.getWidth() + 7) / 8;
+  }
+
+  /**
+   * Writes one line of the given rasterpart into buffer, which has to
+   * hold at least getRasterLineLength() bytes.
+   * Every byte represents 8 pixel, the MSB being the leftmost one,
+   * and a bit is 1 when black or 0 when white.
+   * The bounds of the non-empty part of the line are stored in bounds:
+   * bounds[0] is the index of the first non-zero byte and bounds[1]
+   * the index after the last non-zero byte. Both are 0 if the line is empty.
+   * @param line
+   * @param buffer
+   * @param bounds array of at least 2 ints
+   * @return the number of bytes between the bounds
+   */
+  public int getRasterLine(int line, byte[] buffer, int[] bounds)
+  {
+    BlackWhiteRaster raster = (BlackWhiteRaster) image;
+    raster.getRowBytes(line, buffer);
+    int first = raster.firstBlack(line);
+    if (first < 0)
+    {
+      bounds[0] = 0;
+      bounds[1] = 0;
+    }
+    else
+    {
+      bounds[0] = first >> 3;
+      bounds[1] = (raster.lastBlack(line) >> 3) + 1;
+    }
+    return bounds[1] - bounds[0];
+  }
+
+  /**
+   * Writes one line of the given rasterpart into buffer, which has to
+   * hold at least getRasterWidth() bytes.
+   * Every byte represents one pixel and is (byte) 255 when black
+   * or 0 when white.
+   * bounds[0] is set to the first and bounds[1] to the pixel after the last
+   * black pixel. Both are 0 if the line is empty.
+   * @param line
+   * @param buffer
+   * @param bounds array of at least 2 ints
+   * @return the number of pixels between the bounds
+   */
+  public int getRasterLinePixels(int line, byte[] buffer, int[] bounds)
+  {
+    BlackWhiteRaster raster = (BlackWhiteRaster) image;
+    int first = raster.firstBlack(line);
+    if (first < 0)
+    {
+      bounds[0] = 0;
+      bounds[1] = 0;
+      return 0;
+    }
+    int last = raster.lastBlack(line);
+    for (int x = first; x <= last; x++)
+    {
+      buffer[x] = raster.isBlack(x, line) ? (byte) 255 : 0;
+    }
+    bounds[0] = first;
+    bounds[1] = last + 1;
+    return bounds[1] - bounds[0];
+  }
+
   public boolean isBlack(int x, int y)
   {
     return ((BlackWhiteRaster) image).isBlack(x, y);
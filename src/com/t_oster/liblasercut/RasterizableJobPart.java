@@ -19,9 +19,16 @@
 package com.t_oster.liblasercut;
 
 import com.t_oster.liblasercut.platform.Point;
+import java.util.Arrays;
 
 /**
  * Common functions useful when rasterizing an image.
+ *
+ * The scanning methods work on a run-length index of one row, which is
+ * computed on first access and kept until another row is queried. Rows are
+ * usually processed one after another, so every row is read only once and
+ * all queries are O(1) or O(log runs). The raster must not be changed
+ * after it has been scanned.
  * @author Michael Adams <zap@michaeladams.org>
  */
 abstract public class RasterizableJobPart extends JobPart
@@ -29,6 +36,63 @@ abstract public class RasterizableJobPart extends JobPart
   protected GreyscaleRaster image;
   protected Point start = null;
   protected boolean cutDirectionleftToRight = true;
+
+  //run-length index of the row indexedRow of indexedImage
+  private GreyscaleRaster indexedImage = null;
+  private int indexedRow = -1;
+  private int[] rowValues;
+  //runStarts[i] is the x coordinate where the i-th run of equal colors starts
+  private int[] runStarts;
+  private int runCount;
+  private int leftMost;
+  private int rightMost;
+
+  /**
+   * Makes the run-length index represent row y
+   */
+  private void indexRow(int y)
+  {
+    if (y == indexedRow && image == indexedImage)
+    {
+      return;
+    }
+    int width = getRasterWidth();
+    if (rowValues == null || rowValues.length != width)
+    {
+      rowValues = new int[width];
+      runStarts = new int[width];
+    }
+    ScanlineRasters.getRow(image, y, rowValues);
+    runCount = 0;
+    leftMost = width;
+    rightMost = 0;
+    for (int x = 0; x < width; x++)
+    {
+      if (x == 0 || rowValues[x] != rowValues[x - 1])
+      {
+        runStarts[runCount++] = x;
+      }
+      if (rowValues[x] < 255)
+      {
+        if (leftMost == width)
+        {
+          leftMost = x;
+        }
+        rightMost = x;
+      }
+    }
+    indexedImage = image;
+    indexedRow = y;
+  }
+
+  /**
+   * @return the index of the run containing x in the indexed row
+   */
+  private int runAt(int x)
+  {
+    int i = Arrays.binarySearch(runStarts, 0, runCount, x);
+    return i >= 0 ? i : -i - 2;
+  }
   
   /**
    * The initial laser settings to start a rasterization job with.
@@ -59,10 +123,8 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public boolean lineIsBlank(int y)
   {
-    for (int x=0; x<getRasterWidth(); x++)
-      if (image.getGreyScale(x, y) < 255)
-        return false;
-    return true;
+    indexRow(y);
+    return leftMost == getRasterWidth();
   }
   
   /**
@@ -123,10 +185,8 @@ abstract public class RasterizableJobPart extends JobPart
    */
   protected int leftMostNonWhitePixel(int y)
   {
-    for (int x=0; x<getRasterWidth(); x++)
-      if (image.getGreyScale(x, y) < 255)
-        return x;
-    return getRasterWidth();
+    indexRow(y);
+    return leftMost;
   }
   
   /**
@@ -149,10 +209,8 @@ abstract public class RasterizableJobPart extends JobPart
    */
   protected int rightMostNonWhitePixel(int y)
   {
-    for (int x=getRasterWidth()-1; x >= 0; x--)
-      if (image.getGreyScale(x, y) < 255)
-        return x;
-    return 0;
+    indexRow(y);
+    return rightMost;
   }
   
   /**
@@ -177,12 +235,11 @@ abstract public class RasterizableJobPart extends JobPart
    */
   protected int nextColorChangeHeadingRight(int x, int y)
   {
-    int color = image.getGreyScale(x, y);
-    for (int i=x; i<getRasterWidth(); i++)
-      if (image.getGreyScale(i, y) != color)
-        return i;
-    // rest of line is the same color, so next colour change is past end of line
-    return getRasterWidth();
+    indexRow(y);
+    int run = runAt(x);
+    // if x is in the last run, the rest of line is the same color,
+    // so next colour change is past end of line
+    return run + 1 < runCount ? runStarts[run + 1] : getRasterWidth();
   }
   
   /**
@@ -193,12 +250,10 @@ abstract public class RasterizableJobPart extends JobPart
    */
   protected int nextColorChangeHeadingLeft(int x, int y)
   {
-    int color = image.getGreyScale(x, y);
-    for (int i=x; i>=0; i--)
-      if (image.getGreyScale(i, y) != color)
-        return i;
-    // rest of line is the same color, so next colour change is past the beginning of line
-    return -1;
+    indexRow(y);
+    // the pixel left of the start of x's run has a different color.
+    // For the first run this is -1, past the beginning of line
+    return runStarts[runAt(x)] - 1;
   }
   
   /**
@@ -221,7 +276,8 @@ abstract public class RasterizableJobPart extends JobPart
    */
   public FloatPowerSpeedFocusProperty getPowerSpeedFocusPropertyForPixel(int x, int y)
   {
-    return getPowerSpeedFocusPropertyForColor(image.getGreyScale(x, y));
+    indexRow(y);
+    return getPowerSpeedFocusPropertyForColor(rowValues[x]);
   }
   
   /**
@@ -0,0 +1,46 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * A GreyscaleRaster, which can read and write whole rows at once.
+ * Use ScanlineRasters to access the rows of any GreyscaleRaster, it
+ * falls back to pixel access for rasters not implementing this interface.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public interface ScanlineRaster extends GreyscaleRaster
+{
+
+  /**
+   * Copies the grey values (0=black...255=white) of row y into
+   * dst[0] ... dst[getWidth()-1]
+   * @param y
+   * @param dst
+   * @return dst
+   */
+  public int[] getRow(int y, int[] dst);
+
+  /**
+   * Sets the grey values of row y to src[0] ... src[getWidth()-1]
+   * @param y
+   * @param src
+   */
+  public void setRow(int y, int[] src);
+}
@@ -0,0 +1,75 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+/**
+ * Row access for any GreyscaleRaster. Rasters implementing ScanlineRaster
+ * are accessed through their own getRow/setRow methods, all others pixel
+ * by pixel.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public class ScanlineRasters
+{
+
+  private ScanlineRasters()
+  {
+  }
+
+  /**
+   * Copies the grey values of row y into dst[0] ... dst[getWidth()-1]
+   * @param src
+   * @param y
+   * @param dst
+   * @return dst
+   */
+  public static int[] getRow(GreyscaleRaster src, int y, int[] dst)
+  {
+    if (src instanceof ScanlineRaster)
+    {
+      return ((ScanlineRaster) src).getRow(y, dst);
+    }
+    int width = src.getWidth();
+    for (int x = 0; x < width; x++)
+    {
+      dst[x] = src.getGreyScale(x, y);
+    }
+    return dst;
+  }
+
+  /**
+   * Sets the grey values of row y to src[0] ... src[getWidth()-1]
+   * @param dst
+   * @param y
+   * @param src
+   */
+  public static void setRow(GreyscaleRaster dst, int y, int[] src)
+  {
+    if (dst instanceof ScanlineRaster)
+    {
+      ((ScanlineRaster) dst).setRow(y, src);
+      return;
+    }
+    int width = dst.getWidth();
+    for (int x = 0; x < width; x++)
+    {
+      dst.setGreyScale(x, y, src[x]);
+    }
+  }
+}
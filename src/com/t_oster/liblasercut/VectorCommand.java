@@ -58,7 +58,15 @@ public class VectorCommand
 
     SETPROPERTY,
     MOVETO,
-    LINETO
+    LINETO,
+    /**
+     * a circular arc, see VectorPart.arcto(double, double, double)
+     */
+    ARCTO,
+    /**
+     * a cubic Bezier curve, see VectorPart.curveto(int, int, int, int, int, int)
+     */
+    CURVETO
   }
   private CmdType type;
   private int[] operands;
@@ -0,0 +1,48 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.IOException;
+
+/**
+ * Receives the commands of a VectorPart one by one, see
+ * VectorPart.accept(VectorCommandVisitor). Coordinates are handed out as
+ * primitives in pixels of the part's resolution, so walking a part this
+ * way does not allocate anything per command.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public interface VectorCommandVisitor
+{
+
+  /**
+   * Called for every SETPROPERTY command
+   */
+  void setProperty(LaserProperty p) throws IOException;
+
+  /**
+   * Called for every MOVETO command
+   */
+  void moveto(int x, int y) throws IOException;
+
+  /**
+   * Called for every LINETO command
+   */
+  void lineto(int x, int y) throws IOException;
+}
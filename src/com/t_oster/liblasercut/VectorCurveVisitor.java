@@ -0,0 +1,50 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.IOException;
+
+/**
+ * A VectorCommandVisitor for drivers which can cut curves natively.
+ * VectorPart.accept(VectorCommandVisitor) hands ARCTO and CURVETO commands
+ * to these methods instead of flattening them to lines.
+ * The curves start at the end point of the previous command.
+ *
+ * @author Thomas Oster <thomas.oster@rwth-aachen.de>
+ */
+public interface VectorCurveVisitor extends VectorCommandVisitor
+{
+
+  /**
+   * Called for every ARCTO command.
+   * @param x the end point of the arc, rounded to pixels
+   * @param y
+   * @param centerX the center of the arc
+   * @param centerY
+   * @param sweep the angle of the arc in radians. Positive angles turn
+   * from the x axis towards the y axis.
+   */
+  void arcto(int x, int y, double centerX, double centerY, double sweep) throws IOException;
+
+  /**
+   * Called for every CURVETO command with the two control points
+   * and the end point of a cubic Bezier curve
+   */
+  void curveto(int c1x, int c1y, int c2x, int c2y, int x, int y) throws IOException;
+}
@@ -18,23 +18,65 @@
  **/
 package com.t_oster.liblasercut;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
+ * A VectorPart is a list of SETPROPERTY, MOVETO, LINETO, ARCTO and
+ * CURVETO commands.
+ *
+ * The commands are stored in a packed columnar form: one opcode byte
+ * and two coordinate ints per command. For SETPROPERTY commands the first
+ * coordinate slot holds the index of the property in the property table.
+ * Use getCommandCount() together with getCommandType(int), getX(int),
+ * getY(int) and getProperty(int) to walk the commands without allocating
+ * a VectorCommand per entry, or pass a VectorCommandVisitor to
+ * accept(VectorCommandVisitor).
+ *
+ * Arcs and Bezier curves are kept as single commands, whose parameters
+ * are stored in a separate table. Drivers which can not cut curves get
+ * them as lines: accept(VectorCommandVisitor) flattens them unless the
+ * visitor is a VectorCurveVisitor, and flattened() returns a copy with
+ * lines only, for drivers walking the commands by index.
+ *
+ * translated(double, double) returns a view of a part which shares the
+ * command storage and adds the offset on every read, so moving a part
+ * is O(1) and the original part stays unchanged.
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
 public class VectorPart extends JobPart
 {
 
+  private static final VectorCommand.CmdType[] TYPES = VectorCommand.CmdType.values();
+  private static final int INITIAL_CAPACITY = 16;
+  /**
+   * The maximal distance (in pixels) of the lines from the curves they
+   * replace, when curves are flattened for drivers without curve support.
+   */
+  public static final double DEFAULT_FLATNESS = 0.5;
+
   private LaserProperty currentCuttingProperty;
   private int maxX;
   private int maxY;
   private int minX;
   private int minY;
   private double resolution = 500;
-  private List<VectorCommand> commands;
+  private byte[] types = new byte[INITIAL_CAPACITY];
+  private int[] coords = new int[2 * INITIAL_CAPACITY];
+  private int size = 0;
+  private List<LaserProperty> properties = new ArrayList<LaserProperty>();
+  //4 parameters per ARCTO or CURVETO command and the index of them per command,
+  //both only allocated if there are curves
+  private double[] curves = null;
+  private int[] curveIndex = null;
+  private int curveCount = 0;
+  private double translateX = 0;
+  private double translateY = 0;
+  //true if types, coords and properties may be shared with another part
+  private boolean shared = false;
 
   public VectorPart(LaserProperty initialProperty, double resolution)
   {
@@ -43,10 +85,43 @@ public class VectorPart extends JobPart
       throw new IllegalArgumentException("Initial Property must not be null");
     }
     this.resolution = resolution;
-    commands = new LinkedList<VectorCommand>();
     this.currentCuttingProperty = initialProperty;
-    commands.add(new VectorCommand(VectorCommand.CmdType.SETPROPERTY, initialProperty));
+    addProperty(initialProperty);
+  }
+
+  private VectorPart(VectorPart source, double dx, double dy)
+  {
+    this.resolution = source.resolution;
+    this.currentCuttingProperty = source.currentCuttingProperty;
+    this.types = source.types;
+    this.coords = source.coords;
+    this.size = source.size;
+    this.properties = source.properties;
+    this.curves = source.curves;
+    this.curveIndex = source.curveIndex;
+    this.curveCount = source.curveCount;
+    this.minX = source.minX;
+    this.minY = source.minY;
+    this.maxX = source.maxX;
+    this.maxY = source.maxY;
+    this.translateX = source.translateX + dx;
+    this.translateY = source.translateY + dy;
+    this.shared = true;
+  }
 
+  /**
+   * Returns a view of this part, which is moved by dx,dy pixels.
+   * Every coordinate x of this part reads as (int) (x + dx) in the view.
+   * The view shares the commands with this part, so creating it is O(1)
+   * and this part is not modified. Commands added to the view later on
+   * do not show up in this part and vice versa.
+   * @param dx
+   * @param dy
+   * @return
+   */
+  public VectorPart translated(double dx, double dy)
+  {
+    return new VectorPart(this, dx, dy);
   }
 
   @Override
@@ -63,12 +138,427 @@ public class VectorPart extends JobPart
   public void setProperty(LaserProperty cp)
   {
     this.currentCuttingProperty = cp;
-    commands.add(new VectorCommand(VectorCommand.CmdType.SETPROPERTY, cp));
+    addProperty(cp);
   }
 
+  /**
+   * Creates a VectorCommand object for every command of this part.
+   * Curves are flattened to LINETO commands.
+   * Prefer the indexed accessors (getCommandCount(), getCommandType(int)...)
+   * for large parts, they do not allocate anything.
+   */
   public VectorCommand[] getCommandList()
   {
-    return commands.toArray(new VectorCommand[0]);
+    if (curveCount > 0)
+    {
+      return flattened().getCommandList();
+    }
+    VectorCommand[] result = new VectorCommand[size];
+    for (int i = 0; i < size; i++)
+    {
+      VectorCommand.CmdType type = getCommandType(i);
+      result[i] = type == VectorCommand.CmdType.SETPROPERTY
+        ? new VectorCommand(type, getProperty(i))
+        : new VectorCommand(type, getX(i), getY(i));
+    }
+    return result;
+  }
+
+  /**
+   * @return true if this part contains ARCTO or CURVETO commands
+   */
+  public boolean hasCurves()
+  {
+    return curveCount > 0;
+  }
+
+  /**
+   * @return this part, if it has no curves, otherwise a copy of it
+   * where the curves are replaced by lines, which differ not more than
+   * DEFAULT_FLATNESS pixels from them
+   */
+  public VectorPart flattened()
+  {
+    return flattened(DEFAULT_FLATNESS);
+  }
+
+  /**
+   * @param flatness the maximal distance (in pixels) of the lines from
+   * the curves
+   * @return this part, if it has no curves, otherwise a copy of it
+   * where the curves are replaced by lines
+   */
+  public VectorPart flattened(double flatness)
+  {
+    if (curveCount == 0)
+    {
+      return this;
+    }
+    //the first command is always the initial property
+    final VectorPart result = new VectorPart(getProperty(0), resolution);
+    VectorCommandVisitor copy = new VectorCommandVisitor()
+    {
+      @Override
+      public void setProperty(LaserProperty p)
+      {
+        result.setProperty(p);
+      }
+
+      @Override
+      public void moveto(int x, int y)
+      {
+        result.moveto(x, y);
+      }
+
+      @Override
+      public void lineto(int x, int y)
+      {
+        result.lineto(x, y);
+      }
+    };
+    try
+    {
+      visit(copy, 1, flatness);
+    }
+    catch (IOException e)
+    {
+      //the visitor above does not throw
+      throw new RuntimeException(e);
+    }
+    return result;
+  }
+
+  /**
+   * Hands all commands of this part, in order, to the given visitor
+   * @param v
+   * @throws IOException if the visitor throws one
+   */
+  public void accept(VectorCommandVisitor v) throws IOException
+  {
+    visit(v, 0, DEFAULT_FLATNESS);
+  }
+
+  private void visit(VectorCommandVisitor v, int first, double flatness) throws IOException
+  {
+    VectorCurveVisitor cv = v instanceof VectorCurveVisitor ? (VectorCurveVisitor) v : null;
+    //the current point, where curves start
+    int x = 0;
+    int y = 0;
+    for (int i = first; i < size; i++)
+    {
+      switch (TYPES[types[i]])
+      {
+        case MOVETO:
+          v.moveto(tx(coords[2 * i]), ty(coords[2 * i + 1]));
+          break;
+        case LINETO:
+          v.lineto(tx(coords[2 * i]), ty(coords[2 * i + 1]));
+          break;
+        case ARCTO:
+          if (cv != null)
+          {
+            cv.arcto(tx(coords[2 * i]), ty(coords[2 * i + 1]), getCenterX(i), getCenterY(i), getSweep(i));
+          }
+          else
+          {
+            flattenArc(v, x, y, getCenterX(i), getCenterY(i), getSweep(i), tx(coords[2 * i]), ty(coords[2 * i + 1]), flatness);
+          }
+          break;
+        case CURVETO:
+          if (cv != null)
+          {
+            cv.curveto(getControlX(i, 0), getControlY(i, 0), getControlX(i, 1), getControlY(i, 1), tx(coords[2 * i]), ty(coords[2 * i + 1]));
+          }
+          else
+          {
+            flattenCurve(v, x, y, getControlX(i, 0), getControlY(i, 0), getControlX(i, 1), getControlY(i, 1), tx(coords[2 * i]), ty(coords[2 * i + 1]), flatness);
+          }
+          break;
+        case SETPROPERTY:
+          v.setProperty(properties.get(coords[2 * i]));
+          continue;
+      }
+      x = tx(coords[2 * i]);
+      y = ty(coords[2 * i + 1]);
+    }
+  }
+
+  /**
+   * Hands an arc from (startX, startY) to v as lines, which differ not
+   * more than flatness pixels from it. The last line ends at (endX, endY).
+   */
+  public static void flattenArc(VectorCommandVisitor v, double startX, double startY, double centerX, double centerY, double sweep, int endX, int endY, double flatness) throws IOException
+  {
+    double r = Math.hypot(startX - centerX, startY - centerY);
+    int n = 1;
+    if (r > flatness && flatness > 0)
+    {
+      //the angle of a chord, whose middle is flatness away from the arc
+      double step = 2 * Math.acos(1 - flatness / r);
+      n = (int) Math.ceil(Math.abs(sweep) / step);
+    }
+    double start = Math.atan2(startY - centerY, startX - centerX);
+    for (int k = 1; k < n; k++)
+    {
+      double a = start + sweep * k / n;
+      v.lineto((int) Math.round(centerX + r * Math.cos(a)), (int) Math.round(centerY + r * Math.sin(a)));
+    }
+    v.lineto(endX, endY);
+  }
+
+  /**
+   * Hands a cubic Bezier curve from (startX, startY) to v as lines,
+   * which differ not more than flatness pixels from it
+   */
+  public static void flattenCurve(VectorCommandVisitor v, double startX, double startY, int c1x, int c1y, int c2x, int c2y, int endX, int endY, double flatness) throws IOException
+  {
+    //the distance of a curve from its chords is at most 3/4 of the largest
+    //second difference of the control points divided by the squared number of chords
+    double d = Math.max(Math.hypot(startX - 2 * c1x + c2x, startY - 2 * c1y + c2y),
+      Math.hypot(c1x - 2 * c2x + endX, c1y - 2 * c2y + endY));
+    int n = flatness > 0 ? Math.max(1, (int) Math.ceil(Math.sqrt(0.75 * d / flatness))) : 1;
+    for (int k = 1; k < n; k++)
+    {
+      double t = (double) k / n;
+      double u = 1 - t;
+      double x = u * u * u * startX + 3 * u * u * t * c1x + 3 * u * t * t * c2x + t * t * t * endX;
+      double y = u * u * u * startY + 3 * u * u * t * c1y + 3 * u * t * t * c2y + t * t * t * endY;
+      v.lineto((int) Math.round(x), (int) Math.round(y));
+    }
+    v.lineto(endX, endY);
+  }
+
+  /**
+   * @return the number of commands in this part
+   */
+  public int getCommandCount()
+  {
+    return size;
+  }
+
+  public VectorCommand.CmdType getCommandType(int i)
+  {
+    checkIndex(i);
+    return TYPES[types[i]];
+  }
+
+  /**
+   * @return the x coordinate of the i-th command, which must not be a
+   * SETPROPERTY. For curves this is their end point.
+   */
+  public int getX(int i)
+  {
+    checkCoordinateCommand(i);
+    return tx(coords[2 * i]);
+  }
+
+  /**
+   * @return the y coordinate of the i-th command, which must not be a
+   * SETPROPERTY. For curves this is their end point.
+   */
+  public int getY(int i)
+  {
+    checkCoordinateCommand(i);
+    return ty(coords[2 * i + 1]);
+  }
+
+  /**
+   * @return the property of the i-th command, which must be a SETPROPERTY
+   */
+  public LaserProperty getProperty(int i)
+  {
+    checkIndex(i);
+    if (TYPES[types[i]] != VectorCommand.CmdType.SETPROPERTY)
+    {
+      throw new UnsupportedOperationException("getProperty not supported for " + TYPES[types[i]].toString());
+    }
+    return properties.get(coords[2 * i]);
+  }
+
+  /**
+   * @return the x coordinate of the center of the i-th command,
+   * which must be an ARCTO
+   */
+  public double getCenterX(int i)
+  {
+    return curves[curve(i, VectorCommand.CmdType.ARCTO)] + translateX;
+  }
+
+  /**
+   * @return the y coordinate of the center of the i-th command,
+   * which must be an ARCTO
+   */
+  public double getCenterY(int i)
+  {
+    return curves[curve(i, VectorCommand.CmdType.ARCTO) + 1] + translateY;
+  }
+
+  /**
+   * @return the angle (in radians) of the i-th command, which must be an
+   * ARCTO. Positive angles turn from the x axis towards the y axis.
+   */
+  public double getSweep(int i)
+  {
+    return curves[curve(i, VectorCommand.CmdType.ARCTO) + 2];
+  }
+
+  /**
+   * @param k 0 for the first and 1 for the second control point
+   * @return the x coordinate of a control point of the i-th command,
+   * which must be a CURVETO
+   */
+  public int getControlX(int i, int k)
+  {
+    return tx((int) curves[curve(i, VectorCommand.CmdType.CURVETO) + 2 * k]);
+  }
+
+  /**
+   * @param k 0 for the first and 1 for the second control point
+   * @return the y coordinate of a control point of the i-th command,
+   * which must be a CURVETO
+   */
+  public int getControlY(int i, int k)
+  {
+    return ty((int) curves[curve(i, VectorCommand.CmdType.CURVETO) + 2 * k + 1]);
+  }
+
+  /**
+   * @return the offset of the parameters of the i-th command in curves
+   */
+  private int curve(int i, VectorCommand.CmdType type)
+  {
+    checkIndex(i);
+    if (TYPES[types[i]] != type)
+    {
+      throw new UnsupportedOperationException("Only valid for " + type.toString());
+    }
+    return 4 * curveIndex[i];
+  }
+
+  private int tx(int x)
+  {
+    return translateX == 0 ? x : (int) (x + translateX);
+  }
+
+  private int ty(int y)
+  {
+    return translateY == 0 ? y : (int) (y + translateY);
+  }
+
+  private void checkIndex(int i)
+  {
+    if (i < 0 || i >= size)
+    {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+  }
+
+  private void checkCoordinateCommand(int i)
+  {
+    checkIndex(i);
+    if (TYPES[types[i]] == VectorCommand.CmdType.SETPROPERTY)
+    {
+      throw new UnsupportedOperationException("getX/getY not supported for " + TYPES[types[i]].toString());
+    }
+  }
+
+  /**
+   * Gives this part its own copy of the command storage with the
+   * translation baked in, so it can be appended to.
+   */
+  private void unshare()
+  {
+    int[] own = new int[Math.max(coords.length, 2 * INITIAL_CAPACITY)];
+    for (int i = 0; i < size; i++)
+    {
+      if (TYPES[types[i]] == VectorCommand.CmdType.SETPROPERTY)
+      {
+        own[2 * i] = coords[2 * i];
+      }
+      else
+      {
+        own[2 * i] = tx(coords[2 * i]);
+        own[2 * i + 1] = ty(coords[2 * i + 1]);
+      }
+    }
+    minX = tx(minX);
+    minY = ty(minY);
+    maxX = tx(maxX);
+    maxY = ty(maxY);
+    coords = own;
+    types = Arrays.copyOf(types, own.length / 2);
+    properties = new ArrayList<LaserProperty>(properties);
+    if (curves != null)
+    {
+      double[] ownCurves = Arrays.copyOf(curves, curves.length);
+      for (int i = 0; i < size; i++)
+      {
+        VectorCommand.CmdType type = TYPES[types[i]];
+        int c = 4 * curveIndex[i];
+        if (type == VectorCommand.CmdType.ARCTO)
+        {
+          ownCurves[c] = getCenterX(i);
+          ownCurves[c + 1] = getCenterY(i);
+        }
+        else if (type == VectorCommand.CmdType.CURVETO)
+        {
+          for (int k = 0; k < 2; k++)
+          {
+            ownCurves[c + 2 * k] = getControlX(i, k);
+            ownCurves[c + 2 * k + 1] = getControlY(i, k);
+          }
+        }
+      }
+      curves = ownCurves;
+      curveIndex = Arrays.copyOf(curveIndex, types.length);
+    }
+    translateX = 0;
+    translateY = 0;
+    shared = false;
+  }
+
+  private void ensureCapacity()
+  {
+    if (shared)
+    {
+      unshare();
+    }
+    if (size == types.length)
+    {
+      int capacity = types.length * 2;
+      types = Arrays.copyOf(types, capacity);
+      coords = Arrays.copyOf(coords, 2 * capacity);
+      if (curveIndex != null)
+      {
+        curveIndex = Arrays.copyOf(curveIndex, capacity);
+      }
+    }
+  }
+
+  private void add(VectorCommand.CmdType type, int a, int b)
+  {
+    ensureCapacity();
+    types[size] = (byte) type.ordinal();
+    coords[2 * size] = a;
+    coords[2 * size + 1] = b;
+    size++;
+  }
+
+  private void addProperty(LaserProperty p)
+  {
+    if (shared)
+    {
+      unshare();
+    }
+    //a property set again right away is stored once, others are appended,
+    //so adding stays O(1) even if each call passes a new object
+    int index = properties.size() - 1;
+    if (index < 0 || properties.get(index) != p)
+    {
+      properties.add(p);
+      index++;
+    }
+    add(VectorCommand.CmdType.SETPROPERTY, index, 0);
   }
 
   private void checkMin(int x, int y)
@@ -97,39 +587,186 @@ public class VectorPart extends JobPart
 
   public void moveto(int x, int y)
   {
-    commands.add(new VectorCommand(VectorCommand.CmdType.MOVETO, x, y));
+    add(VectorCommand.CmdType.MOVETO, x, y);
     checkMin(x, y);
     checkMax(x, y);
   }
 
   public void lineto(int x, int y)
   {
-    commands.add(new VectorCommand(VectorCommand.CmdType.LINETO, x, y));
+    add(VectorCommand.CmdType.LINETO, x, y);
+    checkMin(x, y);
+    checkMax(x, y);
+  }
+
+  /**
+   * Adds a circular arc from the current point around (centerX, centerY).
+   * The end point is rounded to pixels.
+   * @param centerX
+   * @param centerY
+   * @param sweep the angle in radians. Positive angles turn from the
+   * x axis towards the y axis. An angle of 2*PI is a full circle.
+   * @throws IllegalArgumentException if the angle is 0 or more than a full
+   * circle, because drivers would cut either nothing or a full circle
+   * (resp. several turns) for it
+   */
+  public void arcto(double centerX, double centerY, double sweep)
+  {
+    if (sweep == 0 || Math.abs(sweep) > 2 * Math.PI || Double.isNaN(sweep))
+    {
+      throw new IllegalArgumentException("The angle of an arc must be in (0, 2*PI] or [-2*PI, 0), but is " + sweep);
+    }
+    int sx = currentX();
+    int sy = currentY();
+    double r = Math.hypot(sx - centerX, sy - centerY);
+    double start = Math.atan2(sy - centerY, sx - centerX);
+    int x = (int) Math.round(centerX + r * Math.cos(start + sweep));
+    int y = (int) Math.round(centerY + r * Math.sin(start + sweep));
+    addCurve(VectorCommand.CmdType.ARCTO, x, y, centerX, centerY, sweep, 0);
+    checkMin(x, y);
+    checkMax(x, y);
+    //the points of the circle farthest left, right, up and down,
+    //if they are on the arc
+    double from = Math.min(start, start + sweep);
+    double to = Math.max(start, start + sweep);
+    for (double a = Math.ceil(from / (Math.PI / 2)) * (Math.PI / 2); a <= to; a += Math.PI / 2)
+    {
+      int ex = (int) Math.round(centerX + r * Math.cos(a));
+      int ey = (int) Math.round(centerY + r * Math.sin(a));
+      checkMin(ex, ey);
+      checkMax(ex, ey);
+    }
+  }
+
+  /**
+   * Adds a cubic Bezier curve from the current point with the control
+   * points (c1x, c1y) and (c2x, c2y) to (x, y)
+   */
+  public void curveto(int c1x, int c1y, int c2x, int c2y, int x, int y)
+  {
+    addCurve(VectorCommand.CmdType.CURVETO, x, y, c1x, c1y, c2x, c2y);
+    //the curve lies within the hull of its control points
+    checkMin(c1x, c1y);
+    checkMax(c1x, c1y);
+    checkMin(c2x, c2y);
+    checkMax(c2x, c2y);
     checkMin(x, y);
     checkMax(x, y);
   }
 
+  private void addCurve(VectorCommand.CmdType type, int x, int y, double p0, double p1, double p2, double p3)
+  {
+    add(type, x, y);
+    if (curves == null)
+    {
+      curves = new double[4 * INITIAL_CAPACITY];
+      curveIndex = new int[types.length];
+    }
+    else if (4 * curveCount + 4 > curves.length)
+    {
+      curves = Arrays.copyOf(curves, 2 * curves.length);
+    }
+    int c = 4 * curveCount;
+    curves[c] = p0;
+    curves[c + 1] = p1;
+    curves[c + 2] = p2;
+    curves[c + 3] = p3;
+    curveIndex[size - 1] = curveCount++;
+  }
+
+  /**
+   * @return the x coordinate of the end of the last command, where
+   * the next curve starts
+   */
+  private int currentX()
+  {
+    for (int i = size - 1; i >= 0; i--)
+    {
+      if (TYPES[types[i]] != VectorCommand.CmdType.SETPROPERTY)
+      {
+        return tx(coords[2 * i]);
+      }
+    }
+    return 0;
+  }
+
+  private int currentY()
+  {
+    for (int i = size - 1; i >= 0; i--)
+    {
+      if (TYPES[types[i]] != VectorCommand.CmdType.SETPROPERTY)
+      {
+        return ty(coords[2 * i + 1]);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the x coordinate of the first command with coordinates
+   */
+  @Override
+  public int getEntryX()
+  {
+    int i = firstCoordinateCommand();
+    return i < 0 ? super.getEntryX() : getX(i);
+  }
+
+  @Override
+  public int getEntryY()
+  {
+    int i = firstCoordinateCommand();
+    return i < 0 ? super.getEntryY() : getY(i);
+  }
+
+  /**
+   * @return the x coordinate of the last command with coordinates
+   */
+  @Override
+  public int getExitX()
+  {
+    return firstCoordinateCommand() < 0 ? super.getExitX() : currentX();
+  }
+
+  @Override
+  public int getExitY()
+  {
+    return firstCoordinateCommand() < 0 ? super.getExitY() : currentY();
+  }
+
+  private int firstCoordinateCommand()
+  {
+    for (int i = 0; i < size; i++)
+    {
+      if (TYPES[types[i]] != VectorCommand.CmdType.SETPROPERTY)
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   @Override
   public int getMinX()
   {
-    return minX;
+    return tx(minX);
   }
 
   @Override
   public int getMaxX()
   {
-    return maxX;
+    return tx(maxX);
   }
 
   @Override
   public int getMinY()
   {
-    return minY;
+    return ty(minY);
   }
 
   @Override
   public int getMaxY()
   {
-    return maxY;
+    return ty(maxY);
   }
 }
@@ -20,6 +20,7 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ScanlineRasters;
 
 /**
  *
@@ -35,12 +36,14 @@ public class Average extends  DitheringAlgorithm
     int pixelcount = 0;
     int width = src.getWidth();
     int height = src.getHeight();
+    int[] row = new int[width];
 
     for (int y = 0; y < height; y++)
     {
+      ScanlineRasters.getRow(src, y, row);
       for (int x = 0; x < width; x++)
       {
-        lumTotal += src.getGreyScale(x, y);
+        lumTotal += row[x];
       }
       setProgress((100 * pixelcount++) / (2 * height));
     }
@@ -48,10 +51,12 @@ public class Average extends  DitheringAlgorithm
     int thresh = (int) (lumTotal / height / width);
     for (int y = 0; y < height; y++)
     {
+      ScanlineRasters.getRow(src, y, row);
       for (int x = 0; x < width; x++)
       {
-        this.setBlack(src, target, x, y, src.getGreyScale(x, y) < thresh);
+        row[x] = row[x] < thresh ? 0 : 255;
       }
+      this.setRow(src, target, y, row);
       setProgress((100 * pixelcount++) / (2 * height));
     }
   }
@@ -21,6 +21,7 @@ package com.t_oster.liblasercut.dithering;
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.Customizable;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ScanlineRasters;
 import com.t_oster.liblasercut.TimeIntensiveOperation;
 import com.t_oster.liblasercut.platform.Util;
 import java.util.Arrays;
@@ -44,6 +45,22 @@ public abstract class DitheringAlgorithm extends TimeIntensiveOperation implemen
     }
   }
 
+  /**
+   * Sets the pixels of row y to the values in row (0=black, 255=white)
+   * on the target or, if target is null, on src.
+   */
+  protected void setRow(GreyscaleRaster src, BlackWhiteRaster target, int y, int[] row)
+  {
+    if (target != null)
+    {
+      target.setRow(y, row);
+    }
+    else
+    {
+      ScanlineRasters.setRow(src, y, row);
+    }
+  }
+
   public BlackWhiteRaster dither(GreyscaleRaster input)
   {
     BlackWhiteRaster target = new BlackWhiteRaster(input.getWidth(), input.getHeight());
@@ -20,6 +20,7 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ScanlineRasters;
 
 /**
  *
@@ -32,51 +33,58 @@ public class FloydSteinberg extends DitheringAlgorithm
   protected void doDithering(GreyscaleRaster src, BlackWhiteRaster target)
   {
     int pixelcount = 0;
+    int width = src.getWidth();
+    int height = src.getHeight();
     /**
      * We have to copy the input image, because we will
      * alter the pixels during dither process and don't want
-     * to destroy the input image
+     * to destroy the input image.
+     * current is the line we dither, next the line below, which
+     * receives a part of the error
      */
-    int[][] input = new int[src.getWidth()][2];
-    for (int x = 0; x < src.getWidth(); x++)
+    int[] current = new int[width];
+    int[] next = new int[width];
+    int[] output = new int[width];
+    if (height > 0)
     {
-      input[x][1] = src.getGreyScale(x, 0);
+      ScanlineRasters.getRow(src, 0, next);
     }
-    for (int y = 0; y < src.getHeight(); y++)
+    for (int y = 0; y < height; y++)
     {
-      // copy lower line to upper line
-      // and read in next line from picture
-      for (int x = 0; x < input.length; x++)
+      // lower line becomes upper line
+      // and the next line is read from picture
+      int[] tmp = current;
+      current = next;
+      next = tmp;
+      if (y + 1 < height)
       {
-        input[x][0] = input[x][1];
-        if (y + 1 < src.getHeight())
-        {
-          input[x][1] = (src.getGreyScale(x, y + 1));
-        }
+        ScanlineRasters.getRow(src, y + 1, next);
       }
 
-      for (int x = 0; x < input.length; x++)
+      for (int x = 0; x < width; x++)
       {
-        this.setBlack(src, target, x, y, input[x][0] <= 127);
-        int error = input[x][0] - ((input[x][0] <= 127) ? 0 : 255);
-        if (x + 1 < input.length)
+        boolean black = current[x] <= 127;
+        output[x] = black ? 0 : 255;
+        int error = current[x] - (black ? 0 : 255);
+        if (x + 1 < width)
         {
-          input[x + 1][0] = (input[x + 1][0] + 7 * error / 16);
-          if (y + 1 < src.getHeight())
+          current[x + 1] = (current[x + 1] + 7 * error / 16);
+          if (y + 1 < height)
           {
-            input[x + 1][1] = (input[x + 1][1] + 1 * error / 16);
+            next[x + 1] = (next[x + 1] + 1 * error / 16);
           }
         }
-        if (y + 1 < src.getHeight())
+        if (y + 1 < height)
         {
-          input[x][1] = (input[x][1] + 5 * error / 16);
+          next[x] = (next[x] + 5 * error / 16);
           if (x > 0)
           {
-            input[x - 1][1] = (input[x - 1][1] + 3 * error / 16);
+            next[x - 1] = (next[x - 1] + 3 * error / 16);
           }
         }
       }
-      setProgress((100 * pixelcount++) / (src.getHeight()));
+      this.setRow(src, target, y, output);
+      setProgress((100 * pixelcount++) / (height));
     }
   }
 
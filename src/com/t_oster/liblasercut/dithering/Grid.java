@@ -20,6 +20,7 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ScanlineRasters;
 
 /**
  *
@@ -77,12 +78,14 @@ public class Grid extends DitheringAlgorithm
     int pixelcount = 0;
     int width = src.getWidth();
     int height = src.getHeight();
+    int[] row = new int[width];
 
     for (int y = 0; y < height; y++)
     {
+      ScanlineRasters.getRow(src, y, row);
       for (int x = 0; x < width; x++)
       {
-        lumTotal += src.getGreyScale(x, y);
+        lumTotal += row[x];
       }
       setProgress((100 * pixelcount++) / (2 * height));
     }
@@ -90,19 +93,22 @@ public class Grid extends DitheringAlgorithm
     int thresh = (int) (lumTotal / height / width);
     for (int y = 0; y < height; y++)
     {
+      ScanlineRasters.getRow(src, y, row);
+      boolean blockRow = y % (blocksize + blockdistance) <= blocksize;
       for (int x = 0; x < width; x++)
       {
-        if (y % (blocksize + blockdistance) <= blocksize
+        if (blockRow
           && x % (blocksize + blockdistance) <= blocksize
-          && src.getGreyScale(x, y) < thresh)
+          && row[x] < thresh)
         {
-          this.setBlack(src, target, x, y, true);
+          row[x] = 0;
         }
         else
         {
-          this.setBlack(src, target, x, y, false);
+          row[x] = 255;
         }
       }
+      this.setRow(src, target, y, row);
       setProgress((100 * pixelcount++) / (2 * height));
     }
   }
@@ -20,6 +20,7 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ScanlineRasters;
 
 /**
  *
@@ -50,53 +51,22 @@ public class Ordered extends DitheringAlgorithm
       },
     };
 
-    int x = 0;
-    int y = 0;
     int pixelcount = 0;
+    int[] row = new int[width];
 
-    for (y = 0; y < (height - nPatWid); y = y + nPatWid)
+    // every pixel is compared to the filter entry of its position
+    // within the nPatWid x nPatWid pattern
+    for (int y = 0; y < height; y++)
     {
-
-      for (x = 0; x < (width - nPatWid); x = x + nPatWid)
-      {
-
-        for (int xdelta = 0; xdelta < nPatWid; xdelta++)
-        {
-          for (int ydelta = 0; ydelta < nPatWid; ydelta++)
-          {
-            this.setBlack(src, target, x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
-          }
-        }
-      }
-      for (int xdelta = 0; xdelta < nPatWid; xdelta++)
+      ScanlineRasters.getRow(src, y, row);
+      int ydelta = y % nPatWid;
+      for (int x = 0; x < width; x++)
       {
-        for (int ydelta = 0; ydelta < nPatWid; ydelta++)
-        {
-
-          if (((x + xdelta) < width) && ((y + ydelta) < height))
-          {
-            this.setBlack(src, target, x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
-          }
-        }
+        row[x] = row[x] < filter[x % nPatWid][ydelta] ? 0 : 255;
       }
+      this.setRow(src, target, y, row);
       setProgress((100 * pixelcount++) / (height));
     }
-
-    // y is at max; loop through x
-    for (x = 0; x < (width); x = x + nPatWid)
-    {
-      for (int xdelta = 0; xdelta < nPatWid; xdelta++)
-      {
-        for (int ydelta = 0; ydelta < nPatWid; ydelta++)
-        {
-
-          if (((x + xdelta) < width) && ((y + ydelta) < height))
-          {
-            this.setBlack(src, target, x + xdelta, y + ydelta, src.getGreyScale(x + xdelta, y + ydelta) < filter[xdelta][ydelta]);
-          }
-        }
-      }
-    }
   }
 
   @Override
@@ -20,6 +20,7 @@ package com.t_oster.liblasercut.dithering;
 
 import com.t_oster.liblasercut.BlackWhiteRaster;
 import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ScanlineRasters;
 
 /**
  *
@@ -35,13 +36,16 @@ public class Random extends DitheringAlgorithm
     int height = src.getHeight();
     int pixelcount = 0;
     java.util.Random r = new java.util.Random();
+    int[] row = new int[width];
 
     for (int y = 0; y < height; y++)
     {
+      ScanlineRasters.getRow(src, y, row);
       for (int x = 0; x < width; x++)
       {
-        this.setBlack(src, target, x, y, src.getGreyScale(x, y) < r.nextInt(256));
+        row[x] = row[x] < r.nextInt(256) ? 0 : 255;
       }
+      this.setRow(src, target, y, row);
       setProgress((100 * pixelcount++) / (height));
     }
   }
@@ -26,12 +26,14 @@ package com.t_oster.liblasercut.drivers;
 
 import com.t_oster.liblasercut.*;
 import com.t_oster.liblasercut.platform.Point;
+import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.vectoroptimizers.CostModel;
+import com.t_oster.liblasercut.vectoroptimizers.MachineCostModel;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -49,6 +51,9 @@ abstract class EpilogCutter extends LaserCutter
   private static final int MINFOCUS = -500;//Minimal focus value (not mm)
   private static final int MAXFOCUS = 500;//Maximal focus value (not mm)
   private static final double FOCUSWIDTH = 0.0252;//How much mm/unit the focus values are
+  //Travel speeds in pixels per second, used for the job duration estimation
+  private static final double VECTOR_MOVESPEED_X = 20000d / 4.5;
+  private static final double VECTOR_MOVESPEED_Y = 10000d / 2.5;
   private String hostname = "10.0.0.1";
   private int port = 515;
   private boolean autofocus = false;
@@ -252,15 +257,16 @@ abstract class EpilogCutter extends LaserCutter
     {
       if (p instanceof VectorPart)
       {
-        for (VectorCommand cmd : ((VectorPart) p).getCommandList())
+        VectorPart vp = (VectorPart) p;
+        for (int i = 0; i < vp.getCommandCount(); i++)
         {
-          if (cmd.getType() == VectorCommand.CmdType.SETPROPERTY)
+          if (vp.getCommandType(i) == VectorCommand.CmdType.SETPROPERTY)
           {
-            if (!(cmd.getProperty() instanceof PowerSpeedFocusFrequencyProperty))
+            if (!(vp.getProperty(i) instanceof PowerSpeedFocusFrequencyProperty))
             {
               throw new IllegalJobException("This driver expects Power,Speed,Frequency and Focus as settings");
             }
-            float focus = ((PowerSpeedFocusFrequencyProperty) cmd.getProperty()).getFocus();
+            float focus = ((PowerSpeedFocusFrequencyProperty) vp.getProperty(i)).getFocus();
             if (mm2focus(focus) > MAXFOCUS || (mm2focus(focus)) < MINFOCUS)
             {
               throw new IllegalJobException("Illegal Focus value. This Lasercutter supports values between"
@@ -302,7 +308,7 @@ abstract class EpilogCutter extends LaserCutter
 
   public void realSendJob(LaserJob job, ProgressListener pl, int number, int count) throws UnsupportedEncodingException, IOException, UnknownHostException, Exception
   {
-    job.applyStartPoint();
+    job = job.getTranslatedJob();
     String nb = count > 1 ? "("+number+"/"+count+")" : "";
     pl.taskChanged(this, "generating"+nb);
     //Generate all the data
@@ -320,6 +326,18 @@ abstract class EpilogCutter extends LaserCutter
     disconnect();
   }
 
+  /**
+   * A raster3d part stands alone. Vector parts can be prepended by one
+   * raster part, but one job has to have the same resolution everywhere
+   * (??? if you have time, feel free to experiment)
+   */
+  @Override
+  public boolean canCombineJobParts(JobPart previous, JobPart next)
+  {
+    return next instanceof VectorPart && !(previous instanceof Raster3dPart)
+      && previous.getDPI() == next.getDPI();
+  }
+
   @Override
   public void sendJob(LaserJob job, ProgressListener pl, List<String> warnings) throws IllegalJobException, SocketTimeoutException, UnsupportedEncodingException, IOException, UnknownHostException, Exception
   {
@@ -329,32 +347,15 @@ abstract class EpilogCutter extends LaserCutter
     checkJob(job);
     //split the job because epilog doesn't support many combinations
     List<List<JobPart>> jobs = new LinkedList<List<JobPart>>();
-    List<JobPart> toDo = job.getParts();
-    while(!toDo.isEmpty())
-    {
-      List<JobPart> currentSplit = new LinkedList<JobPart>();
-      if (toDo.get(0) instanceof Raster3dPart)
-      {//raster3d part stands alone
-        currentSplit.add(toDo.get(0));
-        toDo.remove(0);
-      }
-      else
-      {//vector parts can be prepended by one raster part, but one job has
-       //to have the same resolution everywhere (??? if you have time, feel
-       //free to experiment)
-        double currentDpi = toDo.get(0).getDPI();
-        if (toDo.get(0) instanceof RasterPart)
-        {
-          currentSplit.add(toDo.get(0));
-          toDo.remove(0);
-        }
-        while (!toDo.isEmpty() && toDo.get(0) instanceof VectorPart && toDo.get(0).getDPI() == currentDpi)
-        {
-          currentSplit.add(toDo.get(0));
-          toDo.remove(0);
-        }
+    List<JobPart> currentSplit = null;
+    for (JobPart p : job.getParts())
+    {
+      if (currentSplit == null || !canCombineJobParts(currentSplit.get(currentSplit.size() - 1), p))
+      {
+        currentSplit = new LinkedList<JobPart>();
+        jobs.add(currentSplit);
       }
-      jobs.add(currentSplit);
+      currentSplit.add(p);
     }
     int number = 0;
     int size = jobs.size();
@@ -421,6 +422,55 @@ abstract class EpilogCutter extends LaserCutter
     return result;
   }
 
+  /**
+   * Encodes line[from..to) in TIFF Packbyte encoding
+   * @return the number of bytes written to result
+   */
+  private int encode(byte[] line, int from, int to, ByteArrayOutputStream result)
+  {
+    int before = result.size();
+    int idx = from;
+    while (idx < to)
+    {
+      int p;
+      p = idx + 1;
+      while (p < to && p < idx + 128 && line[p] == line[idx])
+      {
+        p++;
+      }
+      if (p - idx >= 2)
+      {
+        // run length
+        result.write((byte) (1 - (p - idx)));
+        result.write(line[idx]);
+        idx = p;
+      }
+      else
+      {
+        p = idx;
+        while (p < to && p < idx + 127
+          && (p + 1 == to || line[p] != line[p + 1]))
+        {
+          p++;
+        }
+        result.write((byte) (p - idx - 1));
+        result.write(line, idx, p - idx);
+        idx = p;
+      }
+    }
+    return result.size() - before;
+  }
+
+  private static void reverse(byte[] line, int from, int to)
+  {
+    for (int i = from, j = to - 1; i < j; i++, j--)
+    {
+      byte b = line[i];
+      line[i] = line[j];
+      line[j] = b;
+    }
+  }
+
   private byte[] generateRaster3dPCL(Raster3dPart rp) throws UnsupportedEncodingException, IOException
   {
     ByteArrayOutputStream result = new ByteArrayOutputStream();
@@ -456,50 +506,49 @@ abstract class EpilogCutter extends LaserCutter
       out.printf("\033*r1A");
       Point sp = rp.getRasterStart();
       boolean leftToRight = true;
+      byte[] line = new byte[rp.getRasterWidth()];
+      int[] bounds = new int[2];
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
       for (int y = 0; y < rp.getRasterHeight(); y++)
       {
-        List<Byte> line = rp.getInvertedRasterLine(y);
-        for (int n = 0; n < line.size(); n++)
+        rp.getInvertedRasterLine(y, line, bounds);
+        for (int n = bounds[0]; n < bounds[1]; n++)
         {//Apperantly the other power settings are ignored, so we have to scale
-          int x = line.get(n);
+          int x = line[n];
           x = x >= 0 ? x : 256 + x;
           int scalex = x * prop.getPower() / 100;
           byte bx = (byte) (scalex < 128 ? scalex : scalex - 256);
-          line.set(n, bx);
+          line[n] = bx;
         }
-        //Remove leading zeroes, but keep track of the offset
-        int jump = 0;
-
-        while (line.size() > 0 && line.get(0) == 0)
+        //Skip leading zeroes, but keep track of the offset
+        int jump = bounds[0];
+        while (jump < bounds[1] && line[jump] == 0)
         {
-          line.remove(0);
           jump++;
         }
-        if (line.size() > 0)
+        if (jump < bounds[1])
         {
+          int size = line.length - jump;
           out.printf("\033*p%dX", sp.x + jump);
           out.printf("\033*p%dY", sp.y + y);
           if (leftToRight)
           {
-            out.printf("\033*b%dA", line.size());
+            out.printf("\033*b%dA", size);
           }
           else
           {
-            out.printf("\033*b%dA", -line.size());
-            Collections.reverse(line);
+            out.printf("\033*b%dA", -size);
+            reverse(line, jump, line.length);
           }
-          line = encode(line);
-          int len = line.size();
+          encoded.reset();
+          int len = encode(line, jump, line.length, encoded);
           int pcks = len / 8;
           if (len % 8 > 0)
           {
             pcks++;
           }
           out.printf("\033*b%dW", pcks * 8);
-          for (byte s : line)
-          {
-            out.write(s);
-          }
+          encoded.writeTo(out);
           for (int k = 0; k < 8 - (len % 8); k++)
           {
             out.write((byte) 128);
@@ -583,36 +632,29 @@ abstract class EpilogCutter extends LaserCutter
     {
       Point sp = rp.getRasterStart();
       boolean leftToRight = true;
+      byte[] line = new byte[rp.getRasterLineLength()];
+      int[] bounds = new int[2];
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream();
       for (int y = 0; y < rp.getRasterHeight(); y++)
       {
-        List<Byte> line = rp.getRasterLine(y);
-        //Remove leading zeroes, but keep track of the offset
-        int jump = 0;
-        while (line.size() > 0 && line.get(0) == 0)
-        {
-          line.remove(0);
-          jump++;
-        }
-        //Remove trailing zeroes
-        while (line.size() > 0 && line.get(line.size()-1) == 0)
-        {
-          line.remove(line.size()-1);
-        }
-        if (line.size() > 0)
+        //leading and trailing zeroes are skipped, but keep track of the offset
+        int size = rp.getRasterLine(y, line, bounds);
+        int jump = bounds[0];
+        if (size > 0)
         {
           out.printf("\033*p%dX", sp.x + jump * 8);
           out.printf("\033*p%dY", sp.y + y);
           if (leftToRight)
           {
-            out.printf("\033*b%dA", line.size());
+            out.printf("\033*b%dA", size);
           }
           else
           {
-            out.printf("\033*b%dA", -line.size());
-            Collections.reverse(line);
+            out.printf("\033*b%dA", -size);
+            reverse(line, bounds[0], bounds[1]);
           }
-          line = encode(line);
-          int len = line.size();
+          encoded.reset();
+          int len = encode(line, bounds[0], bounds[1], encoded);
           int pcks = len / 8;
           if (len % 8 > 0)
           {
@@ -625,10 +667,7 @@ abstract class EpilogCutter extends LaserCutter
            * in ctrl-cut its number of packed bytes
            */
           out.printf("\033*b%dW", pcks * 8);
-          for (byte s : line)
-          {
-            out.write(s);
-          }
+          encoded.writeTo(out);
           for (int k = 0; k < 8 - (len % 8); k++)
           {
             out.write((byte) 128);
@@ -652,7 +691,84 @@ abstract class EpilogCutter extends LaserCutter
     return result.toByteArray();
   }
 
-  private byte[] generateVectorPCL(VectorPart vp) throws UnsupportedEncodingException
+  /**
+   * Writes the HPGL commands of a VectorPart. Consecutive LINETOs are
+   * combined into one PD command.
+   */
+  private class VectorPCLWriter implements VectorCommandVisitor
+  {
+
+    private final PrintStream out;
+    private Integer currentPower = null;
+    private Integer currentSpeed = null;
+    private Integer currentFrequency = null;
+    private Float currentFocus = null;
+    private boolean inLine = false;
+
+    VectorPCLWriter(PrintStream out)
+    {
+      this.out = out;
+    }
+
+    private void endLine()
+    {
+      if (inLine)
+      {
+        out.print(";");
+        inLine = false;
+      }
+    }
+
+    @Override
+    public void setProperty(LaserProperty property)
+    {
+      endLine();
+      PowerSpeedFocusFrequencyProperty p = (PowerSpeedFocusFrequencyProperty) property;
+      if (currentFocus == null || !currentFocus.equals(p.getFocus()))
+      {
+        out.printf("WF%d;", mm2focus(p.getFocus()));
+        currentFocus = p.getFocus();
+      }
+      if (currentFrequency == null || !currentFrequency.equals(p.getFrequency()))
+      {
+        out.printf("XR%04d;", p.getFrequency());
+        currentFrequency = p.getFrequency();
+      }
+      if (currentPower == null || !currentPower.equals(p.getPower()))
+      {
+        out.printf("YP%03d;", p.getPower());
+        currentPower = p.getPower();
+      }
+      if (currentSpeed == null || !currentSpeed.equals(p.getSpeed()))
+      {
+        out.printf("ZS%03d;", p.getSpeed());
+        currentSpeed = p.getSpeed();
+      }
+    }
+
+    @Override
+    public void moveto(int x, int y)
+    {
+      endLine();
+      out.printf("PU%d,%d;", x, y);
+    }
+
+    @Override
+    public void lineto(int x, int y)
+    {
+      if (!inLine)
+      {
+        out.printf("PD%d,%d", x, y);
+        inLine = true;
+      }
+      else
+      {
+        out.printf(",%d,%d", x, y);
+      }
+    }
+  }
+
+  private byte[] generateVectorPCL(VectorPart vp) throws UnsupportedEncodingException, IOException
   {
     //TODO: Test if the resolution settings have an effect
     ByteArrayOutputStream result = new ByteArrayOutputStream();
@@ -663,64 +779,7 @@ abstract class EpilogCutter extends LaserCutter
 
     if (vp != null)
     {
-      Integer currentPower = null;
-      Integer currentSpeed = null;
-      Integer currentFrequency = null;
-      Float currentFocus = null;
-      VectorCommand.CmdType lastType = null;
-      for (VectorCommand cmd : vp.getCommandList())
-      {
-        if (lastType != null && lastType == VectorCommand.CmdType.LINETO && cmd.getType() != VectorCommand.CmdType.LINETO)
-        {
-          out.print(";");
-        }
-        switch (cmd.getType())
-        {
-          case SETPROPERTY:
-          {
-            PowerSpeedFocusFrequencyProperty p = (PowerSpeedFocusFrequencyProperty) cmd.getProperty();
-            if (currentFocus == null || !currentFocus.equals(p.getFocus()))
-            {
-              out.printf("WF%d;", mm2focus(p.getFocus()));
-              currentFocus = p.getFocus();
-            }
-            if (currentFrequency == null || !currentFrequency.equals(p.getFrequency()))
-            {
-              out.printf("XR%04d;", p.getFrequency());
-              currentFrequency = p.getFrequency();
-            }
-            if (currentPower == null || !currentPower.equals(p.getPower()))
-            {
-              out.printf("YP%03d;", p.getPower());
-              currentPower = p.getPower();
-            }
-            if (currentSpeed == null || !currentSpeed.equals(p.getSpeed()))
-            {
-              out.printf("ZS%03d;", p.getSpeed());
-              currentSpeed = p.getSpeed();
-            }
-            break;
-          }
-          case MOVETO:
-          {
-            out.printf("PU%d,%d;", cmd.getX(), cmd.getY());
-            break;
-          }
-          case LINETO:
-          {
-            if (lastType == null || lastType != VectorCommand.CmdType.LINETO)
-            {
-              out.printf("PD%d,%d", cmd.getX(), cmd.getY());
-            }
-            else
-            {
-              out.printf(",%d,%d", cmd.getX(), cmd.getY());
-            }
-            break;
-          }
-        }
-        lastType = cmd.getType();
-      }
+      vp.accept(new VectorPCLWriter(out));
     }
     //Reset Focus to 0
     out.printf("WF%d;", 0);
@@ -882,6 +941,21 @@ abstract class EpilogCutter extends LaserCutter
     return attributes;
   }
 
+  /**
+   * The X axis is faster than the Y axis. The speeds are the ones of the
+   * duration estimation, taken as pixels at 500 dpi. A property change
+   * starts a new vector block, and a focus change moves the table, so
+   * both are priced with estimated times.
+   */
+  @Override
+  public CostModel getVectorCostModel()
+  {
+    MachineCostModel result = new MachineCostModel(Util.px2mm(VECTOR_MOVESPEED_X, 500), Util.px2mm(VECTOR_MOVESPEED_Y, 500));
+    result.setPropertySwitchTime(0.5);
+    result.setFocusSpeed(5);
+    return result;
+  }
+
   @Override
   public boolean canEstimateJobDuration()
   {
@@ -891,8 +965,6 @@ abstract class EpilogCutter extends LaserCutter
   @Override
   public int estimateJobDuration(LaserJob job)
   {
-    double VECTOR_MOVESPEED_X = 20000d / 4.5;
-    double VECTOR_MOVESPEED_Y = 10000d / 2.5;
     double VECTOR_LINESPEED = 20000d / 36.8;
     double RASTER_LINEOFFSET = 0.08d;
     double RASTER_LINESPEED = 100000d / ((268d / 50) - RASTER_LINEOFFSET);
@@ -913,18 +985,11 @@ abstract class EpilogCutter extends LaserCutter
         result += Math.max((double) (p.x - sp.x) / VECTOR_MOVESPEED_X,
           (double) (p.y - sp.y) / VECTOR_MOVESPEED_Y);
         double linespeed = ((double) RASTER_LINESPEED * ((PowerSpeedFocusProperty) rp.getLaserProperty()).getSpeed()) / 100;
+        byte[] line = new byte[rp.getRasterLineLength()];
+        int[] bounds = new int[2];
         for (int y = 0; y < rp.getRasterHeight(); y++)
         {//Find any black point
-          boolean lineEmpty = true;
-          for (byte b : rp.getRasterLine(y))
-          {
-            if (b != 0)
-            {
-              lineEmpty = false;
-              break;
-            }
-          }
-          if (!lineEmpty)
+          if (rp.getRasterLine(y, line, bounds) > 0)
           {
             int w = rp.getRasterWidth();
             result += (double) RASTER_LINEOFFSET + (double) w / linespeed;
@@ -944,18 +1009,11 @@ abstract class EpilogCutter extends LaserCutter
         result += Math.max((double) (p.x - sp.x) / VECTOR_MOVESPEED_X,
           (double) (p.y - sp.y) / VECTOR_MOVESPEED_Y);
         double linespeed = ((double) RASTER3D_LINESPEED * ((PowerSpeedFocusProperty) rp.getLaserProperty()).getSpeed()) / 100;
+        byte[] line = new byte[rp.getRasterWidth()];
+        int[] bounds = new int[2];
         for (int y = 0; y < rp.getRasterHeight(); y++)
         {//Check if
-          boolean lineEmpty = true;
-          for (byte b : rp.getRasterLine(y))
-          {
-            if (b != 0)
-            {
-              lineEmpty = false;
-              break;
-            }
-          }
-          if (!lineEmpty)
+          if (rp.getRasterLine(y, line, bounds) > 0)
           {
             int w = rp.getRasterWidth();
             result += (double) RASTER3D_LINEOFFSET + (double) w / linespeed;
@@ -967,24 +1025,26 @@ abstract class EpilogCutter extends LaserCutter
       if (jp instanceof VectorPart)
       {
         double speed = VECTOR_LINESPEED;
-        VectorPart vp = (VectorPart) jp;
-        for (VectorCommand cmd : vp.getCommandList())
+        VectorPart vp = ((VectorPart) jp).flattened();
+        for (int i = 0; i < vp.getCommandCount(); i++)
         {
-          switch (cmd.getType())
+          switch (vp.getCommandType(i))
           {
             case SETPROPERTY:
             {
-              speed = VECTOR_LINESPEED * ((PowerSpeedFocusFrequencyProperty) cmd.getProperty()).getSpeed() / 100;
+              speed = VECTOR_LINESPEED * ((PowerSpeedFocusFrequencyProperty) vp.getProperty(i)).getSpeed() / 100;
               break;
             }
             case MOVETO:
-              result += Math.max((double) (p.x - cmd.getX()) / VECTOR_MOVESPEED_X,
-                (double) (p.y - cmd.getY()) / VECTOR_MOVESPEED_Y);
-              p = new Point(cmd.getX(), cmd.getY());
+              result += Math.max((double) (p.x - vp.getX(i)) / VECTOR_MOVESPEED_X,
+                (double) (p.y - vp.getY(i)) / VECTOR_MOVESPEED_Y);
+              p.x = vp.getX(i);
+              p.y = vp.getY(i);
               break;
             case LINETO:
-              double dist = distance(cmd.getX(), cmd.getY(), p);
-              p = new Point(cmd.getX(), cmd.getY());
+              double dist = distance(vp.getX(i), vp.getY(i), p);
+              p.x = vp.getX(i);
+              p.y = vp.getY(i);
               result += dist / speed;
               break;
           }
@@ -20,6 +20,8 @@ package com.t_oster.liblasercut.drivers;
 
 import com.t_oster.liblasercut.*;
 import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.vectoroptimizers.CostModel;
+import com.t_oster.liblasercut.vectoroptimizers.MachineCostModel;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -64,6 +66,8 @@ public class GenericGcodeDriver extends LaserCutter {
   protected static final String SETTING_RESOLUTIONS = "Supported DPI (comma separated)";
   protected static final String SETTING_IDENTIFICATION_STRING = "Board Identification String (startsWith)";
   protected static final String SETTING_WAIT_FOR_OK = "Wait for OK after each line (interactive mode)";
+  protected static final String SETTING_CHARACTER_COUNTING = "Stream lines until receive buffer is full (character counting)";
+  protected static final String SETTING_RX_BUFFER_SIZE = "Receive buffer size of the board in bytes (character counting)";
   protected static final String SETTING_INIT_DELAY = "Seconds to wait for board reset (Serial)";
   protected static final String SETTING_SERIAL_TIMEOUT = "Milliseconds to wait for response";
   protected static final String SETTING_BLANK_LASER_DURING_RAPIDS = "Force laser off during G0 moves";
@@ -179,6 +183,36 @@ public class GenericGcodeDriver extends LaserCutter {
     this.waitForOKafterEachLine = waitForOKafterEachLine;
   }
 
+  protected boolean characterCounting = false;
+
+  /**
+   * If true and isWaitForOKafterEachLine() is set, lines are sent
+   * without waiting for the 'ok' of the previous line, as long as the
+   * unacknowledged lines fit into the receive buffer of the board.
+   * This is the streaming protocol recommended by Grbl.
+   */
+  public boolean isCharacterCounting()
+  {
+    return characterCounting;
+  }
+
+  public void setCharacterCounting(boolean characterCounting)
+  {
+    this.characterCounting = characterCounting;
+  }
+
+  protected int rxBufferSize = 127;
+
+  public int getRxBufferSize()
+  {
+    return rxBufferSize;
+  }
+
+  public void setRxBufferSize(int rxBufferSize)
+  {
+    this.rxBufferSize = rxBufferSize;
+  }
+
   public String getIdentificationLine()
   {
     return identificationLine;
@@ -311,6 +345,20 @@ public class GenericGcodeDriver extends LaserCutter {
   {
     this.travel_speed = travel_speed;
   }
+
+  /**
+   * Travel moves use the travel speed on both axes. Power and speed are
+   * sent with the next G1, so a property change mostly costs the Z move
+   * of a new focus, estimated with a slow Z axis.
+   */
+  @Override
+  public CostModel getVectorCostModel()
+  {
+    MachineCostModel result = new MachineCostModel(travel_speed / 60, travel_speed / 60);
+    result.setPropertySwitchTime(0.05);
+    result.setFocusSpeed(5);
+    return result;
+  }
   
   protected boolean blankLaserDuringRapids = false;
   
@@ -376,33 +424,52 @@ public class GenericGcodeDriver extends LaserCutter {
     return new FloatPowerSpeedFocusProperty();
   }
 
-  protected void writeVectorGCode(VectorPart vp, double resolution) throws UnsupportedEncodingException, IOException {
-    for (VectorCommand cmd : vp.getCommandList()) {
-      switch (cmd.getType()) {
-        case MOVETO:
-          int x = cmd.getX();
-          int y = cmd.getY();
-          move(out, x, y, resolution);
-          break;
-        case LINETO:
-          x = cmd.getX();
-          y = cmd.getY();
-          line(out, x, y, resolution);
-          break;
-        case SETPROPERTY:
-          FloatPowerSpeedFocusProperty p = (FloatPowerSpeedFocusProperty) cmd.getProperty();
-          setPower(p.getPower());
-          setSpeed(p.getSpeed());
-          setFocus(out, p.getFocus(), resolution);
-          break;
+  protected void writeVectorGCode(VectorPart vp, final double resolution) throws UnsupportedEncodingException, IOException {
+    vp.accept(new VectorCurveVisitor()
+    {
+      @Override
+      public void moveto(int x, int y) throws IOException
+      {
+        move(out, x, y, resolution);
+      }
+
+      @Override
+      public void lineto(int x, int y) throws IOException
+      {
+        line(out, x, y, resolution);
       }
-    }
+
+      @Override
+      public void arcto(int x, int y, double centerX, double centerY, double sweep) throws IOException
+      {
+        arc(out, centerX, centerY, sweep, resolution);
+      }
+
+      @Override
+      public void curveto(int c1x, int c1y, int c2x, int c2y, int x, int y) throws IOException
+      {
+        //G5 is not supported by most firmwares, so Bezier curves are cut as arcs
+        curve(out, currentX, currentY, c1x, c1y, c2x, c2y, x, y, resolution, 0);
+      }
+
+      @Override
+      public void setProperty(LaserProperty property) throws IOException
+      {
+        FloatPowerSpeedFocusProperty p = (FloatPowerSpeedFocusProperty) property;
+        setPower(p.getPower());
+        setSpeed(p.getSpeed());
+        setFocus(out, p.getFocus(), resolution);
+      }
+    });
   }
   private double currentPower = -1;
   private double currentSpeed = -1;
   private double nextPower = -1;
   private double nextSpeed = -1;
   private double currentFocus = 0;
+  //position of the head in pixels, where arcs start
+  private double currentX = 0;
+  private double currentY = 0;
 
   protected void setSpeed(double speedInPercent) {
     nextSpeed = speedInPercent;
@@ -421,6 +488,8 @@ public class GenericGcodeDriver extends LaserCutter {
   }
 
   protected void move(PrintStream out, double x, double y, double resolution) throws IOException {
+    currentX = x;
+    currentY = y;
     x = isFlipXaxis() ? getBedWidth() - Util.px2mm(x, resolution) : Util.px2mm(x, resolution);
     y = isFlipYaxis() ? getBedHeight() - Util.px2mm(y, resolution) : Util.px2mm(y, resolution);
     currentSpeed = getTravel_speed();
@@ -436,8 +505,249 @@ public class GenericGcodeDriver extends LaserCutter {
   }
 
   protected void line(PrintStream out, double x, double y, double resolution) throws IOException {
+    currentX = x;
+    currentY = y;
     x = isFlipXaxis() ? getBedWidth() - Util.px2mm(x, resolution) : Util.px2mm(x, resolution);
     y = isFlipYaxis() ? getBedHeight() - Util.px2mm(y, resolution) : Util.px2mm(y, resolution);
+    sendLine("G1 X%f Y%f"+powerAndSpeed(), x, y);
+  }
+
+  /**
+   * Cuts an arc around (centerX, centerY) with G2 or G3. The end point
+   * is computed from the current position of the head, so the firmware
+   * sees exactly the same radius at the start and the end.
+   * @param sweep the angle in radians, positive from the x axis towards the y axis
+   */
+  protected void arc(PrintStream out, double centerX, double centerY, double sweep, double resolution) throws IOException {
+    double r = Math.hypot(currentX - centerX, currentY - centerY);
+    double a = Math.atan2(currentY - centerY, currentX - centerX) + sweep;
+    double i = Util.px2mm(centerX - currentX, resolution);
+    double j = Util.px2mm(centerY - currentY, resolution);
+    currentX = centerX + r * Math.cos(a);
+    currentY = centerY + r * Math.sin(a);
+    double x = isFlipXaxis() ? getBedWidth() - Util.px2mm(currentX, resolution) : Util.px2mm(currentX, resolution);
+    double y = isFlipYaxis() ? getBedHeight() - Util.px2mm(currentY, resolution) : Util.px2mm(currentY, resolution);
+    //positive angles are counter clockwise on the machine, unless one axis is flipped
+    boolean ccw = (sweep > 0) != (isFlipXaxis() != isFlipYaxis());
+    sendLine((ccw ? "G3" : "G2") + " X%f Y%f I%f J%f" + powerAndSpeed(), x, y,
+      isFlipXaxis() ? -i : i, isFlipYaxis() ? -j : j);
+  }
+
+  //deepest subdivision of a Bezier curve, before it is cut as lines
+  private static final int MAX_CURVE_DEPTH = 10;
+
+  /**
+   * Cuts a cubic Bezier curve from (x0, y0) as biarcs, i.e. pairs of arcs
+   * with the tangents of the curve at both ends, which differ not more
+   * than VectorPart.DEFAULT_FLATNESS pixels from it. Curves which are not
+   * close enough are split in halves.
+   */
+  protected void curve(PrintStream out, double x0, double y0, double c1x, double c1y, double c2x, double c2y, double x3, double y3, final double resolution, int depth) throws IOException {
+    double flatness = VectorPart.DEFAULT_FLATNESS;
+    //tangents at both ends, which are missing if control points coincide
+    double[] t0 = unit(c1x - x0, c1y - y0, c2x - x0, c2y - y0, x3 - x0, y3 - y0);
+    double[] t1 = unit(x3 - c2x, y3 - c2y, x3 - c1x, y3 - c1y, x3 - x0, y3 - y0);
+    if (t0 == null || t1 == null)
+    {
+      return;
+    }
+    double[] biarc = depth < MAX_CURVE_DEPTH ? biarc(x0, y0, t0, x3, y3, t1) : null;
+    if (biarc != null)
+    {
+      double error = 0;
+      for (int k = 1; k < 16; k++)
+      {
+        double t = k / 16d;
+        double u = 1 - t;
+        double px = u * u * u * x0 + 3 * u * u * t * c1x + 3 * u * t * t * c2x + t * t * t * x3;
+        double py = u * u * u * y0 + 3 * u * u * t * c1y + 3 * u * t * t * c2y + t * t * t * y3;
+        error = Math.max(error, Math.min(arcDistance(px, py, x0, y0, biarc[0], biarc[1], biarc[2], biarc[6], biarc[7]),
+          arcDistance(px, py, biarc[6], biarc[7], biarc[3], biarc[4], biarc[5], x3, y3)));
+      }
+      if (error <= flatness)
+      {
+        for (int a = 0; a < 6; a += 3)
+        {
+          double sx = a == 0 ? x0 : biarc[6];
+          double sy = a == 0 ? y0 : biarc[7];
+          //nearly straight arcs are cut as lines, which is more exact than huge radii
+          double r = Math.hypot(sx - biarc[a], sy - biarc[a + 1]);
+          if (Double.isNaN(biarc[a]) || r * (1 - Math.cos(biarc[a + 2] / 2)) < flatness / 100)
+          {
+            line(out, a == 0 ? biarc[6] : x3, a == 0 ? biarc[7] : y3, resolution);
+          }
+          else
+          {
+            arc(out, biarc[a], biarc[a + 1], biarc[a + 2], resolution);
+          }
+        }
+        return;
+      }
+    }
+    if (depth >= MAX_CURVE_DEPTH)
+    {
+      VectorPart.flattenCurve(new VectorCommandVisitor()
+      {
+        @Override
+        public void setProperty(LaserProperty p)
+        {
+        }
+
+        @Override
+        public void moveto(int x, int y)
+        {
+        }
+
+        @Override
+        public void lineto(int x, int y) throws IOException
+        {
+          line(GenericGcodeDriver.this.out, x, y, resolution);
+        }
+      }, x0, y0, (int) Math.round(c1x), (int) Math.round(c1y), (int) Math.round(c2x), (int) Math.round(c2y), (int) Math.round(x3), (int) Math.round(y3), flatness);
+      return;
+    }
+    //split at t = 1/2 (de Casteljau)
+    double ax = (x0 + c1x) / 2, ay = (y0 + c1y) / 2;
+    double bx = (c1x + c2x) / 2, by = (c1y + c2y) / 2;
+    double cx = (c2x + x3) / 2, cy = (c2y + y3) / 2;
+    double abx = (ax + bx) / 2, aby = (ay + by) / 2;
+    double bcx = (bx + cx) / 2, bcy = (by + cy) / 2;
+    double mx = (abx + bcx) / 2, my = (aby + bcy) / 2;
+    curve(out, x0, y0, ax, ay, abx, aby, mx, my, resolution, depth + 1);
+    curve(out, mx, my, bcx, bcy, cx, cy, x3, y3, resolution, depth + 1);
+  }
+
+  /**
+   * @return the first of the vectors (x, y) which is not 0, as unit vector
+   */
+  private static double[] unit(double... v)
+  {
+    for (int i = 0; i < v.length; i += 2)
+    {
+      double l = Math.hypot(v[i], v[i + 1]);
+      if (l > 1e-9)
+      {
+        return new double[]{v[i] / l, v[i + 1] / l};
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds two arcs from p0 with the tangent t0 to p1 with the tangent t1,
+   * which meet with a common tangent. The arcs of the same length are used.
+   * @return centerX, centerY and sweep of both arcs followed by the point
+   * where they meet. The center is NaN for an arc which is a straight line.
+   * null if there is no such pair.
+   */
+  private static double[] biarc(double p0x, double p0y, double[] t0, double p1x, double p1y, double[] t1)
+  {
+    double vx = p1x - p0x;
+    double vy = p1y - p0y;
+    double vt = vx * (t0[0] + t1[0]) + vy * (t0[1] + t1[1]);
+    double vv = vx * vx + vy * vy;
+    double a = 2 * (1 - (t0[0] * t1[0] + t0[1] * t1[1]));
+    double d;
+    if (a < 1e-12)
+    {
+      //parallel tangents
+      double vt1 = vx * t1[0] + vy * t1[1];
+      if (vt1 <= 1e-12)
+      {
+        return null;
+      }
+      d = vv / (4 * vt1);
+    }
+    else
+    {
+      d = (-vt + Math.sqrt(vt * vt + 2 * a * vv)) / (2 * a);
+    }
+    if (!(d > 0))
+    {
+      return null;
+    }
+    double mx = (p0x + d * t0[0] + p1x - d * t1[0]) / 2;
+    double my = (p0y + d * t0[1] + p1y - d * t1[1]) / 2;
+    //tangent where the arcs meet
+    double[] tm = unit(p1x - d * t1[0] - p0x - d * t0[0], p1y - d * t1[1] - p0y - d * t0[1], t0[0] + t1[0], t0[1] + t1[1]);
+    if (tm == null)
+    {
+      return null;
+    }
+    double[] first = arcFrom(p0x, p0y, t0, mx, my);
+    double[] second = arcFrom(mx, my, tm, p1x, p1y);
+    return new double[]{first[0], first[1], first[2], second[0], second[1], second[2], mx, my};
+  }
+
+  /**
+   * @return center and sweep of the arc from p with the tangent t to q
+   */
+  private static double[] arcFrom(double px, double py, double[] t, double qx, double qy)
+  {
+    //the center is on the normal of the tangent, as far from p as from q
+    double nx = -t[1];
+    double ny = t[0];
+    double dx = qx - px;
+    double dy = qy - py;
+    double nd = nx * dx + ny * dy;
+    double dd = dx * dx + dy * dy;
+    if (Math.abs(nd) < 1e-9 * Math.sqrt(dd) || dd == 0)
+    {
+      return new double[]{Double.NaN, Double.NaN, 0};
+    }
+    double s = dd / (2 * nd);
+    double cx = px + s * nx;
+    double cy = py + s * ny;
+    double ax = px - cx;
+    double ay = py - cy;
+    double bx = qx - cx;
+    double by = qy - cy;
+    double sweep = Math.atan2(ax * by - ay * bx, ax * bx + ay * by);
+    //positive sweeps move along (-ay, ax) at the start
+    boolean positive = t[0] * -ay + t[1] * ax > 0;
+    if (positive && sweep < 0)
+    {
+      sweep += 2 * Math.PI;
+    }
+    else if (!positive && sweep > 0)
+    {
+      sweep -= 2 * Math.PI;
+    }
+    return new double[]{cx, cy, sweep};
+  }
+
+  /**
+   * @return the distance of (px, py) from the arc from (sx, sy) around
+   * (cx, cy) to (ex, ey), or from the line if the center is NaN
+   */
+  private static double arcDistance(double px, double py, double sx, double sy, double cx, double cy, double sweep, double ex, double ey)
+  {
+    if (Double.isNaN(cx))
+    {
+      double dx = ex - sx;
+      double dy = ey - sy;
+      double len = dx * dx + dy * dy;
+      double t = len == 0 ? 0 : Math.max(0, Math.min(1, ((px - sx) * dx + (py - sy) * dy) / len));
+      return Math.hypot(px - sx - t * dx, py - sy - t * dy);
+    }
+    //the angle from the start to the point, in the direction of the arc
+    double a = Math.atan2(py - cy, px - cx) - Math.atan2(sy - cy, sx - cx);
+    if (sweep < 0)
+    {
+      a = -a;
+    }
+    a = ((a % (2 * Math.PI)) + 2 * Math.PI) % (2 * Math.PI);
+    if (a <= Math.abs(sweep))
+    {
+      return Math.abs(Math.hypot(px - cx, py - cy) - Math.hypot(sx - cx, sy - cy));
+    }
+    return Math.min(Math.hypot(px - sx, py - sy), Math.hypot(px - ex, py - ey));
+  }
+
+  /**
+   * @return the S and F words for the next cutting move, if they changed
+   */
+  private String powerAndSpeed() {
     String append = "";
     if (nextPower != currentPower)
     {
@@ -449,7 +759,7 @@ public class GenericGcodeDriver extends LaserCutter {
       append += String.format(FORMAT_LOCALE, " F%d", (int) (max_speed*nextSpeed/100.0));
       currentSpeed = nextSpeed;
     }
-    sendLine("G1 X%f Y%f"+append, x, y);
+    return append;
   }
 
   private void writeInitializationCode() throws IOException {
@@ -479,20 +789,78 @@ public class GenericGcodeDriver extends LaserCutter {
   private CommPort port;
   private CommPortIdentifier portIdentifier;
   
+  /**
+   * Lines which have been sent in character counting mode, but
+   * have not been acknowledged by the board yet
+   */
+  private transient LinkedList<String> pendingLines;
+  private transient int pendingCharacters;
+
   protected void sendLine(String text, Object... parameters) throws IOException
   {
-    out.format(FORMAT_LOCALE, text+LINEEND(), parameters);
+    String line = String.format(FORMAT_LOCALE, text+LINEEND(), parameters);
+    boolean streaming = isWaitForOKafterEachLine() && isCharacterCounting();
+    if (streaming)
+    {
+      if (pendingLines == null)
+      {
+        pendingLines = new LinkedList<String>();
+        pendingCharacters = 0;
+      }
+      //wait until the receive buffer of the board has room for this line
+      while (!pendingLines.isEmpty() && pendingCharacters + line.length() > getRxBufferSize())
+      {
+        receiveAcknowledgement();
+      }
+    }
+    out.print(line);
     //TODO: Remove
-    System.out.format(FORMAT_LOCALE, "> "+text+LINEEND(), parameters);
+    System.out.print("> "+line);
     out.flush();
-    if (isWaitForOKafterEachLine())
+    if (streaming)
     {
-      String line = waitForLine();
-      if (!"ok".equals(line))
+      pendingLines.add(line);
+      pendingCharacters += line.length();
+      //handle all responses which have already arrived
+      while (!pendingLines.isEmpty() && in.ready())
       {
-        throw new IOException("Lasercutter did not respond 'ok', but '"+line+"'instead.");
+        receiveAcknowledgement();
       }
     }
+    else if (isWaitForOKafterEachLine())
+    {
+      String response = waitForLine();
+      if (!"ok".equals(response))
+      {
+        throw new IOException("Lasercutter did not respond 'ok', but '"+response+"'instead.");
+      }
+    }
+  }
+
+  /**
+   * Reads the response to the oldest pending line in character counting mode
+   */
+  private void receiveAcknowledgement() throws IOException
+  {
+    String response = waitForLine();
+    String line = pendingLines.removeFirst();
+    pendingCharacters -= line.length();
+    if (!"ok".equals(response))
+    {
+      throw new IOException("Lasercutter did not respond 'ok' to '"+line.trim()+"', but '"+response+"' instead.");
+    }
+  }
+
+  /**
+   * Waits until the board has acknowledged all lines sent in character
+   * counting mode
+   */
+  protected void waitForPendingLines() throws IOException
+  {
+    while (pendingLines != null && !pendingLines.isEmpty())
+    {
+      receiveAcknowledgement();
+    }
   }
 
   protected void http_upload(URI url, String data, String filename) throws IOException
@@ -632,6 +1000,7 @@ public class GenericGcodeDriver extends LaserCutter {
   protected void connect(ProgressListener pl) throws IOException, PortInUseException, NoSuchPortException, UnsupportedCommOperationException
   {
     outputBuffer = null;
+    pendingLines = null;
     if (getHost() != null && getHost().length() > 0)
     {
       socket = new Socket();
@@ -745,7 +1114,7 @@ public class GenericGcodeDriver extends LaserCutter {
     pl.taskChanged(this, "checking job");
     checkJob(job);
     this.jobName = job.getName()+".gcode";
-    job.applyStartPoint();
+    job = job.getTranslatedJob();
     pl.taskChanged(this, "connecting...");
     connect(pl);
     pl.taskChanged(this, "sending");
@@ -770,6 +1139,7 @@ public class GenericGcodeDriver extends LaserCutter {
         pl.progressChanged(this, 20 + (int) (i*(double) 60/max));
       }
       writeShutdownCode();
+      waitForPendingLines();
       disconnect(job.getName()+".gcode");
     }
     catch (IOException e) {
@@ -886,6 +1256,8 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job) throws I
     SETTING_POST_JOB_GCODE,
     SETTING_RESOLUTIONS,
     SETTING_WAIT_FOR_OK,
+    SETTING_CHARACTER_COUNTING,
+    SETTING_RX_BUFFER_SIZE,
     SETTING_SERIAL_TIMEOUT,
     SETTING_FILE_EXPORT_PATH,
     SETTING_USE_BIDIRECTIONAL_RASTERING
@@ -936,6 +1308,10 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job) throws I
       return this.getSupportedResolutions();
     } else if (SETTING_WAIT_FOR_OK.equals(attribute)) {
       return this.isWaitForOKafterEachLine();
+    } else if (SETTING_CHARACTER_COUNTING.equals(attribute)) {
+      return this.isCharacterCounting();
+    } else if (SETTING_RX_BUFFER_SIZE.equals(attribute)) {
+      return this.getRxBufferSize();
     } else if (SETTING_SERIAL_TIMEOUT.equals(attribute)) {
       return this.getSerialTimeout();
     } else if (SETTING_BLANK_LASER_DURING_RAPIDS.equals(attribute)) {
@@ -991,6 +1367,10 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job) throws I
       this.setSupportedResolutions((String) value);
     } else if (SETTING_WAIT_FOR_OK.equals(attribute)) {
       this.setWaitForOKafterEachLine((Boolean) value);
+    } else if (SETTING_CHARACTER_COUNTING.equals(attribute)) {
+      this.setCharacterCounting((Boolean) value);
+    } else if (SETTING_RX_BUFFER_SIZE.equals(attribute)) {
+      this.setRxBufferSize((Integer) value);
     } else if (SETTING_SERIAL_TIMEOUT.equals(attribute)) {
       this.setSerialTimeout((Integer) value);
     } else if (SETTING_BLANK_LASER_DURING_RAPIDS.equals(attribute)) {
@@ -1013,6 +1393,8 @@ public void saveJob(java.io.PrintStream fileOutputStream, LaserJob job) throws I
     // added field spindleMax, needs to be set to 1.0 by default
     // but xstream initializes it to 0.0 when it is missing from XML
     if (this.spindleMax <= 0.0) this.spindleMax = 1.0;
+    // added field rxBufferSize
+    if (this.rxBufferSize <= 0) this.rxBufferSize = 127;
   }
   
   @Override
@@ -42,6 +42,9 @@ public class Grbl extends GenericGcodeDriver
     setIdentificationLine("Grbl");
     // Grbl uses "ok" flow control
     setWaitForOKafterEachLine(true);
+    // and recommends keeping its 128 byte receive buffer filled
+    setCharacterCounting(true);
+    setRxBufferSize(127);
     setPreJobGcode(getPreJobGcode()+",M3");
     // turn off laser before returning to home position
     setPostJobGcode("M5,"+getPostJobGcode());
@@ -27,7 +27,7 @@ import com.t_oster.liblasercut.LaserProperty;
 import com.t_oster.liblasercut.ProgressListener;
 import com.t_oster.liblasercut.Raster3dPart;
 import com.t_oster.liblasercut.RasterPart;
-import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandVisitor;
 import com.t_oster.liblasercut.VectorPart;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
@@ -204,17 +204,45 @@ public class IModelaMill extends LaserCutter
     return black/count;
   }
   
+  /*
+   * The lines of the current Raster3dPart, which are needed by getAverageGrey.
+   * Line y is stored at index y % cachedLines.length, so the
+   * toolDiameter consecutive lines around y are never read twice.
+   */
+  private Raster3dPart cachedPart = null;
+  private byte[][] cachedLines;
+  private int[] cachedLineNumbers;
+  private int[] cachedBounds = new int[2];
+
+  private byte[] getRasterLine(Raster3dPart p, int y, int toolDiameter)
+  {
+    if (cachedPart != p || cachedLines.length != toolDiameter)
+    {
+      cachedPart = p;
+      cachedLines = new byte[toolDiameter][p.getRasterWidth()];
+      cachedLineNumbers = new int[toolDiameter];
+      Arrays.fill(cachedLineNumbers, -1);
+    }
+    int slot = y % toolDiameter;
+    if (cachedLineNumbers[slot] != y)
+    {
+      p.getRasterLine(y, cachedLines[slot], cachedBounds);
+      cachedLineNumbers[slot] = y;
+    }
+    return cachedLines[slot];
+  }
+
   private double getAverageGrey(Raster3dPart p, int cx, int cy, int toolDiameter)
   {
     double count = toolDiameter*toolDiameter;
     double value = 0;
     for (int y = Math.max(cy-toolDiameter/2, 0); y < Math.min(cy+toolDiameter/2, p.getRasterHeight()); y++)
     {
-      List<Byte> line = p.getRasterLine(y);
+      byte[] line = getRasterLine(p, y, toolDiameter);
       for (int x = Math.max(cx-toolDiameter/2, 0); x < Math.min(cx+toolDiameter/2, p.getRasterWidth()); x++)
       {
       
-        value += line.get(x);
+        value += line[x];
       }
     }
     return (value/count)/255;
@@ -288,37 +316,38 @@ public class IModelaMill extends LaserCutter
       //invert direction
       leftToRight = !leftToRight;
     }
+    cachedPart = null;
+    cachedLines = null;
   }
   
-  private void writeVectorCode(VectorPart p, PrintStream out)
+  private void writeVectorCode(VectorPart p, final PrintStream out) throws IOException
   {
-    double dpi = p.getDPI();
-    for (VectorCommand c : p.getCommandList())
+    final double dpi = p.getDPI();
+    p.accept(new VectorCommandVisitor()
     {
-      switch (c.getType())
+      @Override
+      public void moveto(int px, int py)
       {
-        case MOVETO:
-        {
-          double x = Util.px2mm(c.getX(), dpi);
-          double y = getBedHeight() - Util.px2mm(c.getY(), dpi); //mill origin is bottom left, so we have to mirror y coordinates
-          move(out, x, y);
-          break;
-        }
-        case LINETO:
-        {
-          double x = Util.px2mm(c.getX(), dpi);
-          double y = getBedHeight() - Util.px2mm(c.getY(), dpi); //mill origin is bottom left, so we have to mirror y coordinates
-          line(out, x, y);
-          break;
-        }
-        case SETPROPERTY:
-        {
-          IModelaProperty pr = (IModelaProperty) c.getProperty();
-          applyProperty(out, pr);
-          break;
-        }
+        double x = Util.px2mm(px, dpi);
+        double y = getBedHeight() - Util.px2mm(py, dpi); //mill origin is bottom left, so we have to mirror y coordinates
+        move(out, x, y);
       }
-    }
+
+      @Override
+      public void lineto(int px, int py)
+      {
+        double x = Util.px2mm(px, dpi);
+        double y = getBedHeight() - Util.px2mm(py, dpi); //mill origin is bottom left, so we have to mirror y coordinates
+        line(out, x, y);
+      }
+
+      @Override
+      public void setProperty(LaserProperty p)
+      {
+        IModelaProperty pr = (IModelaProperty) p;
+        applyProperty(out, pr);
+      }
+    });
   }
 
   @Override
@@ -26,7 +26,7 @@ import com.t_oster.liblasercut.LaserProperty;
 import com.t_oster.liblasercut.ProgressListener;
 import com.t_oster.liblasercut.Raster3dPart;
 import com.t_oster.liblasercut.RasterPart;
-import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandVisitor;
 import com.t_oster.liblasercut.VectorPart;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
@@ -300,27 +300,30 @@ public class LaosCutter extends LaserCutter
     return (int) (Util.px2mm(px, dpi) / this.mmPerStep);
   }
 
-  private byte[] generateVectorGCode(VectorPart vp, double resolution) throws UnsupportedEncodingException
+  private byte[] generateVectorGCode(VectorPart vp, final double resolution) throws UnsupportedEncodingException, IOException
   {
     ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
-    for (VectorCommand cmd : vp.getCommandList())
+    final PrintStream out = new PrintStream(result, true, "US-ASCII");
+    vp.accept(new VectorCommandVisitor()
     {
-      switch (cmd.getType())
+      @Override
+      public void moveto(int x, int y)
       {
-        case MOVETO:
-          move(out, cmd.getX(), cmd.getY(), resolution);
-          break;
-        case LINETO:
-          line(out, cmd.getX(), cmd.getY(), resolution);
-          break;
-        case SETPROPERTY:
-        {
-          this.setCurrentProperty(out, cmd.getProperty());
-          break;
-        }
+        move(out, x, y, resolution);
       }
-    }
+
+      @Override
+      public void lineto(int x, int y)
+      {
+        line(out, x, y, resolution);
+      }
+
+      @Override
+      public void setProperty(LaserProperty p)
+      {
+        setCurrentProperty(out, p);
+      }
+    });
     return result.toByteArray();
   }
 
@@ -444,32 +447,26 @@ public class LaosCutter extends LaserCutter
     this.setCurrentProperty(out, prop);
     float maxPower = this.currentPower;
     boolean bu = prop.isEngraveBottomUp();
+    byte[] bytes = new byte[rp.getRasterWidth()];
+    int[] bounds = new int[2];
     for (int line = bu ? rp.getRasterHeight()-1 : 0; bu ? line >= 0 : line < rp.getRasterHeight(); line += bu ? -1 : 1 )
     {
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
-      List<Byte> bytes = rp.getRasterLine(line);
-      //remove heading zeroes
-      while (bytes.size() > 0 && bytes.get(0) == 0)
-      {
-        bytes.remove(0);
-        lineStart.x += 1;
-      }
-      //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0)
-      {
-        bytes.remove(bytes.size() - 1);
-      }
-      if (bytes.size() > 0)
+      //skip heading and trailing zeroes
+      int size = rp.getRasterLine(line, bytes, bounds);
+      int first = bounds[0];
+      lineStart.x += first;
+      if (size > 0)
       {
         if (dirRight)
         {
           //move to the first nonempyt point of the line
           move(out, lineStart.x, lineStart.y, resolution);
-          byte old = bytes.get(0);
-          for (int pix = 0; pix < bytes.size(); pix++)
+          byte old = bytes[first];
+          for (int pix = 0; pix < size; pix++)
           {
-            if (bytes.get(pix) != old)
+            if (bytes[first + pix] != old)
             {
               if (old == 0)
               {
@@ -481,21 +478,21 @@ public class LaosCutter extends LaserCutter
                 line(out, lineStart.x + pix - 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          setPower(out, maxPower * (0xFF & bytes.get(bytes.size() - 1)) / 255);
-          line(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
+          setPower(out, maxPower * (0xFF & bytes[first + size - 1]) / 255);
+          line(out, lineStart.x + size - 1, lineStart.y, resolution);
         }
         else
         {
           //move to the last nonempty point of the line
-          move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-          byte old = bytes.get(bytes.size() - 1);
-          for (int pix = bytes.size() - 1; pix >= 0; pix--)
+          move(out, lineStart.x + size - 1, lineStart.y, resolution);
+          byte old = bytes[first + size - 1];
+          for (int pix = size - 1; pix >= 0; pix--)
           {
-            if (bytes.get(pix) != old || pix == 0)
+            if (bytes[first + pix] != old || pix == 0)
             {
               if (old == 0)
               {
@@ -507,11 +504,11 @@ public class LaosCutter extends LaserCutter
                 line(out, lineStart.x + pix + 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          setPower(out, maxPower * (0xFF & bytes.get(0)) / 255);
+          setPower(out, maxPower * (0xFF & bytes[first]) / 255);
           line(out, lineStart.x, lineStart.y, resolution);
         }
       }
@@ -540,20 +537,34 @@ public class LaosCutter extends LaserCutter
    */
   public List<Long> byteLineToDwords(List<Byte> line, boolean outputLeftToRight)
   {
-    List<Long> result = new ArrayList<Long>();
-    int s = line.size();
-    for (int i=0;i<s;i++)
+    byte[] bytes = new byte[line.size()];
+    int i = 0;
+    for (byte b : line)
     {
-      line.set(i, (byte) (Integer.reverse(0xFF&line.get(i))>>>24));
+      bytes[i++] = b;
     }
+    return byteLineToDwords(bytes, outputLeftToRight);
+  }
+
+  /**
+   * Same as byteLineToDwords(List, boolean) for a line stored
+   * in a byte array
+   * @param line
+   * @param outputLeftToRight
+   * @return
+   */
+  public List<Long> byteLineToDwords(byte[] line, boolean outputLeftToRight)
+  {
+    int s = line.length;
+    List<Long> result = new ArrayList<Long>((s + 3) / 4);
     for(int i=0; i<s; i+=4)
     {
-      result.add(
-        (((long) (i+3 < s ? 0xFF&line.get(i+3) : 0))<<24)
-        + (((long) (i+2 < s ? 0xFF&line.get(i+2) : 0))<<16)
-        + (((long) (i+1 < s ? 0xFF&line.get(i+1) : 0))<<8)
-        + ((long) (0xFF&line.get(i)))
-        );
+      long dword = 0;
+      for (int k = Math.min(3, s - 1 - i); k >= 0; k--)
+      {
+        dword = (dword << 8) | (Integer.reverse(0xFF & line[i + k]) >>> 24);
+      }
+      result.add(dword);
     }
     if (!outputLeftToRight)
     {
@@ -575,40 +586,37 @@ public class LaosCutter extends LaserCutter
     LaosEngraveProperty prop = rp.getLaserProperty() instanceof LaosEngraveProperty ? (LaosEngraveProperty) rp.getLaserProperty() : new LaosEngraveProperty(rp.getLaserProperty());
     this.setCurrentProperty(out, prop);
     boolean bu = prop.isEngraveBottomUp();
+    byte[] buffer = new byte[rp.getRasterLineLength()];
+    int[] bounds = new int[2];
     for (int line = bu ? rp.getRasterHeight()-1 : 0; bu ? line >= 0 : line < rp.getRasterHeight(); line += bu ? -1 : 1)
     {
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
-      List<Byte> bytes = rp.getRasterLine(line);
-      //remove heading zeroes
-      while (bytes.size() > 0 && bytes.get(0) == 0)
-      {
-        lineStart.x += 8;
-        bytes.remove(0);
-      }
-      //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size()-1) == 0)
-      {
-        bytes.remove(bytes.size()-1);
-      }
-      if (bytes.size() > 0)
+      //skip heading and trailing zeroes
+      int size = rp.getRasterLine(line, buffer, bounds);
+      lineStart.x += 8 * bounds[0];
+      if (size > 0)
       {
         //add space on the left side
+        int left = 0;
         int space = (int) Util.mm2px(this.getAddSpacePerRasterLine(), resolution);
         while (space > 0 && lineStart.x >= 8)
         {
-          bytes.add(0, (byte) 0);
+          left++;
           space -= 8;
           lineStart.x -=8;
         }
         //add space on the right side
+        int right = 0;
         space = (int) Util.mm2px(this.getAddSpacePerRasterLine(), resolution);
         int max = (int) Util.mm2px(this.getBedWidth(), resolution);
-        while (space > 0 && lineStart.x+(8*bytes.size()) < max-8)
+        while (space > 0 && lineStart.x+(8*(left+size+right)) < max-8)
         {
-          bytes.add((byte) 0);
+          right++;
           space -= 8;
         }
+        byte[] bytes = new byte[left + size + right];
+        System.arraycopy(buffer, bounds[0], bytes, left, size);
         if (dirRight)
         {
           //move to the first point of the line
@@ -695,7 +703,7 @@ public class LaosCutter extends LaserCutter
     currentPurge = false;
     currentVentilation = false;
     checkJob(job);
-    job.applyStartPoint();
+    job = job.getTranslatedJob();
     this.writeJobCode(job, fileOutputStream, null);
   }
 
@@ -713,7 +721,7 @@ public class LaosCutter extends LaserCutter
     ByteArrayOutputStream buffer = null;
     pl.taskChanged(this, "checking job");
     checkJob(job);
-    job.applyStartPoint();
+    job = job.getTranslatedJob();
     if (!useTftp)
     {
       pl.taskChanged(this, "connecting");
@@ -23,6 +23,7 @@ import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
@@ -146,28 +147,27 @@ public class Lasersaur extends LaserCutter {
     this.comPort = comPort;
   }
 
-  private byte[] generateVectorGCode(VectorPart vp, double resolution) throws UnsupportedEncodingException {
+  private byte[] generateVectorGCode(VectorPart vp, final double resolution) throws UnsupportedEncodingException, IOException {
     ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
-    for (VectorCommand cmd : vp.getCommandList()) {
-      switch (cmd.getType()) {
-        case MOVETO:
-          int x = cmd.getX();
-          int y = cmd.getY();
-          move(out, x, y, resolution);
-          break;
-        case LINETO:
-          x = cmd.getX();
-          y = cmd.getY();
-          line(out, x, y, resolution);
-          break;
-        case SETPROPERTY:
-          PowerSpeedFocusFrequencyProperty p = (PowerSpeedFocusFrequencyProperty) cmd.getProperty();
-          setPower(out, p.getPower());
-          setSpeed(out, p.getSpeed());
-          break;
+    final PrintStream out = new PrintStream(result, true, "US-ASCII");
+    vp.accept(new VectorCommandVisitor() {
+      @Override
+      public void moveto(int x, int y) {
+        move(out, x, y, resolution);
       }
-    }
+
+      @Override
+      public void lineto(int x, int y) {
+        line(out, x, y, resolution);
+      }
+
+      @Override
+      public void setProperty(LaserProperty property) {
+        PowerSpeedFocusFrequencyProperty p = (PowerSpeedFocusFrequencyProperty) property;
+        setPower(out, p.getPower());
+        setSpeed(out, p.getSpeed());
+      }
+    });
     return result.toByteArray();
   }
   private int currentPower = -1;
@@ -203,26 +203,22 @@ public class Lasersaur extends LaserCutter {
     Point rasterStart = rp.getRasterStart();
     PowerSpeedFocusProperty prop = (PowerSpeedFocusProperty) rp.getLaserProperty();
     setSpeed(out, prop.getSpeed());
+    byte[] bytes = new byte[rp.getRasterWidth()];
+    int[] bounds = new int[2];
     for (int line = 0; line < rp.getRasterHeight(); line++) {
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
-      List<Byte> bytes = rp.getRasterLine(line);
-      //remove heading zeroes
-      while (bytes.size() > 0 && bytes.get(0) == 0) {
-        bytes.remove(0);
-        lineStart.x += 1;
-      }
-      //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0) {
-        bytes.remove(bytes.size() - 1);
-      }
-      if (bytes.size() > 0) {
+      //skip heading and trailing zeroes
+      int size = rp.getRasterLine(line, bytes, bounds);
+      int first = bounds[0];
+      lineStart.x += first;
+      if (size > 0) {
         if (dirRight) {
           //move to the first nonempyt point of the line
           move(out, lineStart.x, lineStart.y, resolution);
-          byte old = bytes.get(0);
-          for (int pix = 0; pix < bytes.size(); pix++) {
-            if (bytes.get(pix) != old) {
+          byte old = bytes[first];
+          for (int pix = 0; pix < size; pix++) {
+            if (bytes[first + pix] != old) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -230,18 +226,18 @@ public class Lasersaur extends LaserCutter {
                 line(out, lineStart.x + pix - 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255);
-          line(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
+          setPower(out, prop.getPower() * (0xFF & bytes[first + size - 1]) / 255);
+          line(out, lineStart.x + size - 1, lineStart.y, resolution);
         } else {
           //move to the last nonempty point of the line
-          move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-          byte old = bytes.get(bytes.size() - 1);
-          for (int pix = bytes.size() - 1; pix >= 0; pix--) {
-            if (bytes.get(pix) != old || pix == 0) {
+          move(out, lineStart.x + size - 1, lineStart.y, resolution);
+          byte old = bytes[first + size - 1];
+          for (int pix = size - 1; pix >= 0; pix--) {
+            if (bytes[first + pix] != old || pix == 0) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -249,11 +245,11 @@ public class Lasersaur extends LaserCutter {
                 line(out, lineStart.x + pix + 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(0)) / 255);
+          setPower(out, prop.getPower() * (0xFF & bytes[first]) / 255);
           line(out, lineStart.x, lineStart.y, resolution);
         }
       }
@@ -270,36 +266,24 @@ public class Lasersaur extends LaserCutter {
     PowerSpeedFocusProperty prop = (PowerSpeedFocusProperty) rp.getLaserProperty();
     setSpeed(out, prop.getSpeed());
     setPower(out, prop.getPower());
+    byte[] bytes = new byte[rp.getRasterWidth()];
+    int[] bounds = new int[2];
     for (int line = 0; line < rp.getRasterHeight(); line++) {
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
-      List<Byte> bytes = new LinkedList<Byte>();
-      boolean lookForStart = true;
-      for (int x = 0; x < rp.getRasterWidth(); x++) {
-        if (lookForStart) {
-          if (rp.isBlack(x, line)) {
-            lookForStart = false;
-            bytes.add((byte) 255);
-          } else {
-            lineStart.x += 1;
-          }
-        } else {
-          bytes.add(rp.isBlack(x, line) ? (byte) 255 : (byte) 0);
-        }
-      }
-      //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0) {
-        bytes.remove(bytes.size() - 1);
-      }
-      if (bytes.size() > 0) {
+      //find the first and last black pixel
+      int size = rp.getRasterLinePixels(line, bytes, bounds);
+      int first = bounds[0];
+      lineStart.x += first;
+      if (size > 0) {
         if (dirRight) {
           //add some space to the left
           move(out, Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
           //move to the first nonempyt point of the line
           move(out, lineStart.x, lineStart.y, resolution);
-          byte old = bytes.get(0);
-          for (int pix = 0; pix < bytes.size(); pix++) {
-            if (bytes.get(pix) != old) {
+          byte old = bytes[first];
+          for (int pix = 0; pix < size; pix++) {
+            if (bytes[first + pix] != old) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -307,22 +291,22 @@ public class Lasersaur extends LaserCutter {
                 line(out, lineStart.x + pix - 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255);
-          line(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
+          setPower(out, prop.getPower() * (0xFF & bytes[first + size - 1]) / 255);
+          line(out, lineStart.x + size - 1, lineStart.y, resolution);
           //add some space to the right
-          move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+          move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + size - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
         } else {
           //add some space to the right
-          move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+          move(out, Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + size - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
           //move to the last nonempty point of the line
-          move(out, lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-          byte old = bytes.get(bytes.size() - 1);
-          for (int pix = bytes.size() - 1; pix >= 0; pix--) {
-            if (bytes.get(pix) != old || pix == 0) {
+          move(out, lineStart.x + size - 1, lineStart.y, resolution);
+          byte old = bytes[first + size - 1];
+          for (int pix = size - 1; pix >= 0; pix--) {
+            if (bytes[first + pix] != old || pix == 0) {
               if (old == 0) {
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -330,11 +314,11 @@ public class Lasersaur extends LaserCutter {
                 line(out, lineStart.x + pix + 1, lineStart.y, resolution);
                 move(out, lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          setPower(out, prop.getPower() * (0xFF & bytes.get(0)) / 255);
+          setPower(out, prop.getPower() * (0xFF & bytes[first]) / 255);
           line(out, lineStart.x, lineStart.y, resolution);
           //add some space to the left
           move(out, Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
@@ -371,7 +355,7 @@ public class Lasersaur extends LaserCutter {
     BufferedOutputStream out;
     pl.taskChanged(this, "checking job");
     checkJob(job);
-    job.applyStartPoint();
+    job = job.getTranslatedJob();
     pl.taskChanged(this, "connecting");
     CommPortIdentifier cpi = CommPortIdentifier.getPortIdentifier(this.getComPort());
     CommPort tmp = cpi.open("VisiCut", 10000);
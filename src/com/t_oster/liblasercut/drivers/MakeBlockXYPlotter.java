@@ -36,7 +36,6 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import purejavacomm.CommPortIdentifier;
@@ -221,23 +220,23 @@ public class MakeBlockXYPlotter extends LaserCutter
   }
   
   private void generateVectorGCode(VectorPart vp, double resolution, ProgressListener pl, int startProgress, int maxProgress) throws UnsupportedEncodingException, Exception {
-    int i = 0;
     int progress;
-    int max = vp.getCommandList().length;
-    for (VectorCommand cmd : vp.getCommandList()) {
-      switch (cmd.getType()) {
+    vp = vp.flattened();
+    int max = vp.getCommandCount();
+    for (int i = 0; i < max; i++) {
+      switch (vp.getCommandType(i)) {
         case MOVETO:
-          int x = cmd.getX();
-          int y = cmd.getY();
+          int x = vp.getX(i);
+          int y = vp.getY(i);
           this.move(x, y, resolution);
           break;
         case LINETO:
-          x = cmd.getX();
-          y = cmd.getY();
+          x = vp.getX(i);
+          y = vp.getY(i);
           this.line(x, y, resolution);
           break;
         case SETPROPERTY: // called once per part to set chosen properties
-          MakeBlockXYPlotterProperty p = (MakeBlockXYPlotterProperty) cmd.getProperty(); // only set with LASER tool
+          MakeBlockXYPlotterProperty p = (MakeBlockXYPlotterProperty) vp.getProperty(i); // only set with LASER tool
           // ensure percent power
           int pPercent = p.getPower();
           pPercent = pPercent<0?0:pPercent;
@@ -251,8 +250,7 @@ public class MakeBlockXYPlotter extends LaserCutter
           this.setDelay(dPercent);
           break;
       }
-      i++;
-      progress = (startProgress + (int) (i*(double) maxProgress/max));
+      progress = (startProgress + (int) ((i+1)*(double) maxProgress/max));
       pl.progressChanged(this, progress);
     }
   }
@@ -270,36 +268,24 @@ public class MakeBlockXYPlotter extends LaserCutter
     this.setDelay(prop.getSpeed());
     this.setPower(prop.getPower());
     
+    byte[] bytes = new byte[rp.getRasterWidth()];
+    int[] bounds = new int[2];
     for (int line = 0; line < rp.getRasterHeight(); line++) {
       Point lineStart = rasterStart.clone();
       lineStart.y += line;
-      List<Byte> bytes = new LinkedList<Byte>();
-      boolean lookForStart = true;
-      for (int x = 0; x < rp.getRasterWidth(); x++) {
-        if (lookForStart) {
-          if (rp.isBlack(x, line)) {
-            lookForStart = false;
-            bytes.add((byte) 255);
-          } else {
-            lineStart.x += 1;
-          }
-        } else {
-          bytes.add(rp.isBlack(x, line) ? (byte) 255 : (byte) 0);
-        }
-      }
-      //remove trailing zeroes
-      while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0) {
-        bytes.remove(bytes.size() - 1);
-      }
-      if (bytes.size() > 0) {
+      //find the first and last black pixel
+      int size = rp.getRasterLinePixels(line, bytes, bounds);
+      int first = bounds[0];
+      lineStart.x += first;
+      if (size > 0) {
         if (dirRight) {
           //add some space to the left
           this.move(Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
           //move to the first nonempyt point of the line
           this.move(lineStart.x, lineStart.y, resolution);
-          byte old = bytes.get(0);
-          for (int pix = 0; pix < bytes.size(); pix++) {
-            if (bytes.get(pix) != old) {
+          byte old = bytes[first];
+          for (int pix = 0; pix < size; pix++) {
+            if (bytes[first + pix] != old) {
               if (old == 0) {
                 this.move(lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -307,22 +293,22 @@ public class MakeBlockXYPlotter extends LaserCutter
                 this.line(lineStart.x + pix - 1, lineStart.y, resolution);
                 this.move(lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          this.setPower(prop.getPower() * (0xFF & bytes.get(bytes.size() - 1)) / 255);
-          this.line(lineStart.x + bytes.size() - 1, lineStart.y, resolution);
+          this.setPower(prop.getPower() * (0xFF & bytes[first + size - 1]) / 255);
+          this.line(lineStart.x + size - 1, lineStart.y, resolution);
           //add some space to the right
-          this.move(Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+          this.move(Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + size - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
         } else {
           //add some space to the right
-          this.move(Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + bytes.size() - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
+          this.move(Math.min((int) Util.mm2px(bedWidth, resolution), (int) (lineStart.x + size - 1 + Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
           //move to the last nonempty point of the line
-          this.move(lineStart.x + bytes.size() - 1, lineStart.y, resolution);
-          byte old = bytes.get(bytes.size() - 1);
-          for (int pix = bytes.size() - 1; pix >= 0; pix--) {
-            if (bytes.get(pix) != old || pix == 0) {
+          this.move(lineStart.x + size - 1, lineStart.y, resolution);
+          byte old = bytes[first + size - 1];
+          for (int pix = size - 1; pix >= 0; pix--) {
+            if (bytes[first + pix] != old || pix == 0) {
               if (old == 0) {
                 this.move(lineStart.x + pix, lineStart.y, resolution);
               } else {
@@ -330,11 +316,11 @@ public class MakeBlockXYPlotter extends LaserCutter
                 this.line(lineStart.x + pix + 1, lineStart.y, resolution);
                 this.move(lineStart.x + pix, lineStart.y, resolution);
               }
-              old = bytes.get(pix);
+              old = bytes[first + pix];
             }
           }
           //last point is also not "white"
-          this.setPower(prop.getPower() * (0xFF & bytes.get(0)) / 255);
+          this.setPower(prop.getPower() * (0xFF & bytes[first]) / 255);
           this.line(lineStart.x, lineStart.y, resolution);
           //add some space to the left
           this.move(Math.max(0, (int) (lineStart.x - Util.mm2px(this.addSpacePerRasterLine, resolution))), lineStart.y, resolution);
@@ -490,7 +476,7 @@ public class MakeBlockXYPlotter extends LaserCutter
     pl.progressChanged(this, 0); 
     pl.taskChanged(this, "checking job");
     checkJob(job);
-    job.applyStartPoint();
+    job = job.getTranslatedJob();
     pl.taskChanged(this, "connecting");
     this.connect();
     pl.taskChanged(this, "sending");
@@ -37,6 +37,8 @@ public class Marlin extends GenericGcodeDriver {
     //set some Marlin specific defaults
     setIdentificationLine("start");
     setWaitForOKafterEachLine(true);
+    // Marlin's serial receive buffer holds 128 bytes
+    setRxBufferSize(127);
     setBaudRate(115200);
     setLineend("CRLF");
     setInitDelay(0);
@@ -60,6 +62,7 @@ public class Marlin extends GenericGcodeDriver {
     // added field spindleMax, needs to be set to 100.0 for Marlin
     // but xstream initializes it to 0.0 when it is missing from XML
     if (this.spindleMax <= 0.0) this.spindleMax = 100.0;
+    if (this.rxBufferSize <= 0) this.rxBufferSize = 127;
   }
   
   @Override
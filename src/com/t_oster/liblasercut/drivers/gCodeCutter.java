@@ -30,7 +30,7 @@ import com.t_oster.liblasercut.LaserProperty;
 import com.t_oster.liblasercut.ProgressListener;
 import com.t_oster.liblasercut.Raster3dPart;
 import com.t_oster.liblasercut.RasterPart;
-import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandVisitor;
 import com.t_oster.liblasercut.VectorPart;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Util;
@@ -541,12 +541,12 @@ public class gCodeCutter extends LaserCutter
     }
   }
 
-  private byte[] generateVectorGCode(VectorPart vp, double resolution) throws UnsupportedEncodingException
+  private byte[] generateVectorGCode(VectorPart vp, final double resolution) throws UnsupportedEncodingException, IOException
   {
     ByteArrayOutputStream result = new ByteArrayOutputStream();
-    PrintStream out = new PrintStream(result, true, "US-ASCII");
+    final PrintStream out = new PrintStream(result, true, "US-ASCII");
 
-    gCodeEngraveProperty prop = vp.getCurrentCuttingProperty() instanceof gCodeEngraveProperty ? (gCodeEngraveProperty) vp.getCurrentCuttingProperty() : new gCodeEngraveProperty(vp.getCurrentCuttingProperty());
+    final gCodeEngraveProperty prop = vp.getCurrentCuttingProperty() instanceof gCodeEngraveProperty ? (gCodeEngraveProperty) vp.getCurrentCuttingProperty() : new gCodeEngraveProperty(vp.getCurrentCuttingProperty());
 
     this.setCurrentProperty(out, prop);    
     
@@ -564,23 +564,26 @@ public class gCodeCutter extends LaserCutter
         out.printf("G91 Z%.4f G90\n", prop.getPassesDepth());
       }
       
-      for (VectorCommand cmd : vp.getCommandList())
+      vp.accept(new VectorCommandVisitor()
       {
-        switch (cmd.getType())
+        @Override
+        public void moveto(int x, int y)
         {
-          case MOVETO:
-            move(out, Util.px2mm(cmd.getX(), resolution), Util.px2mm(cmd.getY(), resolution));
-            break;
-          case LINETO:
-            line(out, Util.px2mm(cmd.getX(), resolution), Util.px2mm(cmd.getY(), resolution), (int) prop.getSpeed());
-            break;
-          case SETPROPERTY:
-          {
-            this.setCurrentProperty(out, cmd.getProperty());
-            break;
-          }
+          move(out, Util.px2mm(x, resolution), Util.px2mm(y, resolution));
         }
-      }
+
+        @Override
+        public void lineto(int x, int y)
+        {
+          line(out, Util.px2mm(x, resolution), Util.px2mm(y, resolution), (int) prop.getSpeed());
+        }
+
+        @Override
+        public void setProperty(LaserProperty p)
+        {
+          setCurrentProperty(out, p);
+        }
+      });
     }
     
     if(this.gcodeLaserOnOff_Enable)    //Print power off - For Safety
@@ -725,36 +728,28 @@ public class gCodeCutter extends LaserCutter
       boolean dirRight = true;
       Point rasterStart = rp.getRasterStart();
       
+      byte[] bytes = new byte[rp.getRasterWidth()];
+      int[] bounds = new int[2];
       for (int line = bu ? rp.getRasterHeight()-1 : 0; bu ? line >= 0 : line < rp.getRasterHeight(); line += bu ? -1 : 1 )
       {
         Point lineStart = rasterStart.clone();
         lineStart.y += line;
-        List<Byte> bytes = rp.getInvertedRasterLine(line);
-
-        //remove heading zeroes
-        while (bytes.size() > 0 && bytes.get(0) == 0)
-        {
-          bytes.remove(0);
-          lineStart.x += 1;
-        }
-
-        //remove trailing zeroes
-        while (bytes.size() > 0 && bytes.get(bytes.size() - 1) == 0)
-        {
-          bytes.remove(bytes.size() - 1);
-        }
+        //skip heading and trailing zeroes
+        int size = rp.getInvertedRasterLine(line, bytes, bounds);
+        int first = bounds[0];
+        lineStart.x += first;
 
-        if (bytes.size() > 0)
+        if (size > 0)
         {
           if (dirRight)
           {
             //move to the first nonempyt point of the line
             move(out, Util.px2mm(lineStart.x, resolution), Util.px2mm(lineStart.y, resolution));
 
-            byte old = bytes.get(0);
-            for (int pix = 0; pix < bytes.size(); pix++)
+            byte old = bytes[first];
+            for (int pix = 0; pix < size; pix++)
             {
-              if (bytes.get(pix) != old)
+              if (bytes[first + pix] != old)
               {
                 if (old == 0)
                 {
@@ -765,21 +760,21 @@ public class gCodeCutter extends LaserCutter
                   setPower(maxPower * (0xFF & old) / 255);
                   line(out, Util.px2mm(lineStart.x + pix - 1, resolution), Util.px2mm(lineStart.y, resolution), (int) prop.getSpeed());
                 }
-                old = bytes.get(pix);
+                old = bytes[first + pix];
               }
             }
             //last point is also not "white"
-            setPower(maxPower * (0xFF & bytes.get(bytes.size() - 1)) / 255);
-            line(out, Util.px2mm(lineStart.x + bytes.size() - 1, resolution), Util.px2mm(lineStart.y, resolution), (int) prop.getSpeed());
+            setPower(maxPower * (0xFF & bytes[first + size - 1]) / 255);
+            line(out, Util.px2mm(lineStart.x + size - 1, resolution), Util.px2mm(lineStart.y, resolution), (int) prop.getSpeed());
           }
           else
           {
             //move to the last nonempty point of the line
-            move(out, Util.px2mm(lineStart.x + bytes.size() - 1, resolution), Util.px2mm(lineStart.y, resolution) );
-            byte old = bytes.get(bytes.size() - 1);
-            for (int pix = bytes.size() - 1; pix >= 0; pix--)
+            move(out, Util.px2mm(lineStart.x + size - 1, resolution), Util.px2mm(lineStart.y, resolution) );
+            byte old = bytes[first + size - 1];
+            for (int pix = size - 1; pix >= 0; pix--)
             {
-              if (bytes.get(pix) != old || pix == 0)
+              if (bytes[first + pix] != old || pix == 0)
               {
                 if (old == 0)
                 {
@@ -790,11 +785,11 @@ public class gCodeCutter extends LaserCutter
                   setPower( maxPower * (0xFF & old) / 255);
                   line(out, Util.px2mm(lineStart.x + pix + 1, resolution), Util.px2mm(lineStart.y, resolution), (int) prop.getSpeed());
                 }
-                old = bytes.get(pix);
+                old = bytes[first + pix];
               }
             }
             //last point is also not "white"
-            setPower(maxPower * (0xFF & bytes.get(0)) / 255);
+            setPower(maxPower * (0xFF & bytes[first]) / 255);
             line(out, Util.px2mm(lineStart.x, resolution), Util.px2mm(lineStart.y, resolution), (int) prop.getSpeed());
           }
         }
@@ -886,7 +881,7 @@ public class gCodeCutter extends LaserCutter
     pl.taskChanged(this, "Checking job");
     
     checkJob(job);
-    job.applyStartPoint();
+    job = job.getTranslatedJob();
     
     buffer = new ByteArrayOutputStream();
     out = new BufferedOutputStream(buffer);
@@ -22,20 +22,69 @@
  */
 package com.t_oster.liblasercut.utils;
 
-import com.t_oster.liblasercut.GreyscaleRaster;
+import com.t_oster.liblasercut.ScanlineRaster;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
 /**
+ * Adapts a BufferedImage to the GreyscaleRaster interface.
+ *
+ * For images of TYPE_BYTE_GRAY, TYPE_INT_RGB, TYPE_INT_ARGB and
+ * TYPE_3BYTE_BGR the pixels are read directly from the DataBuffer and
+ * converted with lookup tables, so no objects are allocated per pixel.
+ * The grey values are exactly the same as computed via getRGB for all
+ * other image types.
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public class BufferedImageAdapter implements GreyscaleRaster
+public class BufferedImageAdapter implements ScanlineRaster
 {
 
+  private static final double[] RED_WEIGHT = new double[256];
+  private static final double[] GREEN_WEIGHT = new double[256];
+  private static final double[] BLUE_WEIGHT = new double[256];
+
+  static
+  {
+    for (int i = 0; i < 256; i++)
+    {
+      RED_WEIGHT[i] = 0.3 * i;
+      GREEN_WEIGHT[i] = 0.59 * i;
+      BLUE_WEIGHT[i] = 0.11 * i;
+    }
+  }
+
+  private enum Layout
+  {
+    GENERIC,
+    BYTE_GRAY,
+    INT_RGB,
+    BYTE_BGR
+  }
+
   private BufferedImage img;
   private int colorShift = 0;
   private boolean invertColors = false;
+  private Layout layout = Layout.GENERIC;
+  private byte[] bytes;
+  private int[] ints;
+  //index of pixel x,y is offset + y * scanlineStride + x * pixelStride
+  private int offset;
+  private int scanlineStride;
+  private int pixelStride;
+  private int redOffset;
+  private int greenOffset;
+  private int blueOffset;
+  //luminance (0..255) to grey value including colorShift and inversion
+  private int[] greyForLuminance = new int[256];
+  //grey image sample to luminance, follows the color model like getRGB
+  private int[] luminanceForGray;
 
   public BufferedImageAdapter(BufferedImage img)
   {
@@ -46,10 +95,104 @@ public class BufferedImageAdapter implements GreyscaleRaster
   {
     this.img = img;
     this.invertColors = invertColors;
+    this.initLayout();
+    this.updateGreyTable();
+  }
+
+  private void initLayout()
+  {
+    WritableRaster raster = img.getRaster();
+    SampleModel sm = raster.getSampleModel();
+    int tx = raster.getSampleModelTranslateX();
+    int ty = raster.getSampleModelTranslateY();
+    switch (img.getType())
+    {
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB:
+      {
+        if (sm instanceof SinglePixelPackedSampleModel && raster.getDataBuffer() instanceof DataBufferInt)
+        {
+          SinglePixelPackedSampleModel spsm = (SinglePixelPackedSampleModel) sm;
+          DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+          ints = db.getData();
+          scanlineStride = spsm.getScanlineStride();
+          pixelStride = 1;
+          offset = db.getOffset() - ty * scanlineStride - tx;
+          layout = Layout.INT_RGB;
+        }
+        break;
+      }
+      case BufferedImage.TYPE_BYTE_GRAY:
+      case BufferedImage.TYPE_3BYTE_BGR:
+      {
+        if (sm instanceof ComponentSampleModel && raster.getDataBuffer() instanceof DataBufferByte)
+        {
+          ComponentSampleModel csm = (ComponentSampleModel) sm;
+          DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+          bytes = db.getData();
+          scanlineStride = csm.getScanlineStride();
+          pixelStride = csm.getPixelStride();
+          offset = db.getOffset() - ty * scanlineStride - tx * pixelStride;
+          int[] bandOffsets = csm.getBandOffsets();
+          if (img.getType() == BufferedImage.TYPE_BYTE_GRAY)
+          {
+            offset += bandOffsets[0];
+            luminanceForGray = new int[256];
+            for (int g = 0; g < 256; g++)
+            {
+              int rgb = img.getColorModel().getRGB(new byte[]{(byte) g});
+              luminanceForGray[g] = luminance(rgb);
+            }
+            layout = Layout.BYTE_GRAY;
+          }
+          else
+          {
+            redOffset = bandOffsets[0];
+            greenOffset = bandOffsets[1];
+            blueOffset = bandOffsets[2];
+            layout = Layout.BYTE_BGR;
+          }
+        }
+        break;
+      }
+    }
+  }
+
+  private void updateGreyTable()
+  {
+    for (int lum = 0; lum < 256; lum++)
+    {
+      int value = Math.max(Math.min(colorShift + lum, 255), 0);
+      greyForLuminance[lum] = invertColors ? 255 - value : value;
+    }
+  }
+
+  private static int luminance(int rgb)
+  {
+    return (int) (RED_WEIGHT[(rgb >> 16) & 0xFF] + GREEN_WEIGHT[(rgb >> 8) & 0xFF] + BLUE_WEIGHT[rgb & 0xFF]);
+  }
+
+  private int luminance(int x, int y)
+  {
+    switch (layout)
+    {
+      case BYTE_GRAY:
+        return luminanceForGray[bytes[offset + y * scanlineStride + x * pixelStride] & 0xFF];
+      case INT_RGB:
+        return luminance(ints[offset + y * scanlineStride + x]);
+      case BYTE_BGR:
+      {
+        int i = offset + y * scanlineStride + x * pixelStride;
+        return (int) (RED_WEIGHT[bytes[i + redOffset] & 0xFF] + GREEN_WEIGHT[bytes[i + greenOffset] & 0xFF] + BLUE_WEIGHT[bytes[i + blueOffset] & 0xFF]);
+      }
+      default:
+        return luminance(img.getRGB(x, y));
+    }
   }
 
   public void setColorShift(int cs){
       this.colorShift = cs;
+      this.updateGreyTable();
   }
 
   public int getColorShift(){
@@ -58,9 +201,7 @@ public class BufferedImageAdapter implements GreyscaleRaster
 
   public int getGreyScale(int x, int line)
   {
-    Color c = new Color(img.getRGB(x, line));
-    int value = colorShift+(int) (0.3 * c.getRed() + 0.59 * c.getGreen() + 0.11 * c.getBlue());
-    return invertColors ? 255-Math.max(Math.min(value, 255), 0) : Math.max(Math.min(value, 255), 0);
+    return greyForLuminance[luminance(x, line)];
   }
 
   public void setGreyScale(int x, int y, int grey)
@@ -69,6 +210,38 @@ public class BufferedImageAdapter implements GreyscaleRaster
     img.setRGB(x, y, c.getRGB());
   }
 
+  public int[] getRow(int y, int[] dst)
+  {
+    int width = img.getWidth();
+    if (layout == Layout.GENERIC)
+    {
+      img.getRGB(0, y, width, 1, dst, 0, width);
+      for (int x = 0; x < width; x++)
+      {
+        dst[x] = greyForLuminance[luminance(dst[x])];
+      }
+    }
+    else
+    {
+      for (int x = 0; x < width; x++)
+      {
+        dst[x] = greyForLuminance[luminance(x, y)];
+      }
+    }
+    return dst;
+  }
+  public void setRow(int y, int[] src)
+  {
+    int width = img.getWidth();
+    int[] rgb = new int[width];
+    for (int x = 0; x < width; x++)
+    {
+      int grey = src[x];
+      rgb[x] = 0xFF000000 | (grey << 16) | (grey << 8) | grey;
+    }
+    img.setRGB(0, y, width, 1, rgb, 0, width);
+  }
+
   public int getWidth()
   {
     return img.getWidth();
@@ -0,0 +1,191 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import java.util.Arrays;
+
+/**
+ * Finds the cheapest order of a few items, where each item has a cost
+ * depending on the item before it and some items have to come before others.
+ * Used to order groups of vector elements and the parts of a job.
+ */
+public class ConstrainedOrder
+{
+
+  //more items are ordered greedily
+  private static final int MAX_EXACT_ITEMS = 16;
+
+  /**
+   * @param start the cost of starting with each item
+   * @param cost cost[a][b] of continuing with item b after item a
+   * @param before before[a][b] if item a has to come before item b
+   * @return the indices of the items in the cheapest order found. Up to 16
+   * items are ordered exactly, more greedily.
+   * @throws IllegalArgumentException if the constraints contradict each other
+   */
+  public static int[] find(double[] start, double[][] cost, boolean[][] before)
+  {
+    if (start.length == 0)
+    {
+      return new int[0];
+    }
+    return start.length <= MAX_EXACT_ITEMS ? exactOrder(start, cost, before) : greedyOrder(start, cost, before);
+  }
+
+  /**
+   * @param before before[a][b] if item a has to come before item b
+   * @return the indices of the items in their given order, except that
+   * items are moved behind the items which have to come before them
+   * @throws IllegalArgumentException if the constraints contradict each other
+   */
+  public static int[] find(boolean[][] before)
+  {
+    int k = before.length;
+    //with equal costs, the greedy order always takes the first ready item
+    return greedyOrder(new double[k], new double[k][k], before);
+  }
+
+  /**
+   * Finds the cheapest order of the items with a dynamic program over
+   * the sets of items placed so far
+   */
+  private static int[] exactOrder(double[] start, double[][] cost, boolean[][] constraints)
+  {
+    int k = start.length;
+    //a bit for each item which has to come before item g
+    int[] before = new int[k];
+    for (int a = 0; a < k; a++)
+    {
+      for (int b = 0; b < k; b++)
+      {
+        if (constraints[a][b])
+        {
+          before[b] |= 1 << a;
+        }
+      }
+    }
+    int sets = 1 << k;
+    double[] best = new double[sets * k];
+    int[] previous = new int[sets * k];
+    Arrays.fill(best, Double.POSITIVE_INFINITY);
+    for (int g = 0; g < k; g++)
+    {
+      if (before[g] == 0)
+      {
+        best[(1 << g) * k + g] = start[g];
+      }
+    }
+    for (int set = 1; set < sets; set++)
+    {
+      for (int last = 0; last < k; last++)
+      {
+        double c = best[set * k + last];
+        if (c == Double.POSITIVE_INFINITY)
+        {
+          continue;
+        }
+        for (int g = 0; g < k; g++)
+        {
+          if ((set & (1 << g)) != 0 || (before[g] & ~set) != 0)
+          {
+            continue;
+          }
+          int next = set | (1 << g);
+          if (c + cost[last][g] < best[next * k + g])
+          {
+            best[next * k + g] = c + cost[last][g];
+            previous[next * k + g] = last;
+          }
+        }
+      }
+    }
+    int set = sets - 1;
+    int last = -1;
+    for (int g = 0; g < k; g++)
+    {
+      if (best[set * k + g] < Double.POSITIVE_INFINITY && (last < 0 || best[set * k + g] < best[set * k + last]))
+      {
+        last = g;
+      }
+    }
+    if (last < 0)
+    {
+      throw new IllegalArgumentException("The order constraints contradict each other");
+    }
+    int[] order = new int[k];
+    for (int i = k - 1; i >= 0; i--)
+    {
+      order[i] = last;
+      int p = previous[set * k + last];
+      set &= ~(1 << last);
+      last = p;
+    }
+    return order;
+  }
+
+  /**
+   * Always continues with the cheapest item whose predecessors are placed
+   */
+  private static int[] greedyOrder(double[] start, double[][] cost, boolean[][] before)
+  {
+    int k = start.length;
+    int[] order = new int[k];
+    boolean[] used = new boolean[k];
+    for (int i = 0; i < k; i++)
+    {
+      int best = -1;
+      double bestCost = Double.POSITIVE_INFINITY;
+      for (int g = 0; g < k; g++)
+      {
+        if (used[g] || !ready(g, before, used))
+        {
+          continue;
+        }
+        double c = i == 0 ? start[g] : cost[order[i - 1]][g];
+        if (best < 0 || c < bestCost)
+        {
+          best = g;
+          bestCost = c;
+        }
+      }
+      if (best < 0)
+      {
+        throw new IllegalArgumentException("The order constraints contradict each other");
+      }
+      order[i] = best;
+      used[best] = true;
+    }
+    return order;
+  }
+
+  /**
+   * @return if all items which have to come before item g are placed
+   */
+  private static boolean ready(int g, boolean[][] before, boolean[] used)
+  {
+    for (int a = 0; a < used.length; a++)
+    {
+      if (before[a][g] && !used[a])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import com.t_oster.liblasercut.JobPart;
+import com.t_oster.liblasercut.LaserCutter;
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Util;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reorders the parts of a LaserJob, so the head travels as little as possible
+ * from the end of one part to the start of the next one, starting at the
+ * start point of the job.
+ * If a LaserCutter is given, orders which make it split the job are avoided
+ * (see LaserCutter.canCombineJobParts). Raster parts are engraved before
+ * vector parts are cut, unless setEngraveBeforeCut(false) is called, and
+ * further constraints can be added.
+ */
+public class JobPartOptimizer
+{
+
+  private LaserCutter cutter;
+  private boolean engraveBeforeCut = true;
+  //travel distance in mm, which a split of the job is considered to cost
+  private double splitCost = 100000;
+  //pairs of parts, the first of which is sent before the second
+  private List<JobPart[]> constraints = new ArrayList<JobPart[]>();
+
+  public JobPartOptimizer()
+  {
+  }
+
+  public JobPartOptimizer(LaserCutter cutter)
+  {
+    this.cutter = cutter;
+  }
+
+  public boolean isEngraveBeforeCut()
+  {
+    return engraveBeforeCut;
+  }
+
+  public void setEngraveBeforeCut(boolean engraveBeforeCut)
+  {
+    this.engraveBeforeCut = engraveBeforeCut;
+  }
+
+  public double getSplitCost()
+  {
+    return splitCost;
+  }
+
+  /**
+   * @param splitCost the travel distance (in mm) a split of the job is
+   * worth. The default is high enough to always prefer fewer splits.
+   */
+  public void setSplitCost(double splitCost)
+  {
+    this.splitCost = splitCost;
+  }
+
+  /**
+   * Makes the part first be sent before the part then
+   */
+  public void addOrderConstraint(JobPart first, JobPart then)
+  {
+    constraints.add(new JobPart[]{first, then});
+  }
+
+  public void clearOrderConstraints()
+  {
+    constraints.clear();
+  }
+
+  /**
+   * @return a copy of the job with the same settings and the parts in
+   * the optimized order. The parts themselves are not copied.
+   */
+  public LaserJob optimize(LaserJob job)
+  {
+    LaserJob result = new LaserJob(job.getTitle(), job.getName(), job.getUser());
+    result.setStartPoint(job.getStartX(), job.getStartY());
+    for (JobPart p : optimize(job.getParts(), job.getStartX(), job.getStartY()))
+    {
+      result.addPart(p);
+    }
+    return result;
+  }
+
+  /**
+   * @return the parts in the optimized order, for a head starting at 0,0
+   */
+  public List<JobPart> optimize(List<JobPart> parts)
+  {
+    return optimize(parts, 0, 0);
+  }
+
+  /**
+   * @param startX the position (in mm) of the head before the first part,
+   * e.g. the start point of the job, which the parts are moved by when sent
+   * @param startY
+   * @return the parts in the optimized order
+   */
+  public List<JobPart> optimize(List<JobPart> parts, double startX, double startY)
+  {
+    int n = parts.size();
+    JobPart[] p = parts.toArray(new JobPart[n]);
+    double[] start = new double[n];
+    double[][] cost = new double[n][n];
+    for (int b = 0; b < n; b++)
+    {
+      start[b] = distance(startX, startY, Util.px2mm(p[b].getEntryX(), p[b].getDPI()), Util.px2mm(p[b].getEntryY(), p[b].getDPI()));
+      for (int a = 0; a < n; a++)
+      {
+        if (a != b)
+        {
+          cost[a][b] = distance(Util.px2mm(p[a].getExitX(), p[a].getDPI()), Util.px2mm(p[a].getExitY(), p[a].getDPI()),
+            Util.px2mm(p[b].getEntryX(), p[b].getDPI()), Util.px2mm(p[b].getEntryY(), p[b].getDPI()));
+          if (cutter != null && !cutter.canCombineJobParts(p[a], p[b]))
+          {
+            cost[a][b] += splitCost;
+          }
+        }
+      }
+    }
+    boolean[][] before = new boolean[n][n];
+    for (int a = 0; a < n; a++)
+    {
+      for (int b = 0; b < n; b++)
+      {
+        before[a][b] = engraveBeforeCut && !(p[a] instanceof VectorPart) && p[b] instanceof VectorPart;
+      }
+    }
+    List<JobPart> list = new ArrayList<JobPart>(parts);
+    for (JobPart[] c : constraints)
+    {
+      int first = list.indexOf(c[0]);
+      int then = list.indexOf(c[1]);
+      if (first >= 0 && then >= 0 && first != then)
+      {
+        before[first][then] = true;
+      }
+    }
+    List<JobPart> result = new ArrayList<JobPart>(n);
+    for (int i : ConstrainedOrder.find(start, cost, before))
+    {
+      result.add(p[i]);
+    }
+    return result;
+  }
+
+  private static double distance(double x1, double y1, double x2, double y2)
+  {
+    return Math.hypot(x2 - x1, y2 - y1);
+  }
+}
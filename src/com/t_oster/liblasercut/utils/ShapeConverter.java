@@ -33,10 +33,27 @@ import java.awt.geom.PathIterator;
 public class ShapeConverter
 {
 
+  private boolean keepCurves = false;
+
+  public boolean isKeepCurves()
+  {
+    return keepCurves;
+  }
+
+  /**
+   * If set, curves of the shape are added as CURVETO commands
+   * instead of being flattened to lines
+   */
+  public void setKeepCurves(boolean keepCurves)
+  {
+    this.keepCurves = keepCurves;
+  }
+
   /**
    * Adds the given Shape to the given VectorPart by converting it to
    * lineto and moveto commands, whose lines differs not more than
-   * 1 pixel from the original shape.
+   * 1 pixel from the original shape, or curveto commands if keepCurves
+   * is set.
    * 
    * @param shape the Shape to be added
    * @param vectorpart the Vectorpart the shape shall be added to
@@ -44,9 +61,11 @@ public class ShapeConverter
   public void addShape(Shape shape, VectorPart vectorpart)
   {
     AffineTransform scale = AffineTransform.getScaleInstance(1, 1);
-    PathIterator iter = shape.getPathIterator(scale, 1);
+    PathIterator iter = keepCurves ? shape.getPathIterator(scale) : shape.getPathIterator(scale, 1);
     int startx = 0;
     int starty = 0;
+    double lastx = 0;
+    double lasty = 0;
     while (!iter.isDone())
     {
       double[] test = new double[8];
@@ -61,10 +80,42 @@ public class ShapeConverter
       {
         vectorpart.lineto((int) test[0], (int) test[1]);
       }
+      else if (result == PathIterator.SEG_QUADTO)
+      {
+        //the same curve as a cubic one
+        vectorpart.curveto((int) (lastx + 2 * (test[0] - lastx) / 3), (int) (lasty + 2 * (test[1] - lasty) / 3),
+          (int) (test[2] + 2 * (test[0] - test[2]) / 3), (int) (test[3] + 2 * (test[1] - test[3]) / 3),
+          (int) test[2], (int) test[3]);
+      }
+      else if (result == PathIterator.SEG_CUBICTO)
+      {
+        vectorpart.curveto((int) test[0], (int) test[1], (int) test[2], (int) test[3], (int) test[4], (int) test[5]);
+      }
       else if (result == PathIterator.SEG_CLOSE)
       {
         vectorpart.lineto(startx, starty);
       }
+      //the end point of this segment, where the next one starts
+      if (result == PathIterator.SEG_QUADTO)
+      {
+        lastx = test[2];
+        lasty = test[3];
+      }
+      else if (result == PathIterator.SEG_CUBICTO)
+      {
+        lastx = test[4];
+        lasty = test[5];
+      }
+      else if (result == PathIterator.SEG_CLOSE)
+      {
+        lastx = startx;
+        lasty = starty;
+      }
+      else
+      {
+        lastx = test[0];
+        lasty = test[1];
+      }
       iter.next();
     }
   }
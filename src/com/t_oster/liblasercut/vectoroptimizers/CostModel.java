@@ -0,0 +1,52 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+
+/**
+ * Estimates the time a laser cutter needs for the parts of a job the
+ * ordering optimizers can change: moves with the laser off, changing the
+ * laser settings and starting a cut. The optimizers minimize the sum of
+ * these costs. All costs must be symmetric, i.e. a move from a to b
+ * costs as much as the move back.
+ *
+ * @see com.t_oster.liblasercut.LaserCutter#getVectorCostModel()
+ */
+public interface CostModel
+{
+
+  /**
+   * @param dx the distance along the X axis in mm
+   * @param dy the distance along the Y axis in mm
+   * @return the time in seconds to move the head by (dx, dy) with the laser off
+   */
+  public double getTravelCost(double dx, double dy);
+
+  /**
+   * @return the time in seconds to change the settings from one property to
+   * the other, 0 if they are equal
+   */
+  public double getPropertySwitchCost(LaserProperty from, LaserProperty to);
+
+  /**
+   * @return the time in seconds to start a cut with the given property
+   */
+  public double getPierceCost(LaserProperty property);
+}
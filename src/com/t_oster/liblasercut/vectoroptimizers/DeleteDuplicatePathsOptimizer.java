@@ -18,53 +18,150 @@
  **/
 package com.t_oster.liblasercut.vectoroptimizers;
 
+import com.t_oster.liblasercut.LaserProperty;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This VectorOptimizer removes all duplicate (identical) Elements
  * and sorts the remaining (unique) elements with a NearestVectorOptimizer
+ * (unless it is followed by other stages of a VectorOptimizerPipeline).
+ * Paths are also duplicates if they are drawn in the opposite direction
+ * or, for closed paths, start at a different point of the loop.
+ * Of each set of duplicates with the same property, the first one is kept.
  * @author René Bohne
  */
 public class DeleteDuplicatePathsOptimizer extends VectorOptimizer
 {
 
-  @Override
-  protected List<Element> sort(List<Element> e)
+  /**
+   * The points of a path in a canonical order, together with its property
+   */
+  private static class PathKey
   {
-    List<Element> result = new LinkedList<Element>();
-    if (e.isEmpty())
+
+    private final int[] coords;
+    private final LaserProperty prop;
+    private final int hash;
+
+    PathKey(int[] coords, LaserProperty prop)
     {
-      return result;
+      this.coords = coords;
+      this.prop = prop;
+      this.hash = 31 * Arrays.hashCode(coords) + (prop == null ? 0 : prop.hashCode());
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof PathKey))
+      {
+        return false;
+      }
+      PathKey k = (PathKey) o;
+      return hash == k.hash && Arrays.equals(coords, k.coords)
+        && (prop == null ? k.prop == null : prop.equals(k.prop));
+    }
+  }
+
+  /**
+   * compares the points of the path p, read from index a in direction da
+   * and from index b in direction db (each +1 or -1), cyclic if
+   * the path is closed
+   */
+  private static int compare(int[] p, int count, int a, int da, int b, int db)
+  {
+    for (int i = 0; i < count; i++)
+    {
+      int c = p[2 * a] != p[2 * b] ? (p[2 * a] < p[2 * b] ? -1 : 1)
+        : p[2 * a + 1] != p[2 * b + 1] ? (p[2 * a + 1] < p[2 * b + 1] ? -1 : 1) : 0;
+      if (c != 0)
+      {
+        return c;
+      }
+      a = (a + da + count) % count;
+      b = (b + db + count) % count;
+    }
+    return 0;
+  }
+
+  static int[] canonicalPath(Element e)
+  {
+    int count = e.getPointCount();
+    int[] p = new int[2 * count];
+    for (int i = 0; i < count; i++)
+    {
+      p[2 * i] = e.getX(i);
+      p[2 * i + 1] = e.getY(i);
     }
-    
-    List<Element> doubleEntries = new LinkedList<Element>();
-    
-    for(int i=0;i<e.size();i++)
+    //start index and direction of the canonical order
+    int best = 0;
+    int dir = 1;
+    if (e.isClosedPath())
     {
-      for(int j=0;j<e.size();j++)
+      //the last point repeats the first one, so the loop has count-1 points.
+      //Start at the smallest point in the direction giving the smallest sequence
+      int loop = count - 1;
+      for (int k = 0; k < loop; k++)
       {
-        if(i!=j)
+        for (int d = -1; d <= 1; d += 2)
         {
-         if(e.get(i).equals(e.get(j)))
-         {
-           if(!doubleEntries.contains(e.get(j)))
-           {
-            doubleEntries.add(e.get(i));
-           }
-         }
+          if (compare(p, loop, k, d, best, dir) < 0)
+          {
+            best = k;
+            dir = d;
+          }
         }
       }
+      int[] result = new int[2 * count];
+      for (int k = 0, j = best; k < count; k++, j = (j + dir + loop) % loop)
+      {
+        result[2 * k] = p[2 * j];
+        result[2 * k + 1] = p[2 * j + 1];
+      }
+      return result;
+    }
+    else if (compare(p, count, count - 1, -1, 0, 1) < 0)
+    {
+      //reversed path is smaller
+      int[] result = new int[2 * count];
+      for (int k = 0; k < count; k++)
+      {
+        result[2 * k] = p[2 * (count - 1 - k)];
+        result[2 * k + 1] = p[2 * (count - 1 - k) + 1];
+      }
+      return result;
     }
-    
-    for(Element doubleEntry : doubleEntries)
+    return p;
+  }
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    return configure(new NearestVectorOptimizer()).sort(apply(e));
+  }
+
+  @Override
+  protected List<Element> apply(List<Element> e)
+  {
+    List<Element> unique = new LinkedList<Element>();
+    Set<PathKey> seen = new HashSet<PathKey>();
+    for (Element el : e)
     {
-      e.remove(doubleEntry);
+      if (seen.add(new PathKey(canonicalPath(el), el.prop)))
+      {
+        unique.add(el);
+      }
     }
-    
-    NearestVectorOptimizer vo = new NearestVectorOptimizer();
-    result = vo.sort(e);
-    
-    return result;
+    return unique;
   }
 }
@@ -0,0 +1,430 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This VectorOptimizer removes the parts of line segments which lie on top
+ * of another segment with the same property, e.g. the shared edges of
+ * adjacent parts exported by a CAD program. Segments are collinear if the
+ * end points of the shorter one are within the tolerance of the line
+ * through the longer one. The first segment covering a part of a line is kept.
+ * The kept segments are stored in a uniform grid, so each segment is
+ * only compared to the segments around it.
+ * The remaining elements are sorted with a NearestVectorOptimizer, unless
+ * the optimizer is followed by other stages of a VectorOptimizerPipeline.
+ */
+public class DeleteOverlappingSegmentsOptimizer extends VectorOptimizer
+{
+
+  private double tolerance = 1;
+
+  public DeleteOverlappingSegmentsOptimizer()
+  {
+  }
+
+  /**
+   * @param tolerance the maximal distance (in pixels) of segments which
+   * are considered to be on top of each other
+   */
+  public DeleteOverlappingSegmentsOptimizer(double tolerance)
+  {
+    setTolerance(tolerance);
+  }
+
+  public double getTolerance()
+  {
+    return tolerance;
+  }
+
+  public void setTolerance(double tolerance)
+  {
+    this.tolerance = Math.max(0, tolerance);
+  }
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    return configure(new NearestVectorOptimizer()).sort(apply(e));
+  }
+
+  @Override
+  protected List<Element> apply(List<Element> e)
+  {
+    Element[] elements = e.toArray(new Element[e.size()]);
+    return new Segments(elements).rebuild(elements);
+  }
+
+  /**
+   * distance of (px, py) to the line through (ax, ay) with the direction
+   * (dx, dy) of length len
+   */
+  private static double lineDistance(double px, double py, double ax, double ay, double dx, double dy, double len)
+  {
+    return Math.abs(dx * (py - ay) - dy * (px - ax)) / len;
+  }
+
+  /**
+   * The segments of one apply() call and the pieces of them which are kept
+   */
+  private class Segments
+  {
+
+    //all segments of the input
+    private int segmentCount;
+    private int[] x1;
+    private int[] y1;
+    private int[] x2;
+    private int[] y2;
+    private int[] segmentProperty;
+
+    //the kept pieces, each a part [t0, t1] of a segment
+    private int pieceCount;
+    private int[] pieceSegment;
+    private double[] pieceT0;
+    private double[] pieceT1;
+    private int[] pieceStamp;
+
+    //grid cells, each a linked list of piece entries
+    private double minX;
+    private double minY;
+    private double cellSize;
+    private int cols;
+    private int rows;
+    private int[] cellHead;
+    private int entryCount;
+    private int[] entryNext;
+    private int[] entryPiece;
+
+    /**
+     * Collects the segments of the elements and keeps the parts which
+     * are not covered by earlier segments
+     */
+    Segments(Element[] elements)
+    {
+      collectSegments(elements);
+      buildGrid();
+      pieceCount = 0;
+      pieceSegment = new int[Math.max(16, segmentCount)];
+      pieceT0 = new double[pieceSegment.length];
+      pieceT1 = new double[pieceSegment.length];
+      pieceStamp = new int[pieceSegment.length];
+      for (int s = 0; s < segmentCount; s++)
+      {
+        removeOverlaps(s);
+      }
+    }
+
+    private void collectSegments(Element[] elements)
+    {
+      segmentCount = 0;
+      for (Element el : elements)
+      {
+        segmentCount += el.getPointCount() - 1;
+      }
+      x1 = new int[segmentCount];
+      y1 = new int[segmentCount];
+      x2 = new int[segmentCount];
+      y2 = new int[segmentCount];
+      segmentProperty = new int[segmentCount];
+      Map<LaserProperty, Integer> properties = new HashMap<LaserProperty, Integer>();
+      int s = 0;
+      for (Element el : elements)
+      {
+        Integer prop = properties.get(el.prop);
+        if (prop == null)
+        {
+          prop = properties.size();
+          properties.put(el.prop, prop);
+        }
+        for (int i = 1; i < el.getPointCount(); i++)
+        {
+          x1[s] = el.getX(i - 1);
+          y1[s] = el.getY(i - 1);
+          x2[s] = el.getX(i);
+          y2[s] = el.getY(i);
+          segmentProperty[s] = prop;
+          s++;
+        }
+      }
+    }
+
+    private void buildGrid()
+    {
+      double maxX = 0;
+      double maxY = 0;
+      double length = 0;
+      minX = 0;
+      minY = 0;
+      for (int s = 0; s < segmentCount; s++)
+      {
+        if (s == 0)
+        {
+          minX = maxX = x1[s];
+          minY = maxY = y1[s];
+        }
+        minX = Math.min(minX, Math.min(x1[s], x2[s]));
+        minY = Math.min(minY, Math.min(y1[s], y2[s]));
+        maxX = Math.max(maxX, Math.max(x1[s], x2[s]));
+        maxY = Math.max(maxY, Math.max(y1[s], y2[s]));
+        length += Math.hypot(x2[s] - x1[s], y2[s] - y1[s]);
+      }
+      double w = maxX - minX + 1;
+      double h = maxY - minY + 1;
+      int n = Math.max(1, segmentCount);
+      //cells of about the average segment length, but not more than 4 per segment.
+      //A cell must be at least twice the tolerance for the neighbourhood search
+      cellSize = Math.max(Math.max(length / n, Math.sqrt(w * h / (4.0 * n))), Math.max(1, 2 * tolerance));
+      cols = (int) (w / cellSize) + 1;
+      rows = (int) (h / cellSize) + 1;
+      cellHead = new int[cols * rows];
+      Arrays.fill(cellHead, -1);
+      entryCount = 0;
+      entryNext = new int[Math.max(16, 2 * segmentCount)];
+      entryPiece = new int[entryNext.length];
+    }
+
+    private int column(double x)
+    {
+      return (int) Math.max(0, Math.min(cols - 1, Math.floor((x - minX) / cellSize)));
+    }
+
+    private int row(double y)
+    {
+      return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellSize)));
+    }
+
+    /**
+     * number of samples along a line of the given length, so that
+     * samples are at most half a cell apart
+     */
+    private int samples(double length)
+    {
+      return (int) Math.ceil(2 * length / cellSize) + 1;
+    }
+
+    private void addPiece(int s, double t0, double t1)
+    {
+      if (pieceCount == pieceSegment.length)
+      {
+        int size = pieceCount * 2;
+        pieceSegment = Arrays.copyOf(pieceSegment, size);
+        pieceT0 = Arrays.copyOf(pieceT0, size);
+        pieceT1 = Arrays.copyOf(pieceT1, size);
+        pieceStamp = Arrays.copyOf(pieceStamp, size);
+      }
+      int piece = pieceCount++;
+      pieceSegment[piece] = s;
+      pieceT0[piece] = t0;
+      pieceT1[piece] = t1;
+      pieceStamp[piece] = -1;
+      double dx = x2[s] - x1[s];
+      double dy = y2[s] - y1[s];
+      int count = samples(Math.hypot(dx, dy) * (t1 - t0));
+      int lastCell = -1;
+      for (int i = 0; i < count; i++)
+      {
+        double t = count == 1 ? t0 : t0 + (t1 - t0) * i / (count - 1);
+        int cell = row(y1[s] + t * dy) * cols + column(x1[s] + t * dx);
+        if (cell != lastCell)
+        {
+          if (entryCount == entryNext.length)
+          {
+            entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+            entryPiece = Arrays.copyOf(entryPiece, entryCount * 2);
+          }
+          entryNext[entryCount] = cellHead[cell];
+          entryPiece[entryCount] = piece;
+          cellHead[cell] = entryCount++;
+          lastCell = cell;
+        }
+      }
+    }
+
+    /**
+     * Compares segment s to the kept pieces around it and keeps
+     * the parts of s which are not covered by any of them
+     */
+    private void removeOverlaps(int s)
+    {
+      double dx = x2[s] - x1[s];
+      double dy = y2[s] - y1[s];
+      double len = Math.hypot(dx, dy);
+      if (len == 0)
+      {
+        //single points are always kept, but never cover anything
+        addPiece(s, 0, 1);
+        return;
+      }
+      double[] covered = null;
+      int coveredCount = 0;
+      int count = samples(len);
+      int lastCell = -1;
+      for (int i = 0; i < count; i++)
+      {
+        double t = count == 1 ? 0 : (double) i / (count - 1);
+        int c = column(x1[s] + t * dx);
+        int r = row(y1[s] + t * dy);
+        int cell = r * cols + c;
+        if (cell == lastCell)
+        {
+          continue;
+        }
+        lastCell = cell;
+        for (int rr = Math.max(0, r - 1); rr <= Math.min(rows - 1, r + 1); rr++)
+        {
+          for (int cc = Math.max(0, c - 1); cc <= Math.min(cols - 1, c + 1); cc++)
+          {
+            for (int entry = cellHead[rr * cols + cc]; entry != -1; entry = entryNext[entry])
+            {
+              int piece = entryPiece[entry];
+              int k = pieceSegment[piece];
+              if (pieceStamp[piece] == s || segmentProperty[k] != segmentProperty[s])
+              {
+                continue;
+              }
+              pieceStamp[piece] = s;
+              double kdx = x2[k] - x1[k];
+              double kdy = y2[k] - y1[k];
+              double kx0 = x1[k] + pieceT0[piece] * kdx;
+              double ky0 = y1[k] + pieceT0[piece] * kdy;
+              double kx1 = x1[k] + pieceT1[piece] * kdx;
+              double ky1 = y1[k] + pieceT1[piece] * kdy;
+              double klen = Math.hypot(kx1 - kx0, ky1 - ky0);
+              if (klen == 0)
+              {
+                continue;
+              }
+              boolean collinear = klen < len
+                ? lineDistance(kx0, ky0, x1[s], y1[s], dx, dy, len) <= tolerance
+                && lineDistance(kx1, ky1, x1[s], y1[s], dx, dy, len) <= tolerance
+                : lineDistance(x1[s], y1[s], kx0, ky0, kx1 - kx0, ky1 - ky0, klen) <= tolerance
+                && lineDistance(x2[s], y2[s], kx0, ky0, kx1 - kx0, ky1 - ky0, klen) <= tolerance;
+              if (!collinear)
+              {
+                continue;
+              }
+              double a = ((kx0 - x1[s]) * dx + (ky0 - y1[s]) * dy) / (len * len);
+              double b = ((kx1 - x1[s]) * dx + (ky1 - y1[s]) * dy) / (len * len);
+              double lo = Math.max(0, Math.min(a, b));
+              double hi = Math.min(1, Math.max(a, b));
+              if (hi > lo)
+              {
+                if (covered == null)
+                {
+                  covered = new double[8];
+                }
+                else if (2 * coveredCount == covered.length)
+                {
+                  covered = Arrays.copyOf(covered, covered.length * 2);
+                }
+                covered[2 * coveredCount] = lo;
+                covered[2 * coveredCount + 1] = hi;
+                coveredCount++;
+              }
+            }
+          }
+        }
+      }
+      if (coveredCount == 0)
+      {
+        addPiece(s, 0, 1);
+        return;
+      }
+      //sort the covered intervals by their start (there are only a few)
+      for (int i = 1; i < coveredCount; i++)
+      {
+        double lo = covered[2 * i];
+        double hi = covered[2 * i + 1];
+        int j = i - 1;
+        while (j >= 0 && covered[2 * j] > lo)
+        {
+          covered[2 * j + 2] = covered[2 * j];
+          covered[2 * j + 3] = covered[2 * j + 1];
+          j--;
+        }
+        covered[2 * j + 2] = lo;
+        covered[2 * j + 3] = hi;
+      }
+      //keep the gaps which are longer than the tolerance
+      double minGap = tolerance / len;
+      double cursor = 0;
+      for (int i = 0; i < coveredCount; i++)
+      {
+        if (covered[2 * i] - cursor > minGap)
+        {
+          addPiece(s, cursor, covered[2 * i]);
+        }
+        cursor = Math.max(cursor, covered[2 * i + 1]);
+      }
+      if (1 - cursor > minGap)
+      {
+        addPiece(s, cursor, 1);
+      }
+    }
+
+    private int xAt(int s, double t)
+    {
+      return t == 0 ? x1[s] : t == 1 ? x2[s] : (int) Math.round(x1[s] + t * (x2[s] - x1[s]));
+    }
+
+    private int yAt(int s, double t)
+    {
+      return t == 0 ? y1[s] : t == 1 ? y2[s] : (int) Math.round(y1[s] + t * (y2[s] - y1[s]));
+    }
+
+    /**
+     * Creates the elements from the kept pieces. The pieces are in the
+     * order of the segments, so an element is only split where
+     * a piece was removed.
+     */
+    private List<Element> rebuild(Element[] elements)
+    {
+      List<Element> result = new LinkedList<Element>();
+      int piece = 0;
+      int s = 0;
+      for (Element el : elements)
+      {
+        int end = s + el.getPointCount() - 1;
+        Element cur = null;
+        int lastSegment = -1;
+        for (; piece < pieceCount && pieceSegment[piece] < end; piece++)
+        {
+          int ps = pieceSegment[piece];
+          boolean connected = cur != null && lastSegment == ps - 1 && pieceT0[piece] == 0;
+          if (!connected)
+          {
+            cur = new Element(el.prop, xAt(ps, pieceT0[piece]), yAt(ps, pieceT0[piece]));
+            result.add(cur);
+          }
+          cur.lineto(xAt(ps, pieceT1[piece]), yAt(ps, pieceT1[piece]));
+          lastSegment = pieceT1[piece] == 1 ? ps : -1;
+        }
+        s = end;
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This VectorOptimizer removes commands which do not change what is cut:
+ * MOVETOs followed by another MOVETO or to the current position,
+ * LINETOs which do not move the head while the laser is on,
+ * SETPROPERTYs with a property equal to the current one or followed by
+ * another SETPROPERTY, and LINETOs continuing the previous line in the
+ * same direction.
+ * optimize() does this in a single pass over the commands, keeping their
+ * order and curves, so grouping by property, rotating closed paths and the
+ * cost model do not apply to it. As a stage of a VectorOptimizerPipeline
+ * it cleans up the points of each path.
+ */
+public class DeleteRedundantCommandsOptimizer extends VectorOptimizer
+{
+
+  //shared with the copies sorting property groups
+  private AtomicLong removed = new AtomicLong();
+
+  /**
+   * @return the number of commands (or points of paths, as a pipeline
+   * stage) removed during the last call of optimize()
+   */
+  public long getRemovedCommands()
+  {
+    return removed.get();
+  }
+
+  @Override
+  protected void reset()
+  {
+    removed.set(0);
+  }
+
+  /**
+   * Removes the redundant commands without reordering anything. The
+   * settings of VectorOptimizer are not used.
+   */
+  @Override
+  public VectorPart optimize(VectorPart vp)
+  {
+    reset();
+    VectorPart result = new VectorPart(vp.getProperty(0), vp.getDPI());
+    LaserProperty prop = vp.getProperty(0);
+    LaserProperty nextProp = prop;
+    //position of the head, if it is known yet, and if the laser is on there
+    int x = 0;
+    int y = 0;
+    boolean known = false;
+    boolean cutting = false;
+    //a MOVETO which is only written before the next cut
+    boolean moving = false;
+    int moveX = 0;
+    int moveY = 0;
+    //a LINETO from (lineX, lineY) to (x, y), which is only written
+    //when it can not be extended any more
+    boolean line = false;
+    int lineX = 0;
+    int lineY = 0;
+    for (int i = 1; i < vp.getCommandCount(); i++)
+    {
+      switch (vp.getCommandType(i))
+      {
+        case SETPROPERTY:
+          nextProp = vp.getProperty(i);
+          break;
+        case MOVETO:
+          moving = true;
+          moveX = vp.getX(i);
+          moveY = vp.getY(i);
+          break;
+        case LINETO:
+        {
+          int nx = vp.getX(i);
+          int ny = vp.getY(i);
+          boolean newProp = !nextProp.equals(prop);
+          boolean move = moving && (!known || moveX != x || moveY != y);
+          moving = false;
+          if (!newProp && !move && cutting)
+          {
+            if (nx == x && ny == y)
+            {
+              break;
+            }
+            if (line && sameDirection(lineX, lineY, x, y, nx, ny))
+            {
+              x = nx;
+              y = ny;
+              break;
+            }
+          }
+          if (line)
+          {
+            result.lineto(x, y);
+          }
+          if (newProp)
+          {
+            result.setProperty(nextProp);
+            prop = nextProp;
+            cutting = false;
+          }
+          if (move)
+          {
+            result.moveto(moveX, moveY);
+            x = moveX;
+            y = moveY;
+            cutting = false;
+          }
+          //the first line after a move is kept, even if it is a dot
+          line = true;
+          lineX = x;
+          lineY = y;
+          x = nx;
+          y = ny;
+          known = true;
+          cutting = true;
+          break;
+        }
+        case ARCTO:
+        case CURVETO:
+        {
+          if (line)
+          {
+            result.lineto(x, y);
+            line = false;
+          }
+          if (!nextProp.equals(prop))
+          {
+            result.setProperty(nextProp);
+            prop = nextProp;
+          }
+          if (moving && (!known || moveX != x || moveY != y))
+          {
+            result.moveto(moveX, moveY);
+          }
+          moving = false;
+          if (vp.getCommandType(i) == VectorCommand.CmdType.ARCTO)
+          {
+            result.arcto(vp.getCenterX(i), vp.getCenterY(i), vp.getSweep(i));
+          }
+          else
+          {
+            result.curveto(vp.getControlX(i, 0), vp.getControlY(i, 0), vp.getControlX(i, 1), vp.getControlY(i, 1), vp.getX(i), vp.getY(i));
+          }
+          x = vp.getX(i);
+          y = vp.getY(i);
+          known = true;
+          cutting = true;
+          break;
+        }
+      }
+    }
+    if (line)
+    {
+      result.lineto(x, y);
+    }
+    //a final move still takes the head somewhere, and a final property
+    //is the one the part ends with
+    if (moving && (!known || moveX != x || moveY != y))
+    {
+      result.moveto(moveX, moveY);
+    }
+    if (!nextProp.equals(prop))
+    {
+      result.setProperty(nextProp);
+    }
+    removed.addAndGet(vp.getCommandCount() - result.getCommandCount());
+    return result;
+  }
+
+  /**
+   * @return true if (x2, y2) continues the line from (x0, y0) to (x1, y1)
+   * in the same direction
+   */
+  private static boolean sameDirection(int x0, int y0, int x1, int y1, int x2, int y2)
+  {
+    long ax = x1 - x0;
+    long ay = y1 - y0;
+    long bx = x2 - x1;
+    long by = y2 - y1;
+    return ax * by == ay * bx && ax * bx + ay * by > 0;
+  }
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    List<Element> result = new LinkedList<Element>();
+    long count = 0;
+    for (Element el : e)
+    {
+      if (el.hasCurves())
+      {
+        //the points of flattened arcs and curves are not redundant
+        result.add(el);
+        continue;
+      }
+      int points = el.getPointCount();
+      int[] p = new int[2 * points];
+      for (int k = 0; k < points; k++)
+      {
+        p[2 * k] = el.getX(k);
+        p[2 * k + 1] = el.getY(k);
+      }
+      int n = SimplifyPathsOptimizer.mergeCollinear(p, points);
+      count += points - n;
+      result.add(n < points ? new Element(el.prop, p, n) : el);
+    }
+    removed.addAndGet(count);
+    return result;
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+
+/**
+ * The default CostModel: the cost of a move is its length in mm and
+ * everything else is free. Optimizers using it minimize the travel distance.
+ */
+public class DistanceCostModel implements CostModel
+{
+
+  @Override
+  public double getTravelCost(double dx, double dy)
+  {
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  @Override
+  public double getPropertySwitchCost(LaserProperty from, LaserProperty to)
+  {
+    return 0;
+  }
+
+  @Override
+  public double getPierceCost(LaserProperty property)
+  {
+    return 0;
+  }
+}
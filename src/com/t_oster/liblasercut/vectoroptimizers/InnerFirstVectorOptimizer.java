@@ -47,9 +47,9 @@ public class InnerFirstVectorOptimizer extends VectorOptimizer
     @Override
     public int compare(Element a, Element b)
     {
-      Integer av = new Integer(getValue(a));
-      Integer bv = new Integer(getValue(b));
-      return av.compareTo(bv);
+      int av = getValue(a);
+      int bv = getValue(b);
+      return av < bv ? -1 : (av == bv ? 0 : 1);
     }
   }
 
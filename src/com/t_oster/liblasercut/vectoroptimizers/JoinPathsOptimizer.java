@@ -0,0 +1,193 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This VectorOptimizer joins elements with the same property, where one
+ * ends at the start or end of the other, into a single path.
+ * Elements are reversed where needed. This saves a travel move and
+ * a pierce per join, e.g. for polylines which were imported
+ * as single segments.
+ * The end points are kept in a hash map, so each element is only compared
+ * to the elements touching it. Closed paths are not joined.
+ * The joined elements are sorted with a NearestVectorOptimizer, unless
+ * the optimizer is followed by other stages of a VectorOptimizerPipeline.
+ */
+public class JoinPathsOptimizer extends VectorOptimizer
+{
+
+  private static Long key(int x, int y)
+  {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    return configure(new NearestVectorOptimizer()).sort(apply(e));
+  }
+
+  @Override
+  protected List<Element> apply(List<Element> e)
+  {
+    Element[] elements = e.toArray(new Element[e.size()]);
+    Endpoints ends = new Endpoints(elements);
+    List<Element> result = new LinkedList<Element>();
+    for (int i = 0; i < elements.length; i++)
+    {
+      if (ends.used[i])
+      {
+        continue;
+      }
+      ends.used[i] = true;
+      Element chain = elements[i];
+      if (!chain.isClosedPath())
+      {
+        ends.extend(chain);
+        if (!chain.isClosedPath())
+        {
+          chain.invert();
+          if (!ends.extend(chain))
+          {
+            chain.invert();
+          }
+        }
+      }
+      result.add(chain);
+    }
+    return result;
+  }
+
+  /**
+   * The end points of the elements of one apply() call, and which
+   * elements are joined already
+   */
+  private static class Endpoints
+  {
+
+    private final Element[] elements;
+    private final boolean[] used;
+    //lists of the end points at the same location, 2*i is the start and 2*i+1 the end of element i
+    private final Map<Long, Integer> heads;
+    private final int[] next;
+
+    Endpoints(Element[] elements)
+    {
+      this.elements = elements;
+      used = new boolean[elements.length];
+      heads = new HashMap<Long, Integer>();
+      next = new int[2 * elements.length];
+      //insert backwards, so the lists start with the first element
+      for (int i = elements.length - 1; i >= 0; i--)
+      {
+        if (elements[i].isClosedPath())
+        {
+          continue;
+        }
+        for (int id = 2 * i + 1; id >= 2 * i; id--)
+        {
+          Long k = id % 2 == 0 ? key(elements[i].getStartX(), elements[i].getStartY())
+            : key(elements[i].getEndX(), elements[i].getEndY());
+          Integer head = heads.get(k);
+          next[id] = head == null ? -1 : head;
+          heads.put(k, id);
+        }
+      }
+    }
+
+    /**
+     * appends elements touching the end of chain until there are
+     * no more or the chain is closed
+     * @return true if anything was appended
+     */
+    private boolean extend(Element chain)
+    {
+      boolean extended = false;
+      while (!chain.isClosedPath())
+      {
+        int id = take(chain);
+        if (id < 0)
+        {
+          break;
+        }
+        Element m = elements[id / 2];
+        if (id % 2 == 1)
+        {
+          m.invert();
+        }
+        chain.append(m);
+        extended = true;
+      }
+      return extended;
+    }
+
+    /**
+     * finds an unused element with the property of chain, which starts
+     * or ends at the end of chain, and marks it as used. Used end points
+     * are removed from the list on the way.
+     * @return the id of the matching end point or -1
+     */
+    private int take(Element chain)
+    {
+      Long k = key(chain.getEndX(), chain.getEndY());
+      Integer head = heads.get(k);
+      int prev = -1;
+      int id = head == null ? -1 : head;
+      while (id >= 0)
+      {
+        int i = id / 2;
+        if (used[i])
+        {
+          //unlink
+          if (prev < 0)
+          {
+            if (next[id] < 0)
+            {
+              heads.remove(k);
+            }
+            else
+            {
+              heads.put(k, next[id]);
+            }
+          }
+          else
+          {
+            next[prev] = next[id];
+          }
+        }
+        else if (elements[i].prop == null ? chain.prop == null : elements[i].prop.equals(chain.prop))
+        {
+          used[i] = true;
+          return id;
+        }
+        else
+        {
+          prev = id;
+        }
+        id = next[id];
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+
+/**
+ * A CostModel for a machine with independent X and Y axes.
+ * Each axis accelerates with the given acceleration up to its speed,
+ * so a move takes as long as the slower axis.
+ * Changing the property costs a fixed time, plus a Z move if the focus
+ * changes.
+ */
+public class MachineCostModel implements CostModel
+{
+
+  private double speedX;
+  private double speedY;
+  private double acceleration = 0;
+  private double propertySwitchTime = 0;
+  private double focusSpeed = 0;
+  private double pierceTime = 0;
+
+  /**
+   * @param speedX the travel speed of the X axis in mm/s
+   * @param speedY the travel speed of the Y axis in mm/s
+   */
+  public MachineCostModel(double speedX, double speedY)
+  {
+    this.speedX = speedX;
+    this.speedY = speedY;
+  }
+
+  public double getSpeedX()
+  {
+    return speedX;
+  }
+
+  public void setSpeedX(double speedX)
+  {
+    this.speedX = speedX;
+  }
+
+  public double getSpeedY()
+  {
+    return speedY;
+  }
+
+  public void setSpeedY(double speedY)
+  {
+    this.speedY = speedY;
+  }
+
+  public double getAcceleration()
+  {
+    return acceleration;
+  }
+
+  /**
+   * @param acceleration the acceleration of both axes in mm/s², 0 if
+   * it should be ignored
+   */
+  public void setAcceleration(double acceleration)
+  {
+    this.acceleration = acceleration;
+  }
+
+  public double getPropertySwitchTime()
+  {
+    return propertySwitchTime;
+  }
+
+  /**
+   * @param propertySwitchTime the time in seconds to send and apply
+   * new settings
+   */
+  public void setPropertySwitchTime(double propertySwitchTime)
+  {
+    this.propertySwitchTime = propertySwitchTime;
+  }
+
+  public double getFocusSpeed()
+  {
+    return focusSpeed;
+  }
+
+  /**
+   * @param focusSpeed the speed of the Z axis in mm/s, 0 if focus changes
+   * should be ignored
+   */
+  public void setFocusSpeed(double focusSpeed)
+  {
+    this.focusSpeed = focusSpeed;
+  }
+
+  public double getPierceTime()
+  {
+    return pierceTime;
+  }
+
+  public void setPierceTime(double pierceTime)
+  {
+    this.pierceTime = pierceTime;
+  }
+
+  /**
+   * time to move one axis by d mm with a trapezoidal speed profile
+   */
+  private double axisTime(double d, double speed)
+  {
+    d = Math.abs(d);
+    if (acceleration <= 0)
+    {
+      return d / speed;
+    }
+    if (d < speed * speed / acceleration)
+    {
+      //the axis does not reach its full speed
+      return 2 * Math.sqrt(d / acceleration);
+    }
+    return d / speed + speed / acceleration;
+  }
+
+  @Override
+  public double getTravelCost(double dx, double dy)
+  {
+    return Math.max(axisTime(dx, speedX), axisTime(dy, speedY));
+  }
+
+  @Override
+  public double getPropertySwitchCost(LaserProperty from, LaserProperty to)
+  {
+    if (from == null || to == null || from.equals(to))
+    {
+      return 0;
+    }
+    double result = propertySwitchTime;
+    if (focusSpeed > 0)
+    {
+      Object a = from.getProperty("focus");
+      Object b = to.getProperty("focus");
+      if (a instanceof Number && b instanceof Number)
+      {
+        result += Math.abs(((Number) a).doubleValue() - ((Number) b).doubleValue()) / focusSpeed;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public double getPierceCost(LaserProperty property)
+  {
+    return pierceTime;
+  }
+}
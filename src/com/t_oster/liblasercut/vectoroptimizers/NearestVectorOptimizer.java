@@ -18,69 +18,124 @@
  **/
 package com.t_oster.liblasercut.vectoroptimizers;
 
-import com.t_oster.liblasercut.platform.Point;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
- *
+ * Greedily appends the element whose start or end point is nearest to the
+ * end of the previous element. The endpoints are kept in a PointGrid, so
+ * each step only looks at the elements around the current position.
+ * If the cost model is not the plain distance, the element with the lowest
+ * cost out of the nearest ones is taken.
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
 public class NearestVectorOptimizer extends VectorOptimizer
 {
 
+  private static final int CANDIDATES = 16;
+
   @Override
   protected List<Element> sort(List<Element> e)
+  {
+    return sort(e, false, 0, 0);
+  }
+
+  /**
+   * Sorts the elements like sort(), but starts with the element
+   * nearest to (x, y) instead of the first one
+   */
+  List<Element> sortFrom(List<Element> e, int x, int y)
+  {
+    return sort(e, true, x, y);
+  }
+
+  private List<Element> sort(List<Element> e, boolean fromPosition, int x0, int y0)
   {
     List<Element> result = new LinkedList<Element>();
     if (e.isEmpty())
     {
       return result;
     }
+    Element[] elements = e.toArray(new Element[e.size()]);
+    //the points where an element can be entered: start and end of open paths,
+    //the start or (if closed paths are rotated) every vertex of closed paths.
+    //The points of element i are firstPoint[i]..firstPoint[i+1]-1
+    int[] firstPoint = new int[elements.length + 1];
+    for (int i = 0; i < elements.length; i++)
+    {
+      int points = !elements[i].isClosedPath() ? 2
+        : isRotateClosedPaths() ? elements[i].getPointCount() - 1 : 1;
+      firstPoint[i + 1] = firstPoint[i] + points;
+    }
+    int[] x = new int[firstPoint[elements.length]];
+    int[] y = new int[x.length];
+    int[] owner = new int[x.length];
+    for (int i = 0; i < elements.length; i++)
+    {
+      Element el = elements[i];
+      for (int id = firstPoint[i]; id < firstPoint[i + 1]; id++)
+      {
+        int vertex = el.isClosedPath() ? id - firstPoint[i] : (id - firstPoint[i]) * (el.getPointCount() - 1);
+        x[id] = el.getX(vertex);
+        y[id] = el.getY(vertex);
+        owner[id] = i;
+      }
+    }
+    PointGrid points = new PointGrid(x, y);
 
-    result.add(e.remove(0));
-    while (!e.isEmpty())
+    //with a cost model, the cheapest of the nearest points is taken
+    int[] candidates = new int[CANDIDATES];
+    int next = fromPosition ? points.nearest(x0, y0) : 0;
+    int curX = x0;
+    int curY = y0;
+    while (next >= 0)
     {
-      Point end = result.get(result.size() - 1).getEnd();
-      //find nearest element
-      int next = 0;
-      //invert element direction if endpoint is nearer
-      boolean invert = false;
-      double dst = -1;
-      for (int i = 1; i < e.size(); i++)
+      int i = owner[next];
+      for (int id = firstPoint[i]; id < firstPoint[i + 1]; id++)
       {
-        //check distance to startpoint
-        double nd = dist(e.get(i).start, end);
-        if (nd < dst || dst == -1)
-        {
-          next = i;
-          dst = nd;
-          invert = false;
-        }
-        if (!e.get(i).start.equals(e.get(i).getEnd()))
+        points.remove(id);
+      }
+      Element m = elements[i];
+      if (!m.isClosedPath())
+      {
+        //invert element direction if endpoint is nearer
+        if (next != firstPoint[i])
         {
-          //check distance to endpoint
-          nd = dist(e.get(i).getEnd(), end);
-          if (nd < dst || dst == -1)
-          {
-            next = i;
-            dst = nd;
-            invert = true;
-          }
+          m.invert();
         }
       }
-      //add next
-      if (invert)
+      else if (isRotateClosedPaths())
       {
-        Element m = e.remove(next);
-        m.invert();
-        result.add(m);
+        m.rotateTo(curX, curY);
       }
-      else
+      result.add(m);
+      curX = m.getEndX();
+      curY = m.getEndY();
+      next = isDistanceCost() ? points.nearest(curX, curY)
+        : cheapest(points, x, y, owner, elements, m, candidates);
+    }
+    return result;
+  }
+
+  /**
+   * @return the point with the lowest cost of the cost model to
+   * continue after m, out of the nearest points
+   */
+  private int cheapest(PointGrid points, int[] x, int[] y, int[] owner, Element[] elements, Element m, int[] candidates)
+  {
+    int count = points.nearest(m.getEndX(), m.getEndY(), candidates);
+    int best = -1;
+    double bestCost = Double.POSITIVE_INFINITY;
+    for (int k = 0; k < count; k++)
+    {
+      int id = candidates[k];
+      double cost = travelCost(m.getEndX(), m.getEndY(), x[id], y[id]) + switchCost(m.prop, elements[owner[id]].prop);
+      if (cost < bestCost)
       {
-        result.add(e.remove(next));
+        best = id;
+        bestCost = cost;
       }
     }
-    return result;
+    return best;
   }
 }
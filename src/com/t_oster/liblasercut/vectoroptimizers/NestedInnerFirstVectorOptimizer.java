@@ -0,0 +1,356 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.platform.Rectangle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cuts inside parts first, like InnerFirstVectorOptimizer, but builds a real
+ * containment tree of the closed paths instead of comparing bounding boxes.
+ * The parent of an element is the smallest closed path containing most of
+ * its edge midpoints, so shapes with equal bounding boxes and holes
+ * sticking out a little are handled as well.
+ * Every element is cut after all elements inside it. Elements with the
+ * same parent are sorted by travel distance with a NearestVectorOptimizer.
+ *
+ * The closed paths are kept in a hierarchical grid, where each path is
+ * stored in the level whose cells are about as large as its bounding box.
+ * A lookup only has to check one cell per level.
+ */
+public class NestedInnerFirstVectorOptimizer extends VectorOptimizer
+{
+
+  //number of edge midpoints tested against a possible parent
+  private static final int SAMPLES = 9;
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    return new Nesting(e).emit();
+  }
+
+  private static double area(Element e)
+  {
+    double sum = 0;
+    for (int i = 1; i < e.getPointCount(); i++)
+    {
+      sum += (double) e.getX(i - 1) * e.getY(i) - (double) e.getX(i) * e.getY(i - 1);
+    }
+    return Math.abs(sum / 2);
+  }
+
+  private static Long key(int level, long cx, long cy)
+  {
+    return ((long) level << 58) | (cx << 29) | cy;
+  }
+
+  /**
+   * ray casting test for the closed path e
+   */
+  private static boolean contains(Element e, double x, double y)
+  {
+    boolean inside = false;
+    for (int i = 1; i < e.getPointCount(); i++)
+    {
+      int x1 = e.getX(i - 1);
+      int y1 = e.getY(i - 1);
+      int x2 = e.getX(i);
+      int y2 = e.getY(i);
+      if ((y1 > y) != (y2 > y)
+        && x < x1 + (double) (x2 - x1) * (y - y1) / (y2 - y1))
+      {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * Tests edge midpoints instead of vertices, because vertices often lie
+   * on the border of the other path (e.g. a circle inscribed to a square)
+   * @return true if most of the sampled edge midpoints of e are inside p
+   */
+  private static boolean isInside(Element e, Element p)
+  {
+    int edges = e.getPointCount() - 1;
+    int samples = Math.min(SAMPLES, edges);
+    int inside = 0;
+    for (int s = 0; s < samples; s++)
+    {
+      int i = (int) ((long) s * edges / samples);
+      double x = (e.getX(i) + (double) e.getX(i + 1)) / 2;
+      double y = (e.getY(i) + (double) e.getY(i + 1)) / 2;
+      if (contains(p, x, y))
+      {
+        inside++;
+      }
+    }
+    return 2 * inside > samples;
+  }
+
+  /**
+   * The nesting tree and the grid of one sort() call
+   */
+  private class Nesting
+  {
+
+    private final Element[] elements;
+    private final double[] areas;
+    private final List<List<Integer>> children;
+
+    private int minX;
+    private int minY;
+    private int baseCellSize;
+    private int levels;
+    private Map<Long, int[]> cells;
+
+    Nesting(List<Element> e)
+    {
+      elements = e.toArray(new Element[e.size()]);
+      int n = elements.length;
+      areas = new double[n];
+      children = new ArrayList<List<Integer>>(n + 1);
+      for (int i = 0; i < n; i++)
+      {
+        areas[i] = elements[i].isClosedPath() ? area(elements[i]) : 0;
+      }
+      for (int i = 0; i <= n; i++)
+      {
+        children.add(null);
+      }
+      buildIndex();
+      //children.get(n) are the elements which are not inside anything
+      for (int i = 0; i < n; i++)
+      {
+        int parent = findParent(i);
+        int p = parent < 0 ? n : parent;
+        if (children.get(p) == null)
+        {
+          children.set(p, new ArrayList<Integer>());
+        }
+        children.get(p).add(i);
+      }
+    }
+
+    private long cellSize(int level)
+    {
+      return (long) baseCellSize << level;
+    }
+
+    private void buildIndex()
+    {
+      cells = new HashMap<Long, int[]>();
+      levels = 0;
+      minX = Integer.MAX_VALUE;
+      minY = Integer.MAX_VALUE;
+      int maxX = Integer.MIN_VALUE;
+      int maxY = Integer.MIN_VALUE;
+      int smallest = Integer.MAX_VALUE;
+      for (Element el : elements)
+      {
+        Rectangle bb = el.boundingBox();
+        minX = Math.min(minX, bb.getXMin());
+        minY = Math.min(minY, bb.getYMin());
+        maxX = Math.max(maxX, bb.getXMax());
+        maxY = Math.max(maxY, bb.getYMax());
+        if (el.isClosedPath())
+        {
+          smallest = Math.min(smallest, Math.max(bb.getXMax() - bb.getXMin(), bb.getYMax() - bb.getYMin()));
+        }
+      }
+      if (smallest == Integer.MAX_VALUE)
+      {
+        //no closed paths
+        cells = null;
+        return;
+      }
+      //keep cell indices within 29 bits
+      long extent = Math.max((long) maxX - minX, (long) maxY - minY) + 1;
+      baseCellSize = (int) Math.max(Math.max(1, smallest), extent >> 28);
+      for (int i = 0; i < elements.length; i++)
+      {
+        if (!elements[i].isClosedPath())
+        {
+          continue;
+        }
+        Rectangle bb = elements[i].boundingBox();
+        int size = Math.max(bb.getXMax() - bb.getXMin(), bb.getYMax() - bb.getYMin());
+        int level = 0;
+        while (cellSize(level) < size)
+        {
+          level++;
+        }
+        levels = Math.max(levels, level + 1);
+        //the bounding box covers at most 2x2 cells of this level
+        long cs = cellSize(level);
+        for (long cx = (bb.getXMin() - minX) / cs; cx <= (bb.getXMax() - minX) / cs; cx++)
+        {
+          for (long cy = (bb.getYMin() - minY) / cs; cy <= (bb.getYMax() - minY) / cs; cy++)
+          {
+            Long k = key(level, cx, cy);
+            int[] list = cells.get(k);
+            if (list == null)
+            {
+              list = new int[]{0, 0, 0, 0};
+              cells.put(k, list);
+            }
+            else if (list[0] + 1 == list.length)
+            {
+              list = Arrays.copyOf(list, 2 * list.length);
+              cells.put(k, list);
+            }
+            list[++list[0]] = i;
+          }
+        }
+      }
+    }
+
+    /**
+     * @return the smallest closed path containing element i or -1
+     */
+    private int findParent(int i)
+    {
+      if (cells == null)
+      {
+        return -1;
+      }
+      Element e = elements[i];
+      Rectangle bb = e.boundingBox();
+      //the center of the bounding box has to be inside the bounding box of the parent
+      int x = (int) (((long) bb.getXMin() + bb.getXMax()) / 2);
+      int y = (int) (((long) bb.getYMin() + bb.getYMax()) / 2);
+      List<Integer> candidates = new ArrayList<Integer>();
+      for (int level = 0; level < levels; level++)
+      {
+        long cs = cellSize(level);
+        int[] list = cells.get(key(level, (x - minX) / cs, (y - minY) / cs));
+        if (list != null)
+        {
+          for (int k = 1; k <= list[0]; k++)
+          {
+            int j = list[k];
+            Rectangle pb = elements[j].boundingBox();
+            if (j != i && areas[j] > areas[i]
+              && pb.getXMin() <= x && pb.getXMax() >= x
+              && pb.getYMin() <= y && pb.getYMax() >= y)
+            {
+              candidates.add(j);
+            }
+          }
+        }
+      }
+      //test the smallest candidates first
+      Collections.sort(candidates, new Comparator<Integer>()
+      {
+        @Override
+        public int compare(Integer a, Integer b)
+        {
+          return Double.compare(areas[a], areas[b]);
+        }
+      });
+      for (int j : candidates)
+      {
+        if (isInside(e, elements[j]))
+        {
+          return j;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Sorts the children of p by travel distance, starting near (x, y)
+     */
+    private Iterator<Element> sortedChildren(int p, int x, int y)
+    {
+      List<Element> group = new ArrayList<Element>();
+      if (children.get(p) != null)
+      {
+        for (int i : children.get(p))
+        {
+          group.add(elements[i]);
+        }
+      }
+      return configure(new NearestVectorOptimizer()).sortFrom(group, x, y).iterator();
+    }
+
+    /**
+     * Adds every element after all elements inside it. The tree is walked
+     * with an explicit stack, because the nesting can be very deep.
+     */
+    private List<Element> emit()
+    {
+      int n = elements.length;
+      Map<Element, Integer> ids = new IdentityHashMap<Element, Integer>();
+      for (int i = 0; i < n; i++)
+      {
+        ids.put(elements[i], i);
+      }
+      List<Element> result = new LinkedList<Element>();
+      int x = 0;
+      int y = 0;
+      //the children of owners.peek() still to be added
+      ArrayDeque<Iterator<Element>> groups = new ArrayDeque<Iterator<Element>>();
+      ArrayDeque<Integer> owners = new ArrayDeque<Integer>();
+      groups.push(sortedChildren(n, x, y));
+      owners.push(n);
+      while (!groups.isEmpty())
+      {
+        Iterator<Element> group = groups.peek();
+        if (group.hasNext())
+        {
+          Element el = group.next();
+          int i = ids.get(el);
+          if (children.get(i) != null)
+          {
+            groups.push(sortedChildren(i, x, y));
+            owners.push(i);
+            continue;
+          }
+          result.add(el);
+          x = el.getEndX();
+          y = el.getEndY();
+        }
+        else
+        {
+          groups.pop();
+          int owner = owners.pop();
+          if (owner < n)
+          {
+            result.add(elements[owner]);
+            x = elements[owner].getEndX();
+            y = elements[owner].getEndY();
+          }
+        }
+      }
+      return result;
+    }
+  }
+}
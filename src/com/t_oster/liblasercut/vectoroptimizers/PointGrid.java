@@ -0,0 +1,281 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+/**
+ * A uniform grid over a fixed set of points, which supports removing
+ * points and finding the nearest remaining point to a given location.
+ * Points are identified by their index in the coordinate arrays.
+ * Once most points are removed, the grid is rebuilt with a coarser
+ * resolution, so searches do not have to scan many empty cells.
+ */
+class PointGrid
+{
+
+  private final int[] xs;
+  private final int[] ys;
+  private final boolean[] present;
+  private int size;
+
+  private int minX;
+  private int minY;
+  private int cellSize;
+  private int cols;
+  private int rows;
+  private int[][] cells;
+  private int[] cellCounts;
+  private final int[] cellOf;
+  private final int[] posInCell;
+
+  /**
+   * Creates a grid containing the points (xs[i], ys[i]).
+   * The arrays are not copied and must not be changed afterwards.
+   */
+  PointGrid(int[] xs, int[] ys)
+  {
+    this.xs = xs;
+    this.ys = ys;
+    this.size = xs.length;
+    this.present = new boolean[size];
+    this.cellOf = new int[size];
+    this.posInCell = new int[size];
+    for (int i = 0; i < size; i++)
+    {
+      present[i] = true;
+    }
+    build();
+  }
+
+  private void build()
+  {
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    minX = Integer.MAX_VALUE;
+    minY = Integer.MAX_VALUE;
+    for (int i = 0; i < xs.length; i++)
+    {
+      if (present[i])
+      {
+        minX = Math.min(minX, xs[i]);
+        minY = Math.min(minY, ys[i]);
+        maxX = Math.max(maxX, xs[i]);
+        maxY = Math.max(maxY, ys[i]);
+      }
+    }
+    if (size == 0)
+    {
+      minX = 0;
+      minY = 0;
+      maxX = 0;
+      maxY = 0;
+    }
+    //about one point per cell
+    double w = (double) maxX - minX + 1;
+    double h = (double) maxY - minY + 1;
+    cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(w * h / Math.max(1, size))));
+    cols = (int) (((long) maxX - minX) / cellSize) + 1;
+    rows = (int) (((long) maxY - minY) / cellSize) + 1;
+    cells = new int[cols * rows][];
+    cellCounts = new int[cols * rows];
+    for (int i = 0; i < xs.length; i++)
+    {
+      if (present[i])
+      {
+        int c = cellIndex(xs[i], ys[i]);
+        if (cells[c] == null)
+        {
+          cells[c] = new int[2];
+        }
+        else if (cellCounts[c] == cells[c].length)
+        {
+          int[] grown = new int[cells[c].length * 2];
+          System.arraycopy(cells[c], 0, grown, 0, cellCounts[c]);
+          cells[c] = grown;
+        }
+        cellOf[i] = c;
+        posInCell[i] = cellCounts[c];
+        cells[c][cellCounts[c]++] = i;
+      }
+    }
+  }
+
+  private int column(int x)
+  {
+    long c = ((long) x - minX) / cellSize;
+    return (int) Math.max(0, Math.min(cols - 1, c));
+  }
+
+  private int row(int y)
+  {
+    long r = ((long) y - minY) / cellSize;
+    return (int) Math.max(0, Math.min(rows - 1, r));
+  }
+
+  private int cellIndex(int x, int y)
+  {
+    return row(y) * cols + column(x);
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  boolean contains(int id)
+  {
+    return present[id];
+  }
+
+  /**
+   * Removes the point with the given id, if it is still present
+   */
+  void remove(int id)
+  {
+    if (!present[id])
+    {
+      return;
+    }
+    present[id] = false;
+    size--;
+    int c = cellOf[id];
+    int last = cells[c][--cellCounts[c]];
+    cells[c][posInCell[id]] = last;
+    posInCell[last] = posInCell[id];
+    if (size > 0 && cells.length > 64 && size * 8 < cells.length)
+    {
+      build();
+    }
+  }
+
+  /**
+   * Returns the id of the remaining point nearest to (x, y). Of points with
+   * the same distance, the one with the lowest id is returned.
+   * @return the id or -1 if the grid is empty
+   */
+  int nearest(int x, int y)
+  {
+    if (size == 0)
+    {
+      return -1;
+    }
+    int cx = column(x);
+    int cy = row(y);
+    int best = -1;
+    long bestDistance = Long.MAX_VALUE;
+    int maxRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+    for (int r = 0; r <= maxRing; r++)
+    {
+      for (int gy = Math.max(0, cy - r); gy <= Math.min(rows - 1, cy + r); gy++)
+      {
+        boolean edgeRow = gy == cy - r || gy == cy + r;
+        //inner rows of the ring only have their first and last cell
+        int step = edgeRow || r == 0 ? 1 : 2 * r;
+        for (int gx = cx - r; gx <= cx + r; gx += step)
+        {
+          if (gx < 0 || gx >= cols)
+          {
+            continue;
+          }
+          int c = gy * cols + gx;
+          for (int k = 0; k < cellCounts[c]; k++)
+          {
+            int id = cells[c][k];
+            long dx = (long) xs[id] - x;
+            long dy = (long) ys[id] - y;
+            long d = dx * dx + dy * dy;
+            if (d < bestDistance || (d == bestDistance && id < best))
+            {
+              best = id;
+              bestDistance = d;
+            }
+          }
+        }
+      }
+      //all points outside of this ring are at least r cells away
+      long bound = (long) r * cellSize;
+      if (best >= 0 && bestDistance < bound * bound)
+      {
+        break;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Finds the remaining points nearest to (x, y), sorted by distance
+   * @param ids receives the ids of up to ids.length nearest points
+   * @return the number of ids found
+   */
+  int nearest(int x, int y, int[] ids)
+  {
+    int k = ids.length;
+    long[] distances = new long[k];
+    int found = 0;
+    if (size == 0 || k == 0)
+    {
+      return 0;
+    }
+    int cx = column(x);
+    int cy = row(y);
+    int maxRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+    for (int r = 0; r <= maxRing; r++)
+    {
+      for (int gy = Math.max(0, cy - r); gy <= Math.min(rows - 1, cy + r); gy++)
+      {
+        boolean edgeRow = gy == cy - r || gy == cy + r;
+        int step = edgeRow || r == 0 ? 1 : 2 * r;
+        for (int gx = cx - r; gx <= cx + r; gx += step)
+        {
+          if (gx < 0 || gx >= cols)
+          {
+            continue;
+          }
+          int c = gy * cols + gx;
+          for (int n = 0; n < cellCounts[c]; n++)
+          {
+            int id = cells[c][n];
+            long dx = (long) xs[id] - x;
+            long dy = (long) ys[id] - y;
+            long d = dx * dx + dy * dy;
+            if (found == k && d >= distances[k - 1])
+            {
+              continue;
+            }
+            //insertion into the sorted result
+            int pos = found < k ? found++ : k - 1;
+            while (pos > 0 && distances[pos - 1] > d)
+            {
+              distances[pos] = distances[pos - 1];
+              ids[pos] = ids[pos - 1];
+              pos--;
+            }
+            distances[pos] = d;
+            ids[pos] = id;
+          }
+        }
+      }
+      long bound = (long) r * cellSize;
+      if (found == k && distances[k - 1] < bound * bound)
+      {
+        break;
+      }
+    }
+    return found;
+  }
+}
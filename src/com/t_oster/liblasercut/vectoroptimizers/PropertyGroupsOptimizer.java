@@ -0,0 +1,57 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import java.util.List;
+
+/**
+ * This VectorOptimizer cuts all elements with the same property in one go,
+ * so the property is switched as rarely as possible. Each group is sorted
+ * with a NearestVectorOptimizer, starting where the previous group ended.
+ * The order of the groups minimizes the property switch and travel costs
+ * of the cost model (see setOptimizeGroupOrder). Order constraints, e.g. engrave before cut,
+ * are always respected.
+ */
+public class PropertyGroupsOptimizer extends VectorOptimizer
+{
+
+  public PropertyGroupsOptimizer()
+  {
+    setGroupByProperty(true);
+    setOptimizeGroupOrder(true);
+  }
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    return sortGroups(e);
+  }
+
+  @Override
+  protected List<Element> sortGroup(List<Element> group)
+  {
+    return configure(new NearestVectorOptimizer()).sort(group);
+  }
+
+  @Override
+  protected List<Element> sortGroupFrom(List<Element> group, int x, int y)
+  {
+    return configure(new NearestVectorOptimizer()).sortFrom(group, x, y);
+  }
+}
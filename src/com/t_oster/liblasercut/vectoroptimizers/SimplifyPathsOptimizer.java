@@ -0,0 +1,307 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.platform.Util;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This VectorOptimizer removes points of paths which are not needed
+ * to stay within the tolerance of the original path, e.g. of curves which
+ * were flattened at a high resolution. Points on a straight line are merged
+ * first, then the paths are simplified with the Douglas-Peucker algorithm.
+ * The order of the elements is kept. Large jobs are simplified in parallel.
+ */
+public class SimplifyPathsOptimizer extends VectorOptimizer
+{
+
+  //jobs with fewer points are simplified in the calling thread
+  private static final int PARALLEL_POINTS = 50000;
+
+  private double tolerance = 0.02;
+
+  public SimplifyPathsOptimizer()
+  {
+  }
+
+  /**
+   * @param tolerance the maximal distance (in mm) of the simplified path
+   * from the points of the original one
+   */
+  public SimplifyPathsOptimizer(double tolerance)
+  {
+    setTolerance(tolerance);
+  }
+
+  public double getTolerance()
+  {
+    return tolerance;
+  }
+
+  public void setTolerance(double tolerance)
+  {
+    this.tolerance = Math.max(0, tolerance);
+  }
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    return apply(e);
+  }
+
+  @Override
+  protected List<Element> apply(List<Element> e)
+  {
+    final double tol = Util.mm2px(tolerance, getDPI());
+    final Element[] elements = e.toArray(new Element[e.size()]);
+    long points = 0;
+    for (Element el : elements)
+    {
+      points += el.getPointCount();
+    }
+    int chunks = (int) Math.min(getThreads(), points / PARALLEL_POINTS + 1);
+    if (chunks <= 1)
+    {
+      simplify(elements, 0, elements.length, tol);
+    }
+    else
+    {
+      ExecutorService pool = Executors.newFixedThreadPool(chunks);
+      try
+      {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int c = 0; c < chunks; c++)
+        {
+          final int from = (int) ((long) elements.length * c / chunks);
+          final int to = (int) ((long) elements.length * (c + 1) / chunks);
+          futures.add(pool.submit(new Callable<Object>()
+          {
+            @Override
+            public Object call()
+            {
+              simplify(elements, from, to, tol);
+              return null;
+            }
+          }));
+        }
+        for (Future<?> f : futures)
+        {
+          f.get();
+        }
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(ex);
+      }
+      catch (ExecutionException ex)
+      {
+        throw new RuntimeException(ex.getCause());
+      }
+      finally
+      {
+        pool.shutdownNow();
+      }
+    }
+    List<Element> result = new LinkedList<Element>();
+    for (Element el : elements)
+    {
+      result.add(el);
+    }
+    return result;
+  }
+
+  /**
+   * replaces elements[from] ... elements[to-1] with their simplified paths
+   */
+  private static void simplify(Element[] elements, int from, int to, double tol)
+  {
+    int[] stack = new int[64];
+    for (int i = from; i < to; i++)
+    {
+      Element e = elements[i];
+      int count = e.getPointCount();
+      //arcs and curves are kept, so drivers can cut them natively
+      if (count < 3 || e.hasCurves())
+      {
+        continue;
+      }
+      int[] p = new int[2 * count];
+      for (int k = 0; k < count; k++)
+      {
+        p[2 * k] = e.getX(k);
+        p[2 * k + 1] = e.getY(k);
+      }
+      int n = mergeCollinear(p, count);
+      boolean[] keep = new boolean[n];
+      keep[0] = true;
+      keep[n - 1] = true;
+      if (n > 2)
+      {
+        if (p[0] == p[2 * n - 2] && p[1] == p[2 * n - 1])
+        {
+          //a closed path has no end points to keep, so it is split
+          //at the point farthest from its start
+          int far = 0;
+          long best = -1;
+          for (int k = 1; k < n - 1; k++)
+          {
+            long dx = p[2 * k] - p[0];
+            long dy = p[2 * k + 1] - p[1];
+            if (dx * dx + dy * dy > best)
+            {
+              best = dx * dx + dy * dy;
+              far = k;
+            }
+          }
+          keep[far] = true;
+          stack = douglasPeucker(p, 0, far, tol, keep, stack);
+          stack = douglasPeucker(p, far, n - 1, tol, keep, stack);
+        }
+        else
+        {
+          stack = douglasPeucker(p, 0, n - 1, tol, keep, stack);
+        }
+      }
+      int m = 0;
+      for (int k = 0; k < n; k++)
+      {
+        if (keep[k])
+        {
+          p[2 * m] = p[2 * k];
+          p[2 * m + 1] = p[2 * k + 1];
+          m++;
+        }
+      }
+      if (m < count)
+      {
+        elements[i] = new Element(e.prop, p, m);
+      }
+    }
+  }
+
+  /**
+   * removes repeated points and points in the middle of a straight line
+   * from the count points in p
+   * @return the number of remaining points
+   */
+  static int mergeCollinear(int[] p, int count)
+  {
+    int n = 1;
+    for (int k = 1; k < count; k++)
+    {
+      int x = p[2 * k];
+      int y = p[2 * k + 1];
+      if (x == p[2 * n - 2] && y == p[2 * n - 1])
+      {
+        continue;
+      }
+      if (n >= 2)
+      {
+        long ax = p[2 * n - 2] - p[2 * n - 4];
+        long ay = p[2 * n - 1] - p[2 * n - 3];
+        long bx = x - p[2 * n - 2];
+        long by = y - p[2 * n - 1];
+        //same direction, so the last point lies on the line
+        if (ax * by == ay * bx && ax * bx + ay * by > 0)
+        {
+          n--;
+        }
+      }
+      p[2 * n] = x;
+      p[2 * n + 1] = y;
+      n++;
+    }
+    if (n == 1 && count > 1)
+    {
+      //a path to its own start point
+      p[2] = p[0];
+      p[3] = p[1];
+      n = 2;
+    }
+    return n;
+  }
+
+  /**
+   * marks the points between a and b which are needed to keep the path
+   * within tol. Uses an explicit stack, which is returned for reuse.
+   */
+  private static int[] douglasPeucker(int[] p, int a, int b, double tol, boolean[] keep, int[] stack)
+  {
+    int top = 0;
+    stack[top++] = a;
+    stack[top++] = b;
+    while (top > 0)
+    {
+      int last = stack[--top];
+      int first = stack[--top];
+      double max = -1;
+      int index = -1;
+      for (int k = first + 1; k < last; k++)
+      {
+        double d = distance(p, k, first, last);
+        if (d > max)
+        {
+          max = d;
+          index = k;
+        }
+      }
+      if (index >= 0 && max > tol)
+      {
+        keep[index] = true;
+        if (top + 4 > stack.length)
+        {
+          int[] bigger = new int[2 * stack.length];
+          System.arraycopy(stack, 0, bigger, 0, top);
+          stack = bigger;
+        }
+        stack[top++] = first;
+        stack[top++] = index;
+        stack[top++] = index;
+        stack[top++] = last;
+      }
+    }
+    return stack;
+  }
+
+  /**
+   * @return the distance of point k from the segment between points a and b
+   */
+  private static double distance(int[] p, int k, int a, int b)
+  {
+    double ax = p[2 * a];
+    double ay = p[2 * a + 1];
+    double dx = p[2 * b] - ax;
+    double dy = p[2 * b + 1] - ay;
+    double px = p[2 * k] - ax;
+    double py = p[2 * k + 1] - ay;
+    double len = dx * dx + dy * dy;
+    double t = len == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / len));
+    px -= t * dx;
+    py -= t * dy;
+    return Math.sqrt(px * px + py * py);
+  }
+}
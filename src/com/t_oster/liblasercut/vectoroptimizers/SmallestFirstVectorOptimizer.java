@@ -18,6 +18,7 @@
  **/
 package com.t_oster.liblasercut.vectoroptimizers;
 
+import com.t_oster.liblasercut.platform.Rectangle;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
@@ -40,14 +41,15 @@ public class SmallestFirstVectorOptimizer extends VectorOptimizer
     @Override
     public int compare(Element a, Element b)
     {
-      Integer av = new Integer(getValue(a));
-      Integer bv = new Integer(getValue(b));
-      return av.compareTo(bv);
+      int av = getValue(a);
+      int bv = getValue(b);
+      return av < bv ? -1 : (av == bv ? 0 : 1);
     }
 
     int getValue(Element e)
     {
-      return (e.boundingBox().getXMax() - e.boundingBox().getXMin()) * (e.boundingBox().getYMax() - e.boundingBox().getYMin());
+      Rectangle bb = e.boundingBox();
+      return (bb.getXMax() - bb.getXMin()) * (bb.getYMax() - bb.getYMin());
     }
   }
 
@@ -18,253 +18,422 @@
  **/
 package com.t_oster.liblasercut.vectoroptimizers;
 
-import com.t_oster.liblasercut.platform.Point;
-import java.util.Arrays;
+import com.t_oster.liblasercut.LaserProperty;
+import java.util.ArrayDeque;
 import java.util.LinkedList;
 import java.util.List;
-import scpsolver.constraints.LinearEqualsConstraint;
-import scpsolver.constraints.LinearSmallerThanEqualsConstraint;
-import scpsolver.lpsolver.LinearProgramSolver;
-import scpsolver.lpsolver.SolverFactory;
-import scpsolver.problems.LinearProgram;
 
 /**
+ * Searches a short tour through all elements, where every element may be
+ * cut in either direction.
+ * The tour of the NearestVectorOptimizer is improved by 2-opt moves
+ * (reversing a part of the tour) and Or-opt moves (moving up to three
+ * consecutive elements elsewhere, optionally reversed) until no move
+ * improves the tour or the time limit is reached. Only moves connecting
+ * an endpoint with one of its nearest neighbours are tried.
+ * Moves are rated by the cost model, including property changes.
  * @author Patrick Schmidt <patrick.schmidt1@rwth-aachen.de>
  */
 public class TSPOptimizer extends VectorOptimizer
 {
+
+  private static final int NEIGHBOURS = 8;
+  private static final double EPSILON = 1e-7;
+
+  private long timeLimit = 2000;
+
+  public TSPOptimizer()
+  {
+  }
+
+  /**
+   * @param timeLimit milliseconds to spend on improving the tour
+   */
+  public TSPOptimizer(long timeLimit)
+  {
+    this.timeLimit = timeLimit;
+  }
+
+  public long getTimeLimit()
+  {
+    return timeLimit;
+  }
+
+  /**
+   * Sets the wall-clock time in milliseconds after which the best tour found
+   * so far is returned
+   */
+  public void setTimeLimit(long timeLimit)
+  {
+    this.timeLimit = timeLimit;
+  }
+
   @Override
   protected List<Element> sort(List<Element> e)
   {
-    if (e.size() <= 1)
+    if (e.size() <= 2)
     {
-      return e;
+      return configure(new NearestVectorOptimizer()).sort(e);
     }
+    long deadline = System.nanoTime() + timeLimit * 1000000L;
+    //the tour keeps the start points of closed paths, they are
+    //rotated afterwards by optimize()
+    NearestVectorOptimizer nearest = configure(new NearestVectorOptimizer());
+    nearest.setRotateClosedPaths(false);
+    Element[] elements = nearest.sort(e).toArray(new Element[e.size()]);
+    Tour tour = new Tour(elements);
+    int n = elements.length;
 
-    // Use the start and end point of each element as a city
-    int nCities = 2 * e.size();
-    Point[] cities = new Point[nCities];
-    int city_idx = 0;
-    for (Element element : e)
+    ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+    boolean[] queued = new boolean[n];
+    for (int m = 0; m < n; m++)
     {
-      cities[city_idx] = element.start;
-      city_idx++;
-      cities[city_idx] = element.getEnd();
-      city_idx++;
+      queue.add(m);
+      queued[m] = true;
     }
-    
-    // Variables:
-    // booleans Xij for 0 <= i, j < n  (edge ij is part of our tour)
-    // integers Ui  for 1 <= i    < n  (i is visited before j, if Ui < Uj)
-    //               X_ij  for  i != j           U_i
-    int nVariables = nCities*nCities - nCities + nCities - 1;
-    
-    System.out.println(nCities + " cities");
-    System.out.println(nVariables + " variables");
-    
-    // Objective function: Minimize total length
-    double[] objectiveCoefficients = new double[nVariables];
-    for (int i = 0; i < nCities; i++)
+    int[] touched = new int[8];
+    while (!queue.isEmpty() && System.nanoTime() < deadline)
     {
-      for (int j = 0; j < nCities; j++)
+      int m = queue.poll();
+      queued[m] = false;
+      int count = tour.improve(m, touched);
+      for (int i = 0; i < count; i++)
       {
-        if (i != j)
+        if (touched[i] >= 0 && !queued[touched[i]])
         {
-          // TODO: Wrong for i even and j=i+1
-          objectiveCoefficients[XijIndex(i, j, nCities)] = dist(cities[i], cities[j]);
+          queue.add(touched[i]);
+          queued[touched[i]] = true;
         }
       }
     }
-    
-    LinearProgram lp = new LinearProgram(objectiveCoefficients);
-    lp.setMinProblem(true);
-    
-    // Constrain Xij to booleans and Ui to integers
-    for (int varIdx = 0; varIdx < nVariables; varIdx++)
+
+    List<Element> result = new LinkedList<Element>();
+    for (int p = 0; p < n; p++)
     {
-      if (varIdx < nCities * nCities - nCities)
+      Element el = elements[tour.order[p]];
+      if (tour.flipped[tour.order[p]])
       {
-        lp.setBinary(varIdx);
-      }
-      else
-      {
-        lp.setInteger(varIdx);
+        el.invert();
       }
+      result.add(el);
     }
-    
-    // Constraints: All cuts have to be part of the tour
-    for (int i = 0; i < nCities-1; i += 2)
+    return result;
+  }
+
+  /**
+   * The tour through the elements of one sort() call, which is improved
+   * step by step
+   */
+  private class Tour
+  {
+
+    //endpoint 2*m is the start and 2*m+1 the end of element m
+    private final int[] x;
+    private final int[] y;
+    //order[p] is the element at position p, pos[m] the position of element m
+    private final int[] order;
+    private final int[] pos;
+    //if the element is cut from its end to its start
+    private final boolean[] flipped;
+    private int[][] neighbours;
+    private final int n;
+    private final LaserProperty[] props;
+    private final boolean distanceCost;
+
+    Tour(Element[] elements)
     {
-      int j = i+1;
-      double[] coeffs = new double[nVariables];
-      coeffs[XijIndex(i, j, nCities)] = 1;
-      lp.addConstraint(new LinearEqualsConstraint(coeffs, 1, "Include cuts"));
+      n = elements.length;
+      x = new int[2 * n];
+      y = new int[2 * n];
+      order = new int[n];
+      pos = new int[n];
+      flipped = new boolean[n];
+      props = new LaserProperty[n];
+      distanceCost = isDistanceCost();
+      for (int m = 0; m < n; m++)
+      {
+        x[2 * m] = elements[m].getStartX();
+        y[2 * m] = elements[m].getStartY();
+        x[2 * m + 1] = elements[m].getEndX();
+        y[2 * m + 1] = elements[m].getEndY();
+        props[m] = elements[m].prop;
+        order[m] = m;
+        pos[m] = m;
+      }
+      computeNeighbours();
     }
-    
-    // Constraints: Each city needs one incoming and one outgoing edge
-    for (int i = 0; i < nCities; i++)
+
+    private void computeNeighbours()
     {
-      double[] coeffsIn = new double[nVariables];
-      double[] coeffsOut = new double[nVariables];
-      
-      for (int j = 0; j < nCities; j++)
+      PointGrid grid = new PointGrid(x, y);
+      neighbours = new int[2 * n][];
+      int[] found = new int[NEIGHBOURS + 2];
+      for (int id = 0; id < 2 * n; id++)
       {
-        if (i != j)
+        int count = grid.nearest(x[id], y[id], found);
+        int own = 0;
+        for (int i = 0; i < count; i++)
         {
-          coeffsIn[XijIndex(j, i, nCities)] = 1;
-          coeffsOut[XijIndex(i, j, nCities)] = 1;
+          if (found[i] / 2 == id / 2)
+          {
+            own++;
+          }
         }
+        int[] list = new int[Math.min(NEIGHBOURS, count - own)];
+        int k = 0;
+        for (int i = 0; i < count && k < list.length; i++)
+        {
+          if (found[i] / 2 != id / 2)
+          {
+            list[k++] = found[i];
+          }
+        }
+        neighbours[id] = list;
       }
-      
-      lp.addConstraint(new LinearEqualsConstraint(coeffsIn, 1, "One in"));
-      lp.addConstraint(new LinearEqualsConstraint(coeffsOut, 1, "One out"));
     }
-    
-    // Constraints: The result has to be a single cycle
-    for (int i = 1; i < nCities; i++)
+
+    private double dist(int a, int b)
     {
-      for (int j = 1; j < nCities; j++)
+      if (distanceCost)
       {
-        if (i != j)
-        {
-          double[] coeffs = new double[nVariables];
-          coeffs[UiIndex(i, nCities)] = 1;
-          coeffs[UiIndex(j, nCities)] = -1;
-          coeffs[XijIndex(i, j, nCities)] = nCities;
+        double dx = x[a] - x[b];
+        double dy = y[a] - y[b];
+        return Math.sqrt(dx * dx + dy * dy);
+      }
+      return travelCost(x[a], y[a], x[b], y[b]) + switchCost(props[a / 2], props[b / 2]);
+    }
 
-          lp.addConstraint(new LinearSmallerThanEqualsConstraint(coeffs, nCities - 1, "Single tour"));
-        }
+    /**
+     * the endpoint where the element at position p is entered
+     */
+    private int head(int p)
+    {
+      int m = order[p];
+      return flipped[m] ? 2 * m + 1 : 2 * m;
+    }
+
+    /**
+     * the endpoint where the element at position p is left
+     */
+    private int tail(int p)
+    {
+      int m = order[p];
+      return flipped[m] ? 2 * m : 2 * m + 1;
+    }
+
+    private boolean isHead(int id)
+    {
+      return head(pos[id / 2]) == id;
+    }
+
+    /**
+     * length of the move from position p to p+1, 0 before the first
+     * and after the last position
+     */
+    private double edge(int p)
+    {
+      return p < 0 || p >= n - 1 ? 0 : dist(tail(p), head(p + 1));
+    }
+
+    /**
+     * length of a move from endpoint a to endpoint b, where -1 stands
+     * for the beginning or the end of the tour
+     */
+    private double link(int a, int b)
+    {
+      return a < 0 || b < 0 ? 0 : dist(a, b);
+    }
+
+    private int tailOrNone(int p)
+    {
+      return p < 0 ? -1 : tail(p);
+    }
+
+    private int headOrNone(int p)
+    {
+      return p >= n ? -1 : head(p);
+    }
+
+    /**
+     * reverses the positions from..to, which also reverses the direction
+     * of every element in between
+     */
+    private void reverse(int from, int to)
+    {
+      while (from < to)
+      {
+        int a = order[from];
+        int b = order[to];
+        order[from] = b;
+        order[to] = a;
+        pos[b] = from;
+        pos[a] = to;
+        flipped[a] = !flipped[a];
+        flipped[b] = !flipped[b];
+        from++;
+        to--;
+      }
+      if (from == to)
+      {
+        flipped[order[from]] = !flipped[order[from]];
       }
     }
-    
-    System.out.println(lp.getConstraints().size() + " constraints");
-    
-    // Solve
-    LinearProgramSolver solver = SolverFactory.newDefault();
-    double[] solution = solver.solve(lp);
-    
-    System.out.println("Adjacency matrix:");
-    for (int i = 0; i < nCities; i++)
+
+    /**
+     * gain of replacing the moves after p and after q (p < q) by
+     * tail(p) to tail(q) and head(p+1) to head(q+1)
+     */
+    private double twoOptGain(int p, int q)
     {
-      for (int j = 0; j < nCities; j++)
+      return edge(p) + edge(q)
+        - link(tailOrNone(p), tail(q)) - link(head(p + 1), headOrNone(q + 1));
+    }
+
+    /**
+     * Tries to find an improving move involving the element m and applies it
+     * @param touched receives the elements whose neighbours in the tour changed
+     * @return the number of entries in touched
+     */
+    private int improve(int m, int[] touched)
+    {
+      int i = pos[m];
+      //2-opt: connect the tail of i with another tail
+      for (int c : neighbours[tail(i)])
       {
-        if (i != j)
+        if (isHead(c))
         {
-          System.out.print((int)solution[XijIndex(i, j, nCities)] + " ");
+          continue;
         }
-        else
+        int k = pos[c / 2];
+        int p = Math.min(i, k);
+        int q = Math.max(i, k);
+        if (twoOptGain(p, q) > EPSILON)
         {
-          System.out.print(0 + " ");
+          return applyTwoOpt(p, q, touched);
         }
       }
-      System.out.print("\n");
-    }
-    
-    // Derive resulting element order
-    List<Element> result = new LinkedList<Element>();
-    boolean[] citiesVisited = new boolean[nCities];
-    Arrays.fill(citiesVisited, false);
-    
-    // Start at beginning of first element (city 0)
-    Element currElement = e.get(0);
-    result.add(currElement);
-    citiesVisited[0] = true;
-    
-    // Jump to end of first element (city 1)
-    int i = 1;
-    citiesVisited[1] = true;
-    
-    boolean success = false;
-    while(!success)
-    {
-      // Find next city of the tour
-      boolean foundNextCity = false;
-      for (int j = 0; j < nCities; j++)
+      //2-opt: connect the head of i with another head
+      for (int c : neighbours[head(i)])
       {
-        if (i != j && !citiesVisited[j] && solution[XijIndex(i, j, nCities)] != 0)
+        if (!isHead(c))
         {
-          // Found next city on the tour (city j)
-          foundNextCity = true;
-          int elementIndex = j / 2;
-          currElement = e.get(elementIndex);
-          boolean invert = (j % 2 == 1);
-          int startCity = j;
-          int endCity = invert ? j-1 : j+1;
-          
-          if (invert)
-          {
-            currElement.invert();
-          }
-          
-          result.add(currElement);
-          
-          // Jump to the city at the end of our element
-          i = endCity;
-          
-          // Mark both visited
-          citiesVisited[startCity] = true;
-          citiesVisited[endCity] = true;
-          
-          break;
+          continue;
         }
-      }
-      
-      if (!foundNextCity)
-      {
-        if (allVisited(citiesVisited))
+        int k = pos[c / 2];
+        int p = Math.min(i, k) - 1;
+        int q = Math.max(i, k) - 1;
+        if (twoOptGain(p, q) > EPSILON)
         {
-          System.out.println("TSP: Found valid tour.");
-          success = true;
+          return applyTwoOpt(p, q, touched);
         }
-        else
+      }
+      //Or-opt: move a segment starting or ending with i
+      for (int len = 1; len <= 3; len++)
+      {
+        for (int from = i - len + 1; from <= i; from++)
         {
-          System.out.println("Invalid TSP Solution: Did not find the next city from city " + i + ".");
-          System.out.println("Aborting Optimization...");
-          success = false;
-          break;
+          int to = from + len - 1;
+          if (from < 0 || to >= n || (from != i && to != i))
+          {
+            continue;
+          }
+          int count = tryOrOpt(from, to, touched);
+          if (count > 0)
+          {
+            return count;
+          }
         }
       }
+      return 0;
     }
 
-    if (success)
+    private int applyTwoOpt(int p, int q, int[] touched)
     {
-      return result;
+      touched[0] = p >= 0 ? order[p] : -1;
+      touched[1] = order[p + 1];
+      touched[2] = order[q];
+      touched[3] = q + 1 < n ? order[q + 1] : -1;
+      reverse(p + 1, q);
+      return 4;
     }
-    else
-    {
-      return new LinkedList<Element>();
-    }
-  }
-  
-  protected int XijIndex(int i, int j, int n)
-  {
-    assert(i != j);
-    if (i < j)
-    {
-      // Above diagonal
-      return i * (n-1) + j - 1;
-    }
-    else
+
+    /**
+     * Tries to move the positions from..to between k and k+1
+     * for k near the ends of the segment
+     */
+    private int tryOrOpt(int from, int to, int[] touched)
     {
-      // Below diagonal
-      return i * (n-1) + j;
+      int segHead = head(from);
+      int segTail = tail(to);
+      double removeGain = edge(from - 1) + edge(to)
+        - link(tailOrNone(from - 1), headOrNone(to + 1));
+      if (removeGain <= EPSILON)
+      {
+        return 0;
+      }
+      for (int end = 0; end < 2; end++)
+      {
+        for (int c : neighbours[end == 0 ? segHead : segTail])
+        {
+          int k = pos[c / 2];
+          if (k >= from && k <= to)
+          {
+            continue;
+          }
+          //the segment end is connected to c, so it goes after or before k
+          boolean cIsHead = isHead(c);
+          int after = cIsHead ? k - 1 : k;
+          if (after >= from - 1 && after <= to)
+          {
+            continue;
+          }
+          //forward: tail(after) -> segHead ... segTail -> head(after+1)
+          //reversed: tail(after) -> segTail ... segHead -> head(after+1)
+          boolean reversed = (end == 0) == cIsHead;
+          int before = tailOrNone(after);
+          int next = headOrNone(after + 1);
+          double insertCost = reversed
+            ? link(before, segTail) + link(segHead, next) - edge(after)
+            : link(before, segHead) + link(segTail, next) - edge(after);
+          if (removeGain - insertCost > EPSILON)
+          {
+            touched[0] = from > 0 ? order[from - 1] : -1;
+            touched[1] = order[from];
+            touched[2] = order[to];
+            touched[3] = to + 1 < n ? order[to + 1] : -1;
+            touched[4] = after >= 0 ? order[after] : -1;
+            touched[5] = after + 1 < n ? order[after + 1] : -1;
+            moveSegment(from, to, after, reversed);
+            return 6;
+          }
+        }
+      }
+      return 0;
     }
-  }
-  
-  protected int UiIndex(int i, int n)
-  {
-    return n*n - n + i - 1;
-  }
 
-  private boolean allVisited(boolean[] citiesVisited)
-  {
-    for (boolean visited : citiesVisited)
+    /**
+     * moves the positions from..to between after and after+1
+     */
+    private void moveSegment(int from, int to, int after, boolean reversed)
     {
-      if (!visited)
+      if (after > to)
       {
-        return false;
+        if (!reversed)
+        {
+          reverse(from, to);
+        }
+        reverse(to + 1, after);
+        reverse(from, after);
+      }
+      else
+      {
+        reverse(after + 1, from - 1);
+        if (!reversed)
+        {
+          reverse(from, to);
+        }
+        reverse(after + 1, to);
       }
     }
-    return true;
   }
-}
\ No newline at end of file
+}
@@ -20,17 +20,30 @@ package com.t_oster.liblasercut.vectoroptimizers;
 
 import com.t_oster.liblasercut.LaserProperty;
 import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorCommandVisitor;
 import com.t_oster.liblasercut.VectorPart;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.platform.Rectangle;
+import com.t_oster.liblasercut.platform.Util;
+import com.t_oster.liblasercut.utils.ConstrainedOrder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
  * @author Thomas Oster <thomas.oster@rwth-aachen.de>
  */
-public abstract class VectorOptimizer
+public abstract class VectorOptimizer implements Cloneable
 {
 
   public enum OrderStrategy
@@ -40,58 +53,365 @@ public abstract class VectorOptimizer
     INNER_FIRST,
     SMALLEST_FIRST,
     DELETE_DUPLICATE_PATHS,
-    TSP_OPTIMIZER
+    TSP_OPTIMIZER,
+    DELETE_OVERLAPPING_SEGMENTS,
+    JOIN_PATHS,
+    NESTED_INNER_FIRST,
+    SIMPLIFY_PATHS,
+    DELETE_REDUNDANT_COMMANDS,
+    PROPERTY_GROUPS
   }
 
-  protected class Element
+  private CostModel costModel = new DistanceCostModel();
+  private boolean rotateClosedPaths = false;
+  //if the settings above were set, rather than left at their defaults
+  private boolean costModelSet = false;
+  private boolean rotateClosedPathsSet = false;
+  private boolean groupByProperty = false;
+  private List<LaserProperty> groupOrder = null;
+  private boolean optimizeGroupOrder = false;
+  //pairs of properties, the first of which is cut before the second
+  private List<LaserProperty[]> orderConstraints = new ArrayList<LaserProperty[]>();
+  private int threads = Runtime.getRuntime().availableProcessors();
+  //resolution of the coordinates, set by optimize()
+  private double dpi = 500;
+
+  public CostModel getCostModel()
+  {
+    return costModel;
+  }
+
+  /**
+   * Sets the model for the costs of moves and property changes, which
+   * the ordering optimizers minimize.
+   * The default is a DistanceCostModel.
+   */
+  public void setCostModel(CostModel costModel)
+  {
+    this.costModel = costModel;
+    this.costModelSet = true;
+  }
+
+  public boolean isRotateClosedPaths()
+  {
+    return rotateClosedPaths;
+  }
+
+  /**
+   * If set, closed paths are entered at their point nearest to the end
+   * of the previous element instead of their start point. A point inside
+   * an edge is added as a new vertex.
+   */
+  public void setRotateClosedPaths(boolean rotateClosedPaths)
+  {
+    this.rotateClosedPaths = rotateClosedPaths;
+    this.rotateClosedPathsSet = true;
+  }
+
+  public boolean isGroupByProperty()
+  {
+    return groupByProperty;
+  }
+
+  /**
+   * If set, optimize() sorts the elements of each property separately
+   * and in parallel, and cuts the groups one after the other.
+   * By default the groups are cut in the order their properties first
+   * appear in the part.
+   */
+  public void setGroupByProperty(boolean groupByProperty)
+  {
+    this.groupByProperty = groupByProperty;
+  }
+
+  public List<LaserProperty> getGroupOrder()
+  {
+    return groupOrder;
+  }
+
+  /**
+   * Sets the order of the property groups if groupByProperty is set.
+   * Groups of properties which are not in the list follow in
+   * the default order. If the group order is optimized, only the groups
+   * in the list keep their order relative to each other.
+   */
+  public void setGroupOrder(List<LaserProperty> groupOrder)
+  {
+    this.groupOrder = groupOrder;
+  }
+
+  public boolean isOptimizeGroupOrder()
+  {
+    return optimizeGroupOrder;
+  }
+
+  /**
+   * If set, the property groups are cut in the order with the lowest cost
+   * of property switches and moves from one group to the next one, exactly
+   * for up to 16 groups and greedily for more. The group order and the
+   * order constraints are respected.
+   */
+  public void setOptimizeGroupOrder(boolean optimizeGroupOrder)
+  {
+    this.optimizeGroupOrder = optimizeGroupOrder;
+  }
+
+  /**
+   * Makes all elements with the property first be cut before all elements
+   * with the property then, if the elements are grouped by property,
+   * e.g. to engrave before cutting
+   */
+  public void addOrderConstraint(LaserProperty first, LaserProperty then)
+  {
+    orderConstraints.add(new LaserProperty[]{first, then});
+  }
+
+  public void clearOrderConstraints()
+  {
+    orderConstraints.clear();
+  }
+
+  public int getThreads()
+  {
+    return threads;
+  }
+
+  /**
+   * @param threads the maximal number of groups sorted at the same time,
+   * by default the number of processors
+   */
+  public void setThreads(int threads)
+  {
+    this.threads = Math.max(1, threads);
+  }
+
+  @Override
+  protected VectorOptimizer clone()
+  {
+    try
+    {
+      VectorOptimizer result = (VectorOptimizer) super.clone();
+      result.orderConstraints = new ArrayList<LaserProperty[]>(orderConstraints);
+      return result;
+    }
+    catch (CloneNotSupportedException e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Gives vo the cost model and resolution of this optimizer,
+   * for optimizers used as a step of another one
+   */
+  protected <T extends VectorOptimizer> T configure(T vo)
+  {
+    VectorOptimizer o = vo;
+    o.costModel = costModel;
+    o.dpi = dpi;
+    o.rotateClosedPaths = rotateClosedPaths;
+    return vo;
+  }
+
+  /**
+   * Like configure, but keeps the cost model and the rotation of closed
+   * paths of vo if they were set on it, for optimizers given by the user
+   */
+  protected <T extends VectorOptimizer> T configureDefaults(T vo)
+  {
+    VectorOptimizer o = vo;
+    if (!o.costModelSet)
+    {
+      o.costModel = costModel;
+    }
+    o.dpi = dpi;
+    if (!o.rotateClosedPathsSet)
+    {
+      o.rotateClosedPaths = rotateClosedPaths;
+    }
+    return vo;
+  }
+
+  /**
+   * @return the resolution of the VectorPart being optimized
+   */
+  protected double getDPI()
+  {
+    return dpi;
+  }
+
+  /**
+   * @return the cost of moving from (x1, y1) to (x2, y2)
+   */
+  protected double travelCost(int x1, int y1, int x2, int y2)
+  {
+    return costModel.getTravelCost(Util.px2mm(x2 - x1, dpi), Util.px2mm(y2 - y1, dpi));
+  }
+
+  protected double switchCost(LaserProperty from, LaserProperty to)
+  {
+    return costModel.getPropertySwitchCost(from, to);
+  }
+
+  /**
+   * @return if the cost model is the plain travel distance, so optimizers
+   * can use distance based searches directly
+   */
+  protected boolean isDistanceCost()
+  {
+    return costModel instanceof DistanceCostModel;
+  }
+
+  /**
+   * A path of connected lines. The points are stored as packed int
+   * coordinates and can be read in either direction, so invert() does
+   * not copy anything. The bounding box and length are cached.
+   * Paths with arcs or curves are flattened to their points, but keep
+   * the original commands as long as they are only moved or inverted,
+   * so writeTo() can hand the curves on to the driver.
+   */
+  protected static class Element
   {
 
     LaserProperty prop;
-    Point start;
-    List<Point> moves = new LinkedList<Point>();
+    //x0, y0, x1, y1, ... in the original direction
+    private int[] coords;
+    private int count;
+    private boolean inverted = false;
+    private Rectangle boundingBox = null;
+    private double length = -1;
+    //MOVETO to the start point followed by the lines, arcs and curves
+    //of the path in the original direction, null if it only has lines
+    private VectorPart curves = null;
+
+    /**
+     * Creates an element with the count points (coords[2*i], coords[2*i+1]).
+     * The array is not copied.
+     */
+    Element(LaserProperty prop, int[] coords, int count)
+    {
+      this.prop = prop;
+      this.coords = coords;
+      this.count = count;
+    }
+
+    /**
+     * Creates an element with the points of the flattened curves, which
+     * start with a MOVETO to the first point
+     */
+    Element(LaserProperty prop, int[] coords, int count, VectorPart curves)
+    {
+      this(prop, coords, count);
+      this.curves = curves;
+    }
 
-  public boolean equals(Element e)
+    /**
+     * Creates an element with just one point
+     */
+    Element(LaserProperty prop, int x, int y)
+    {
+      this(prop, new int[]{x, y, 0, 0}, 1);
+    }
+
+    /**
+     * @return the number of points including the start point
+     */
+    int getPointCount()
     {
-      if(this.moves.size()==e.moves.size())
+      return count;
+    }
+
+    private int index(int i)
+    {
+      return 2 * (inverted ? count - 1 - i : i);
+    }
+
+    int getX(int i)
+    {
+      return coords[index(i)];
+    }
+
+    int getY(int i)
+    {
+      return coords[index(i) + 1];
+    }
+
+    int getStartX()
+    {
+      return getX(0);
+    }
+
+    int getStartY()
+    {
+      return getY(0);
+    }
+
+    int getEndX()
+    {
+      return getX(count - 1);
+    }
+
+    int getEndY()
+    {
+      return getY(count - 1);
+    }
+
+    /**
+     * @return if the path has arcs or curves, which writeTo() keeps
+     */
+    boolean hasCurves()
+    {
+      return curves != null;
+    }
+
+    /**
+     * adds a line to (x, y) at the end of the path. The curves are
+     * replaced by their points then.
+     */
+    void lineto(int x, int y)
+    {
+      curves = null;
+      if (inverted)
       {
-        if (!this.start.equals(e.start) )
-        {
-          return false;//start point differs
-        }
-        
-        for (int j = 0; j < this.moves.size(); j++)
+        //make the current direction the stored one, so the point can be appended
+        int[] reversed = new int[Math.max(2 * count + 2, coords.length)];
+        for (int i = 0; i < count; i++)
         {
-          if (!this.moves.get(j).equals(e.moves.get(j)))
-          {
-            return false;//one move point differs
-          }
+          reversed[2 * i] = getX(i);
+          reversed[2 * i + 1] = getY(i);
         }
+        coords = reversed;
+        inverted = false;
       }
-      else
+      else if (2 * count + 2 > coords.length)
       {
-        return false;
+        coords = Arrays.copyOf(coords, Math.max(2 * count + 2, 2 * coords.length));
       }
-      return true;
+      coords[2 * count] = x;
+      coords[2 * count + 1] = y;
+      count++;
+      if (boundingBox != null)
+      {
+        boundingBox.add(x, y);
+      }
+      length = -1;
     }
 
-    void invert()
+    /**
+     * adds all lines of e at the end of this path. The first point of e
+     * should be the end of this path.
+     */
+    void append(Element e)
     {
-      if (!moves.isEmpty())
+      for (int i = 1; i < e.count; i++)
       {
-        moves.add(0, start);
-        start = moves.remove(moves.size() - 1);
-        List<Point> inv = new LinkedList<Point>();
-        while (!moves.isEmpty())
-        {
-          inv.add(moves.remove(moves.size() - 1));
-        }
-        moves = inv;
+        lineto(e.getX(i), e.getY(i));
       }
     }
 
-    Point getEnd()
+    void invert()
     {
-      return moves.isEmpty() ? start : moves.get(moves.size() - 1);
+      inverted = !inverted;
     }
 
     /**
@@ -101,16 +421,202 @@ public abstract class VectorOptimizer
      */
     Rectangle boundingBox()
     {
-      if (start == null)
-      { // TODO may this happen?
-        return null;
+      if (boundingBox == null)
+      {
+        boundingBox = new Rectangle(coords[0], coords[1], coords[0], coords[1]);
+        for (int i = 1; i < count; i++)
+        {
+          boundingBox.add(coords[2 * i], coords[2 * i + 1]);
+        }
+      }
+      return boundingBox;
+    }
+
+    /**
+     * @return the length of all lines
+     */
+    double getLength()
+    {
+      if (length < 0)
+      {
+        length = 0;
+        for (int i = 1; i < count; i++)
+        {
+          double dx = coords[2 * i] - coords[2 * i - 2];
+          double dy = coords[2 * i + 1] - coords[2 * i - 1];
+          length += Math.sqrt(dx * dx + dy * dy);
+        }
+      }
+      return length;
+    }
+
+    /**
+     * Makes the point of this closed path nearest to (x, y) its start
+     * point. If that point is inside an edge, it is added as a new vertex.
+     * Does nothing for open paths.
+     */
+    void rotateTo(int x, int y)
+    {
+      rotateTo(x, y, x, y);
+    }
+
+    private static double via(double px, double py, int x1, int y1, int x2, int y2)
+    {
+      return Math.hypot(px - x1, py - y1) + Math.hypot(px - x2, py - y2);
+    }
+
+    /**
+     * Like rotateTo(int, int), but chooses the point with the shortest way
+     * from (x1, y1) to the point and on to (x2, y2), because a closed path
+     * is left where it was entered. Paths with curves are not rotated,
+     * to keep the curves.
+     */
+    void rotateTo(int x1, int y1, int x2, int y2)
+    {
+      if (!isClosedPath() || curves != null)
+      {
+        return;
+      }
+      //the best point on each edge is one of its vertices, the projections
+      //of both points or the crossing with the line between them
+      int edge = 0;
+      double bestT = 0;
+      double best = Double.POSITIVE_INFINITY;
+      double[] ts = new double[4];
+      for (int i = 0; i + 1 < count; i++)
+      {
+        double ax = getX(i);
+        double ay = getY(i);
+        double dx = getX(i + 1) - ax;
+        double dy = getY(i + 1) - ay;
+        double len = dx * dx + dy * dy;
+        int candidates = 1;
+        ts[0] = 0;
+        if (len > 0)
+        {
+          ts[candidates++] = ((x1 - ax) * dx + (y1 - ay) * dy) / len;
+          ts[candidates++] = ((x2 - ax) * dx + (y2 - ay) * dy) / len;
+          double lx = x2 - x1;
+          double ly = y2 - y1;
+          double det = dx * ly - dy * lx;
+          if (det != 0)
+          {
+            ts[candidates++] = ((x1 - ax) * ly - (y1 - ay) * lx) / det;
+          }
+        }
+        for (int c = 0; c < candidates; c++)
+        {
+          double t = Math.max(0, Math.min(1, ts[c]));
+          double d = via(ax + t * dx, ay + t * dy, x1, y1, x2, y2);
+          if (d < best)
+          {
+            best = d;
+            edge = i;
+            bestT = t;
+          }
+        }
+      }
+      int loop = count - 1;
+      int sx = (int) Math.round(getX(edge) + bestT * (getX(edge + 1) - getX(edge)));
+      int sy = (int) Math.round(getY(edge) + bestT * (getY(edge + 1) - getY(edge)));
+      boolean inserted = true;
+      if (sx == getX(edge) && sy == getY(edge))
+      {
+        inserted = false;
+      }
+      else if (sx == getX(edge + 1) && sy == getY(edge + 1))
+      {
+        inserted = false;
+        edge = (edge + 1) % loop;
+      }
+      if (!inserted && edge == 0)
+      {
+        return;
+      }
+      //the loop starting at (sx, sy), followed by vertex edge+1 (or edge+1 after vertex edge)
+      int[] rotated = new int[2 * (inserted ? count + 1 : count)];
+      int k = 0;
+      rotated[k++] = sx;
+      rotated[k++] = sy;
+      for (int i = 1; i <= loop; i++)
+      {
+        int v = (edge + i) % loop;
+        rotated[k++] = getX(v);
+        rotated[k++] = getY(v);
+      }
+      if (inserted)
+      {
+        rotated[k++] = sx;
+        rotated[k++] = sy;
+      }
+      coords = rotated;
+      count = k / 2;
+      inverted = false;
+      length = -1;
+    }
+
+    /**
+     * Adds a MOVETO to the start point and the path in its current
+     * direction to vp
+     */
+    void writeTo(VectorPart vp)
+    {
+      if (curves == null)
+      {
+        vp.moveto(getStartX(), getStartY());
+        for (int i = 1; i < count; i++)
+        {
+          vp.lineto(getX(i), getY(i));
+        }
+        return;
       }
-      Rectangle bb = new Rectangle(start.x, start.y, start.x, start.y);
-      for (Point p : moves)
+      int n = curves.getCommandCount();
+      if (!inverted)
       {
-        bb.add(p);
+        for (int i = 1; i < n; i++)
+        {
+          switch (curves.getCommandType(i))
+          {
+            case MOVETO:
+              vp.moveto(curves.getX(i), curves.getY(i));
+              break;
+            case LINETO:
+              vp.lineto(curves.getX(i), curves.getY(i));
+              break;
+            case ARCTO:
+              vp.arcto(curves.getCenterX(i), curves.getCenterY(i), curves.getSweep(i));
+              break;
+            case CURVETO:
+              vp.curveto(curves.getControlX(i, 0), curves.getControlY(i, 0), curves.getControlX(i, 1), curves.getControlY(i, 1), curves.getX(i), curves.getY(i));
+              break;
+          }
+        }
+        return;
+      }
+      vp.moveto(curves.getX(n - 1), curves.getY(n - 1));
+      for (int i = n - 1; i > 1; i--)
+      {
+        int x = curves.getX(i - 1);
+        int y = curves.getY(i - 1);
+        switch (curves.getCommandType(i))
+        {
+          case LINETO:
+            vp.lineto(x, y);
+            break;
+          case ARCTO:
+            vp.arcto(curves.getCenterX(i), curves.getCenterY(i), -curves.getSweep(i));
+            //the end point of an arc is rounded from its start point
+            int last = vp.getCommandCount() - 1;
+            if (vp.getX(last) != x || vp.getY(last) != y)
+            {
+              vp.lineto(x, y);
+            }
+            break;
+          case CURVETO:
+            vp.curveto(curves.getControlX(i, 1), curves.getControlY(i, 1), curves.getControlX(i, 0), curves.getControlY(i, 0), x, y);
+            break;
+        }
       }
-      return bb;
     }
 
     /**
@@ -120,11 +626,11 @@ public abstract class VectorOptimizer
      */
     boolean isClosedPath()
     {
-      if ((start == null) || moves.isEmpty())
+      if (count < 2)
       {
         return false;
       }
-      return getEnd().equals(start);
+      return coords[0] == coords[2 * count - 2] && coords[1] == coords[2 * count - 1];
     }
   }
 
@@ -144,58 +650,180 @@ public abstract class VectorOptimizer
         return new DeleteDuplicatePathsOptimizer();
       case TSP_OPTIMIZER:
         return new TSPOptimizer();
+      case DELETE_OVERLAPPING_SEGMENTS:
+        return new DeleteOverlappingSegmentsOptimizer();
+      case JOIN_PATHS:
+        return new JoinPathsOptimizer();
+      case NESTED_INNER_FIRST:
+        return new NestedInnerFirstVectorOptimizer();
+      case SIMPLIFY_PATHS:
+        return new SimplifyPathsOptimizer();
+      case DELETE_REDUNDANT_COMMANDS:
+        return new DeleteRedundantCommandsOptimizer();
+      case PROPERTY_GROUPS:
+        return new PropertyGroupsOptimizer();
     }
     throw new IllegalArgumentException("Unknown Order Strategy: " + s);
   }
 
+  public static VectorOptimizer create(OrderStrategy s, CostModel costModel)
+  {
+    VectorOptimizer result = create(s);
+    result.setCostModel(costModel);
+    return result;
+  }
+
+  /**
+   * Collects the points of a path
+   */
+  private static class PointBuffer implements VectorCommandVisitor
+  {
+
+    int[] coords = new int[64];
+    int count = 0;
+
+    @Override
+    public void lineto(int x, int y)
+    {
+      if (2 * count + 2 > coords.length)
+      {
+        coords = Arrays.copyOf(coords, 2 * coords.length);
+      }
+      coords[2 * count] = x;
+      coords[2 * count + 1] = y;
+      count++;
+    }
+
+    @Override
+    public void moveto(int x, int y)
+    {
+      lineto(x, y);
+    }
+
+    @Override
+    public void setProperty(LaserProperty p)
+    {
+    }
+  }
+
+  /**
+   * Splits the part into paths. Arcs and curves are flattened to lines,
+   * but kept in the element (see Element.hasCurves()).
+   */
   protected List<Element> divide(VectorPart vp)
   {
     List<Element> result = new LinkedList<Element>();
-    Element cur = null;
-    Point lastMove = null;
+    //points of the current element, copied when it is complete
+    PointBuffer points = new PointBuffer();
+    //the first command of the current element, and if it has curves
+    int first = 0;
+    boolean curved = false;
+    LaserProperty curProp = null;
+    int lastX = 0;
+    int lastY = 0;
     LaserProperty lastProp = null;
-    boolean stop = false;
-    for (VectorCommand cmd : vp.getCommandList())
+    boolean stop = true;
+    for (int i = 0; i < vp.getCommandCount(); i++)
     {
-      switch (cmd.getType())
+      VectorCommand.CmdType type = vp.getCommandType(i);
+      switch (type)
       {
         case MOVETO:
         {
-          lastMove = new Point(cmd.getX(), cmd.getY());
+          lastX = vp.getX(i);
+          lastY = vp.getY(i);
           stop = true;
           break;
         }
-        case LINETO:
+        case SETPROPERTY:
+        {
+          lastProp = vp.getProperty(i);
+          stop = true;
+          break;
+        }
+        default:
         {
           if (stop)
           {
             stop = false;
-            if (cur != null)
+            if (points.count > 0)
             {
-              result.add(cur);
+              result.add(element(vp, curProp, points, curved ? first : -1, i));
             }
-            cur = new Element();
-            cur.start = lastMove;
-            cur.prop = lastProp;
+            points.count = 0;
+            points.lineto(lastX, lastY);
+            curProp = lastProp;
+            first = i;
+            curved = false;
           }
-          cur.moves.add(new Point(cmd.getX(), cmd.getY()));
-          break;
-        }
-        case SETPROPERTY:
-        {
-          lastProp = cmd.getProperty();
-          stop = true;
+          int x = points.coords[2 * points.count - 2];
+          int y = points.coords[2 * points.count - 1];
+          try
+          {
+            if (type == VectorCommand.CmdType.ARCTO)
+            {
+              VectorPart.flattenArc(points, x, y, vp.getCenterX(i), vp.getCenterY(i), vp.getSweep(i), vp.getX(i), vp.getY(i), VectorPart.DEFAULT_FLATNESS);
+              curved = true;
+            }
+            else if (type == VectorCommand.CmdType.CURVETO)
+            {
+              VectorPart.flattenCurve(points, x, y, vp.getControlX(i, 0), vp.getControlY(i, 0), vp.getControlX(i, 1), vp.getControlY(i, 1), vp.getX(i), vp.getY(i), VectorPart.DEFAULT_FLATNESS);
+              curved = true;
+            }
+            else
+            {
+              points.lineto(vp.getX(i), vp.getY(i));
+            }
+          }
+          catch (IOException e)
+          {
+            //the point buffer does not throw
+            throw new RuntimeException(e);
+          }
+          lastX = vp.getX(i);
+          lastY = vp.getY(i);
           break;
         }
       }
     }
-    if (cur != null)
+    if (points.count > 0)
     {
-      result.add(cur);
+      result.add(element(vp, curProp, points, curved ? first : -1, vp.getCommandCount()));
     }
     return result;
   }
 
+  /**
+   * @return an element with the collected points. If first is not -1,
+   * it also keeps the commands first ... end-1 of vp, which contain curves.
+   */
+  private static Element element(VectorPart vp, LaserProperty prop, PointBuffer points, int first, int end)
+  {
+    int[] coords = Arrays.copyOf(points.coords, 2 * points.count);
+    if (first < 0)
+    {
+      return new Element(prop, coords, points.count);
+    }
+    VectorPart curves = new VectorPart(prop, vp.getDPI());
+    curves.moveto(coords[0], coords[1]);
+    for (int i = first; i < end; i++)
+    {
+      switch (vp.getCommandType(i))
+      {
+        case LINETO:
+          curves.lineto(vp.getX(i), vp.getY(i));
+          break;
+        case ARCTO:
+          curves.arcto(vp.getCenterX(i), vp.getCenterY(i), vp.getSweep(i));
+          break;
+        case CURVETO:
+          curves.curveto(vp.getControlX(i, 0), vp.getControlY(i, 0), vp.getControlX(i, 1), vp.getControlY(i, 1), vp.getX(i), vp.getY(i));
+          break;
+      }
+    }
+    return new Element(prop, coords, points.count, curves);
+  }
+
   protected double dist(Point a, Point b)
   {
     return Math.sqrt((a.y - b.y) * (a.y - b.y) + (a.x - b.x) * (a.x - b.x));
@@ -203,9 +831,50 @@ public abstract class VectorOptimizer
 
   protected abstract List<Element> sort(List<Element> e);
 
+  /**
+   * Runs this optimizer as a stage of a VectorOptimizerPipeline, which
+   * is followed by other stages. Optimizers which only delete or join
+   * elements override this to skip sorting, which a later stage does anyway.
+   */
+  protected List<Element> apply(List<Element> e)
+  {
+    return sort(e);
+  }
+
+  /**
+   * Clears the statistics kept about the last optimize() call. It is
+   * called when optimize() starts, and a pipeline calls it for its stages.
+   */
+  protected void reset()
+  {
+  }
+
   public VectorPart optimize(VectorPart vp)
   {
-    List<Element> opt = this.sort(this.divide(vp));
+    reset();
+    dpi = vp.getDPI();
+    List<Element> opt = groupByProperty ? sortGroups(this.divide(vp)) : this.sort(this.divide(vp));
+    if (rotateClosedPaths)
+    {
+      //enter each closed path where the way from the previous element
+      //to the next one is shortest. This never makes the tour longer.
+      Element[] elements = opt.toArray(new Element[opt.size()]);
+      int x = 0;
+      int y = 0;
+      for (int i = 0; i < elements.length; i++)
+      {
+        if (i + 1 < elements.length)
+        {
+          elements[i].rotateTo(x, y, elements[i + 1].getStartX(), elements[i + 1].getStartY());
+        }
+        else
+        {
+          elements[i].rotateTo(x, y);
+        }
+        x = elements[i].getEndX();
+        y = elements[i].getEndY();
+      }
+    }
     LaserProperty cp = opt.isEmpty() ? vp.getCurrentCuttingProperty() : opt.get(0).prop;
     VectorPart result = new VectorPart(cp, vp.getDPI());
     for (Element e : opt)
@@ -215,10 +884,234 @@ public abstract class VectorOptimizer
         result.setProperty(e.prop);
         cp = e.prop;
       }
-      result.moveto(e.start.x, e.start.y);
-      for (Point p : e.moves)
+      e.writeTo(result);
+    }
+    return result;
+  }
+
+  /**
+   * Sorts the elements of one property group, by default with sort()
+   */
+  protected List<Element> sortGroup(List<Element> group)
+  {
+    return sort(group);
+  }
+
+  /**
+   * Sorts the elements of one property group, starting near (x, y), which
+   * is where the previous group ended.
+   * @return the sorted group or null if this optimizer can not start at
+   * a given position, in which case the result of sortGroup() is used
+   */
+  protected List<Element> sortGroupFrom(List<Element> group, int x, int y)
+  {
+    return null;
+  }
+
+  /**
+   * @return the travel cost from (x, y) to the closest point where one of
+   * the elements can be entered
+   */
+  private double entryCost(int x, int y, List<Element> group)
+  {
+    double result = Double.POSITIVE_INFINITY;
+    for (Element e : group)
+    {
+      result = Math.min(result, travelCost(x, y, e.getStartX(), e.getStartY()));
+      if (!e.isClosedPath())
+      {
+        result = Math.min(result, travelCost(x, y, e.getEndX(), e.getEndY()));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sorts the elements of each property with a copy of this optimizer,
+   * using a thread pool, and concatenates the groups in the group order,
+   * respecting the order constraints. If the optimizer supports it
+   * (see sortGroupFrom), each group is then sorted again, starting where
+   * the previous group ended.
+   */
+  protected List<Element> sortGroups(List<Element> elements)
+  {
+    final Map<LaserProperty, List<Element>> groups = new LinkedHashMap<LaserProperty, List<Element>>();
+    for (Element e : elements)
+    {
+      List<Element> group = groups.get(e.prop);
+      if (group == null)
+      {
+        group = new LinkedList<Element>();
+        groups.put(e.prop, group);
+      }
+      group.add(e);
+    }
+    List<LaserProperty> props = new ArrayList<LaserProperty>();
+    if (groupOrder != null)
+    {
+      for (LaserProperty p : groupOrder)
+      {
+        if (groups.containsKey(p) && !props.contains(p))
+        {
+          props.add(p);
+        }
+      }
+    }
+    //before[a][b] if group a has to be cut before group b
+    int k = groups.size();
+    boolean[][] before = new boolean[k][k];
+    for (int g = 1; g < props.size(); g++)
+    {
+      before[g - 1][g] = true;
+    }
+    for (LaserProperty p : groups.keySet())
+    {
+      if (!props.contains(p))
+      {
+        props.add(p);
+      }
+    }
+    for (LaserProperty[] c : orderConstraints)
+    {
+      int first = props.indexOf(c[0]);
+      int then = props.indexOf(c[1]);
+      if (first >= 0 && then >= 0 && first != then)
+      {
+        before[first][then] = true;
+      }
+    }
+
+    List<List<Element>> sorted = new ArrayList<List<Element>>();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, k)));
+    try
+    {
+      List<Future<List<Element>>> futures = new ArrayList<Future<List<Element>>>();
+      for (LaserProperty p : props)
+      {
+        //the optimizers keep state while sorting, so each group gets its own copy
+        final VectorOptimizer worker = clone();
+        worker.groupByProperty = false;
+        final List<Element> group = groups.get(p);
+        futures.add(pool.submit(new Callable<List<Element>>()
+        {
+          @Override
+          public List<Element> call()
+          {
+            return worker.sortGroup(group);
+          }
+        }));
+      }
+      for (Future<List<Element>> f : futures)
+      {
+        sorted.add(f.get());
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new RuntimeException(e.getCause());
+    }
+    finally
+    {
+      pool.shutdownNow();
+    }
+
+    int[] order;
+    if (optimizeGroupOrder)
+    {
+      //cost[a][b] of continuing with group b after group a, start[b] of beginning with it.
+      //Group b is entered at its point closest to the end of group a.
+      double[] start = new double[k];
+      double[][] cost = new double[k][k];
+      for (int b = 0; b < k; b++)
+      {
+        List<Element> gb = sorted.get(b);
+        if (gb.isEmpty())
+        {
+          continue;
+        }
+        start[b] = entryCost(0, 0, gb) + switchCost(null, props.get(b));
+        for (int a = 0; a < k; a++)
+        {
+          List<Element> ga = sorted.get(a);
+          if (a != b && !ga.isEmpty())
+          {
+            Element last = ga.get(ga.size() - 1);
+            cost[a][b] = entryCost(last.getEndX(), last.getEndY(), gb)
+              + switchCost(props.get(a), props.get(b));
+          }
+        }
+      }
+      order = ConstrainedOrder.find(start, cost, before);
+    }
+    else
+    {
+      order = ConstrainedOrder.find(before);
+    }
+    List<Element> result = new LinkedList<Element>();
+    int x = 0;
+    int y = 0;
+    for (int g : order)
+    {
+      List<Element> group = sortGroupFrom(sorted.get(g), x, y);
+      if (group == null)
+      {
+        group = sorted.get(g);
+      }
+      if (!group.isEmpty())
+      {
+        Element last = group.get(group.size() - 1);
+        x = last.getEndX();
+        y = last.getEndY();
+      }
+      result.addAll(group);
+    }
+    return result;
+  }
+
+  /**
+   * Sums up the costs of the cost model for the given part: all moves with
+   * the laser off (starting at 0,0), property changes and pierces.
+   * This allows to compare the results of different optimizers.
+   */
+  public double getCost(VectorPart vp)
+  {
+    dpi = vp.getDPI();
+    double result = 0;
+    int x = 0;
+    int y = 0;
+    LaserProperty prop = null;
+    boolean cutting = false;
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      switch (vp.getCommandType(i))
       {
-        result.lineto(p.x, p.y);
+        case MOVETO:
+          result += travelCost(x, y, vp.getX(i), vp.getY(i));
+          x = vp.getX(i);
+          y = vp.getY(i);
+          cutting = false;
+          break;
+        case LINETO:
+        case ARCTO:
+        case CURVETO:
+          if (!cutting)
+          {
+            result += costModel.getPierceCost(prop);
+            cutting = true;
+          }
+          x = vp.getX(i);
+          y = vp.getY(i);
+          break;
+        case SETPROPERTY:
+          result += switchCost(prop, vp.getProperty(i));
+          prop = vp.getProperty(i);
+          cutting = false;
+          break;
       }
     }
     return result;
@@ -0,0 +1,126 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A VectorOptimizer which runs other optimizers one after the other, e.g.
+ * deleting duplicates, joining paths and then sorting with TSP.
+ * The stages work on the same list of elements, so the VectorPart is
+ * divided and built only once. Stages which only delete or join
+ * elements do not sort them unless they are the last stage.
+ * The time spent in each stage of the last optimize() call is kept
+ * for profiling.
+ */
+public class VectorOptimizerPipeline extends VectorOptimizer
+{
+
+  private List<VectorOptimizer> stages = new ArrayList<VectorOptimizer>();
+  //nanoseconds per stage, shared with the copies sorting property groups
+  private AtomicLongArray times = new AtomicLongArray(0);
+
+  public VectorOptimizerPipeline()
+  {
+  }
+
+  public VectorOptimizerPipeline(OrderStrategy... strategies)
+  {
+    for (OrderStrategy s : strategies)
+    {
+      addStage(s);
+    }
+  }
+
+  /**
+   * Adds a stage, which is run after the stages added before. The stage
+   * itself is not changed: each run uses a copy of it, which takes the cost
+   * model and the rotation of closed paths of this pipeline, unless they
+   * were set on the stage.
+   */
+  public void addStage(VectorOptimizer stage)
+  {
+    stages.add(stage);
+    times = new AtomicLongArray(stages.size());
+  }
+
+  public void addStage(OrderStrategy strategy)
+  {
+    addStage(VectorOptimizer.create(strategy));
+  }
+
+  public List<VectorOptimizer> getStages()
+  {
+    return Collections.unmodifiableList(stages);
+  }
+
+  /**
+   * @return the time spent in each stage during the last call of
+   * optimize() in nanoseconds. If property groups are sorted in parallel,
+   * the times of all groups are summed up.
+   */
+  public long[] getStageTimes()
+  {
+    long[] result = new long[times.length()];
+    for (int i = 0; i < result.length; i++)
+    {
+      result[i] = times.get(i);
+    }
+    return result;
+  }
+
+  @Override
+  protected VectorOptimizerPipeline clone()
+  {
+    VectorOptimizerPipeline result = (VectorOptimizerPipeline) super.clone();
+    //the stages keep state while sorting
+    result.stages = new ArrayList<VectorOptimizer>();
+    for (VectorOptimizer s : stages)
+    {
+      result.stages.add(s.clone());
+    }
+    return result;
+  }
+
+  @Override
+  protected void reset()
+  {
+    times = new AtomicLongArray(stages.size());
+    for (VectorOptimizer s : stages)
+    {
+      s.reset();
+    }
+  }
+
+  @Override
+  protected List<Element> sort(List<Element> e)
+  {
+    for (int i = 0; i < stages.size(); i++)
+    {
+      VectorOptimizer stage = configureDefaults(stages.get(i).clone());
+      long start = System.nanoTime();
+      e = i + 1 < stages.size() ? stage.apply(e) : stage.sort(e);
+      times.addAndGet(i, System.nanoTime() - start);
+    }
+    return e;
+  }
+}
@@ -104,4 +104,55 @@ public class BlackWhiteRasterTest
       }
     }
   }
+
+  @Test
+  public void testRowAccess()
+  {
+    BlackWhiteRaster ras = new BlackWhiteRaster(130, 3);
+    assertEquals(3, ras.getWordsPerRow());
+    assertEquals(-1, ras.firstBlack(1));
+    assertEquals(-1, ras.lastBlack(1));
+    assertEquals(0, ras.countBlack(1));
+    ras.setBlack(3, 1, true);
+    ras.setBlack(64, 1, true);
+    ras.setBlack(129, 1, true);
+    assertEquals(3, ras.firstBlack(1));
+    assertEquals(64, ras.nextBlack(4, 1));
+    assertEquals(129, ras.nextBlack(65, 1));
+    assertEquals(-1, ras.nextBlack(130, 1));
+    assertEquals(129, ras.lastBlack(1));
+    assertEquals(3, ras.countBlack(1));
+    assertEquals(-1, ras.firstBlack(0));
+    assertEquals(-1, ras.firstBlack(2));
+
+    byte[] bytes = ras.getRowBytes(1, new byte[17]);
+    assertEquals((byte) 0x10, bytes[0]);
+    assertEquals((byte) 0x80, bytes[8]);
+    assertEquals((byte) 0x40, bytes[16]);
+    for (int bx = 0; bx < bytes.length; bx++)
+    {
+      assertEquals(ras.getByte(bx, 1), bytes[bx]);
+    }
+
+    long[] words = ras.getRowWords(1, new long[3]);
+    assertEquals(words[1], ras.getRowView(1).get(1));
+    ras.setRowWords(0, new long[]{-1L, -1L, -1L});
+    assertEquals(130, ras.countBlack(0));
+    assertEquals(129, ras.lastBlack(0));
+    assertTrue(ras.isBlack(129, 0));
+  }
+
+  @Test
+  public void testByteArrayConstructor()
+  {
+    byte[][] bytes = new byte[2][2];
+    bytes[0][0] = (byte) 0x81;
+    bytes[1][1] = (byte) 0xFF;
+    BlackWhiteRaster ras = new BlackWhiteRaster(12, 2, bytes);
+    assertTrue(ras.isBlack(0, 0));
+    assertTrue(ras.isBlack(7, 0));
+    assertFalse(ras.isBlack(1, 0));
+    assertEquals((byte) 0xF0, ras.getByte(1, 1));
+    assertEquals(4, ras.countBlack(1));
+  }
 }
@@ -0,0 +1,99 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import com.t_oster.liblasercut.platform.Point;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the raster line access of RasterPart and Raster3dPart
+ */
+public class RasterPartTest
+{
+
+  @Test
+  public void testRasterLine()
+  {
+    BlackWhiteRaster raster = new BlackWhiteRaster(40, 3);
+    raster.setBlack(9, 1, true);
+    raster.setBlack(30, 1, true);
+    raster.setBlack(39, 2, true);
+    RasterPart part = new RasterPart(raster, new PowerSpeedFocusProperty(), new Point(0, 0), 500);
+    assertEquals(5, part.getRasterLineLength());
+    byte[] line = new byte[part.getRasterLineLength()];
+    int[] bounds = new int[2];
+
+    assertEquals(0, part.getRasterLine(0, line, bounds));
+    assertEquals(bounds[0], bounds[1]);
+
+    assertEquals(3, part.getRasterLine(1, line, bounds));
+    assertEquals(1, bounds[0]);
+    assertEquals(4, bounds[1]);
+    assertArrayEquals(new byte[]{0, 0x40, 0, 0x02, 0}, line);
+    List<Byte> old = part.getRasterLine(1);
+    for (int i = 0; i < line.length; i++)
+    {
+      assertEquals(old.get(i).byteValue(), line[i]);
+    }
+
+    assertEquals(1, part.getRasterLine(2, line, bounds));
+    assertEquals(4, bounds[0]);
+    assertEquals(5, bounds[1]);
+    assertEquals((byte) 0x01, line[4]);
+
+    byte[] pixels = new byte[40];
+    assertEquals(22, part.getRasterLinePixels(1, pixels, bounds));
+    assertEquals(9, bounds[0]);
+    assertEquals(31, bounds[1]);
+    assertEquals((byte) 255, pixels[9]);
+    assertEquals(0, pixels[10]);
+    assertEquals((byte) 255, pixels[30]);
+    assertEquals(0, part.getRasterLinePixels(0, pixels, bounds));
+  }
+
+  @Test
+  public void testRaster3dLine()
+  {
+    BlackWhiteRaster raster = new BlackWhiteRaster(10, 1);
+    raster.setBlack(3, 0, true);
+    raster.setBlack(5, 0, true);
+    Raster3dPart part = new Raster3dPart(raster, new PowerSpeedFocusProperty(), new Point(0, 0), 500);
+    byte[] line = new byte[part.getRasterWidth()];
+    int[] bounds = new int[2];
+
+    //white pixels are 255 and black ones 0
+    assertEquals(10, part.getRasterLine(0, line, bounds));
+    assertEquals(0, bounds[0]);
+    assertEquals(10, bounds[1]);
+    assertEquals(0, line[3]);
+    assertEquals((byte) 255, line[4]);
+
+    assertEquals(3, part.getInvertedRasterLine(0, line, bounds));
+    assertEquals(3, bounds[0]);
+    assertEquals(6, bounds[1]);
+    assertArrayEquals(new byte[]{0, 0, 0, (byte) 255, 0, (byte) 255, 0, 0, 0, 0}, line);
+    List<Byte> old = part.getInvertedRasterLine(0);
+    for (int i = 0; i < line.length; i++)
+    {
+      assertEquals(old.get(i).byteValue(), line[i]);
+    }
+  }
+}
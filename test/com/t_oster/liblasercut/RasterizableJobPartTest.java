@@ -21,6 +21,7 @@ package com.t_oster.liblasercut;
 import com.t_oster.liblasercut.platform.Point;
 import com.t_oster.liblasercut.utils.BufferedImageAdapter;
 import java.awt.image.BufferedImage;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -414,9 +415,138 @@ public class RasterizableJobPartTest
     boolean done = instance.hasFinishedCuttingLine(x, y);
     assertEquals(true, done);
   }
-  
 
-  
+  /**
+   * @return the next x in direction dx with a color different from x
+   * by reading every pixel, as done before the run index
+   */
+  private static int scanColorChange(GreyscaleRaster image, int x, int y, int dx)
+  {
+    int color = image.getGreyScale(x, y);
+    int i = x;
+    while (i >= 0 && i < image.getWidth() && image.getGreyScale(i, y) == color)
+    {
+      i += dx;
+    }
+    return i;
+  }
+
+  /**
+   * @return the first non white x in direction dx by reading every pixel,
+   * or the value returned for blank lines
+   */
+  private static int scanNonWhite(GreyscaleRaster image, int y, int dx)
+  {
+    int x = dx > 0 ? 0 : image.getWidth() - 1;
+    for (; x >= 0 && x < image.getWidth(); x += dx)
+    {
+      if (image.getGreyScale(x, y) < 255)
+      {
+        return x;
+      }
+    }
+    return dx > 0 ? image.getWidth() : 0;
+  }
+
+  /**
+   * Test of the run index against a pixel by pixel scan, in both
+   * directions, with empty rows, fully set rows and rows of random runs
+   */
+  @Test
+  public void testRunIndexAgainstScan()
+  {
+    Random r = new Random(7);
+    RasterizableJobPartImpl instance = new RasterizableJobPartImpl();
+    for (int round = 0; round < 20; round++)
+    {
+      int width = 1 + r.nextInt(40);
+      int height = 12;
+      BufferedImageAdapter image = new BufferedImageAdapter(new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY));
+      for (int y = 0; y < height; y++)
+      {
+        //row 0 is empty, row 1 fully set, row 2 one grey value, row 3 only set at the edges
+        int[] colors = y == 0 ? new int[]{255} : y == 1 ? new int[]{0} : y == 2 ? new int[]{100} : new int[]{0, 255, 63, 127};
+        for (int x = 0; x < width; x++)
+        {
+          int color = colors[r.nextInt(colors.length)];
+          if (y == 3)
+          {
+            color = x == 0 || x == width - 1 ? 0 : 255;
+          }
+          else if (y > 3 && x > 0 && r.nextInt(3) > 0)
+          {
+            //make runs longer than one pixel
+            color = image.getGreyScale(x - 1, y);
+          }
+          image.setGreyScale(x, y, color);
+        }
+      }
+      instance.image = image;
+      //visit the rows in random order, so rows are indexed again and again
+      for (int k = 0; k < 3 * height; k++)
+      {
+        int y = r.nextInt(height);
+        String at = "round " + round + " row " + y;
+        assertEquals(at, scanNonWhite(image, y, 1) == width, instance.lineIsBlank(y));
+        assertEquals(at, scanNonWhite(image, y, 1), instance.leftMostNonWhitePixel(y));
+        assertEquals(at, scanNonWhite(image, y, -1), instance.rightMostNonWhitePixel(y));
+        for (boolean leftToRight : new boolean[]{true, false})
+        {
+          if (leftToRight)
+          {
+            instance.setRasteringCutDirectionLeftToRight();
+          }
+          else
+          {
+            instance.setRasteringCutDirectionRightToLeft();
+          }
+          int dx = leftToRight ? 1 : -1;
+          assertEquals(at, scanNonWhite(image, y, dx), instance.firstNonWhitePixel(y));
+          assertEquals(at, scanNonWhite(image, y, -dx), instance.lastNonWhitePixel(y));
+          for (int x = 0; x < width; x++)
+          {
+            assertEquals(at + " x " + x, scanColorChange(image, x, y, dx), instance.nextColorChange(x, y));
+          }
+        }
+        int x = r.nextInt(width);
+        assertEquals(at, scanColorChange(image, x, y, 1), instance.nextColorChangeHeadingRight(x, y));
+        assertEquals(at, scanColorChange(image, x, y, -1), instance.nextColorChangeHeadingLeft(x, y));
+      }
+    }
+  }
+
+  /**
+   * Walks the runs of a row like the drivers do, in both directions
+   */
+  @Test
+  public void testWalkRuns()
+  {
+    RasterizableJobPartImpl instance = new RasterizableJobPartImpl();
+    for (int y = 0; y < instance.getRasterHeight(); y++)
+    {
+      if (instance.lineIsBlank(y))
+      {
+        continue;
+      }
+      instance.setRasteringCutDirectionLeftToRight();
+      int pixels = 0;
+      for (int x = instance.firstNonWhitePixel(y); !instance.hasFinishedCuttingLine(x, y); x = instance.nextColorChange(x, y))
+      {
+        pixels += scanColorChange(instance.image, x, y, 1) - x;
+      }
+      instance.setRasteringCutDirectionRightToLeft();
+      int back = 0;
+      for (int x = instance.firstNonWhitePixel(y); !instance.hasFinishedCuttingLine(x, y); x = instance.nextColorChange(x, y))
+      {
+        back += x - scanColorChange(instance.image, x, y, -1);
+      }
+      //both directions cover the pixels from the first to the last non white one
+      int expected = instance.rightMostNonWhitePixel(y) - instance.leftMostNonWhitePixel(y) + 1;
+      assertEquals(expected, pixels);
+      assertEquals(expected, back);
+    }
+  }
+
   public class RasterizableJobPartImpl extends RasterizableJobPart
   {
     public RasterizableJobPartImpl()
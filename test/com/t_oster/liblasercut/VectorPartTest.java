@@ -0,0 +1,238 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for VectorPart
+ */
+public class VectorPartTest
+{
+
+  /**
+   * Test of the indexed command accessors of class VectorPart.
+   */
+  @Test
+  public void testPackedCommands()
+  {
+    PowerSpeedFocusProperty cut = new PowerSpeedFocusProperty();
+    PowerSpeedFocusProperty engrave = new PowerSpeedFocusProperty();
+    VectorPart instance = new VectorPart(cut, 500);
+    for (int i = 0; i < 100; i++)
+    {
+      instance.moveto(i, -i);
+      instance.lineto(2 * i, 3 * i);
+    }
+    instance.setProperty(engrave);
+    instance.lineto(7, 8);
+    instance.setProperty(cut);
+
+    assertEquals(204, instance.getCommandCount());
+    assertEquals(VectorCommand.CmdType.SETPROPERTY, instance.getCommandType(0));
+    assertSame(cut, instance.getProperty(0));
+    assertEquals(VectorCommand.CmdType.MOVETO, instance.getCommandType(21));
+    assertEquals(10, instance.getX(21));
+    assertEquals(-10, instance.getY(21));
+    assertEquals(VectorCommand.CmdType.LINETO, instance.getCommandType(22));
+    assertEquals(20, instance.getX(22));
+    assertEquals(30, instance.getY(22));
+    assertSame(engrave, instance.getProperty(201));
+    assertSame(cut, instance.getProperty(203));
+    assertEquals(198, instance.getMaxX());
+    assertEquals(-99, instance.getMinY());
+
+    VectorCommand[] cmds = instance.getCommandList();
+    assertEquals(instance.getCommandCount(), cmds.length);
+    assertEquals(VectorCommand.CmdType.LINETO, cmds[202].getType());
+    assertEquals(7, cmds[202].getX());
+    assertEquals(8, cmds[202].getY());
+  }
+
+  /**
+   * Test of translated method, of class VectorPart.
+   */
+  @Test
+  public void testTranslated()
+  {
+    VectorPart instance = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    instance.moveto(10, 20);
+    instance.lineto(30, 40);
+    VectorPart view = instance.translated(-5.5, 2);
+    assertEquals(3, view.getCommandCount());
+    assertEquals(4, view.getX(1));
+    assertEquals(22, view.getY(1));
+    assertEquals(24, view.getMaxX());
+    assertEquals(42, view.getMaxY());
+    //the original stays unchanged
+    assertEquals(10, instance.getX(1));
+    assertEquals(20, instance.getY(1));
+
+    //appending to either part must not show up in the other one
+    view.lineto(0, 0);
+    instance.lineto(50, 60);
+    assertEquals(4, view.getCommandCount());
+    assertEquals(0, view.getX(3));
+    assertEquals(24, view.getX(2));
+    assertEquals(4, instance.getCommandCount());
+    assertEquals(50, instance.getX(3));
+  }
+
+  /**
+   * Test of getTranslatedJob method, of class LaserJob.
+   */
+  @Test
+  public void testTranslatedJob()
+  {
+    VectorPart instance = new VectorPart(new PowerSpeedFocusProperty(), 254);
+    instance.moveto(100, 100);
+    LaserJob job = new LaserJob("test", "test", "test");
+    job.addPart(instance);
+    job.setStartPoint(10, 20);
+    VectorPart moved = (VectorPart) job.getTranslatedJob().getParts().get(0);
+    assertEquals(0, moved.getX(1));
+    assertEquals(-100, moved.getY(1));
+    assertEquals(100, instance.getX(1));
+    assertEquals(10, job.getStartX(), 0);
+  }
+
+  /**
+   * Test of the arcto and curveto methods, of class VectorPart.
+   */
+  @Test
+  public void testCurves() throws IOException
+  {
+    VectorPart instance = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    instance.moveto(100, 0);
+    //a quarter circle around the origin towards the y axis
+    instance.arcto(0, 0, Math.PI / 2);
+    instance.curveto(-50, 100, -100, 50, -100, 0);
+    assertTrue(instance.hasCurves());
+    assertEquals(4, instance.getCommandCount());
+    assertEquals(VectorCommand.CmdType.ARCTO, instance.getCommandType(2));
+    assertEquals(0, instance.getX(2));
+    assertEquals(100, instance.getY(2));
+    assertEquals(0, instance.getCenterX(2), 0);
+    assertEquals(Math.PI / 2, instance.getSweep(2), 0);
+    assertEquals(VectorCommand.CmdType.CURVETO, instance.getCommandType(3));
+    assertEquals(-50, instance.getControlX(3, 0));
+    assertEquals(50, instance.getControlY(3, 1));
+    assertEquals(-100, instance.getMinX());
+    assertEquals(100, instance.getMaxY());
+
+    //visitors without curve support get lines close to the curves
+    final List<int[]> lines = new ArrayList<int[]>();
+    instance.accept(new VectorCommandVisitor()
+    {
+      @Override
+      public void setProperty(LaserProperty p)
+      {
+      }
+
+      @Override
+      public void moveto(int x, int y)
+      {
+      }
+
+      @Override
+      public void lineto(int x, int y)
+      {
+        lines.add(new int[]{x, y});
+      }
+    });
+    assertTrue(lines.size() > 10);
+    for (int[] p : lines)
+    {
+      assertTrue(p[1] >= 0);
+    }
+    int arcPoints = 0;
+    for (int[] p : lines)
+    {
+      if (p[0] >= 0)
+      {
+        arcPoints++;
+        assertEquals(100, Math.hypot(p[0], p[1]), 1);
+      }
+    }
+    assertTrue(arcPoints > 5);
+    assertArrayEquals(new int[]{-100, 0}, lines.get(lines.size() - 1));
+
+    VectorPart flat = instance.flattened();
+    assertFalse(flat.hasCurves());
+    assertSame(flat, flat.flattened());
+    assertEquals(lines.size() + 2, flat.getCommandCount());
+    assertEquals(flat.getCommandCount(), instance.getCommandList().length);
+
+    //a full circle of a translated view
+    VectorPart circle = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    circle.moveto(10, 0);
+    circle.arcto(0, 0, 2 * Math.PI);
+    VectorPart view = circle.translated(5, 5);
+    assertEquals(15, view.getX(2));
+    assertEquals(5, view.getY(2));
+    assertEquals(5, view.getCenterX(2), 0);
+    assertEquals(-5, view.getMinY());
+    assertEquals(15, view.getMaxX());
+    view.lineto(0, 0);
+    assertEquals(5, view.getCenterY(2), 0);
+    assertEquals(0, circle.getCenterY(2), 0);
+  }
+
+  /**
+   * Test of the accessor checks of class VectorPart.
+   */
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetXOnProperty()
+  {
+    VectorPart instance = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    instance.getX(0);
+  }
+
+  /**
+   * Test of the angle checks of the arcto method, of class VectorPart.
+   */
+  @Test
+  public void testArcSweep()
+  {
+    VectorPart instance = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    instance.moveto(10, 0);
+    double[] invalid = new double[]{0, 2 * Math.PI + 0.01, -3 * Math.PI, Double.NaN};
+    for (double sweep : invalid)
+    {
+      try
+      {
+        instance.arcto(0, 0, sweep);
+        fail("arcto accepted the angle " + sweep);
+      }
+      catch (IllegalArgumentException e)
+      {
+        //expected
+      }
+    }
+    assertEquals(2, instance.getCommandCount());
+    assertFalse(instance.hasCurves());
+    instance.arcto(0, 0, -2 * Math.PI);
+    assertEquals(10, instance.getX(2));
+    assertEquals(0, instance.getY(2));
+  }
+}
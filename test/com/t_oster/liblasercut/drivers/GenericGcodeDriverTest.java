@@ -0,0 +1,346 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.drivers;
+
+import com.t_oster.liblasercut.FloatPowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorPart;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for GenericGcodeDriver
+ */
+public class GenericGcodeDriverTest
+{
+
+  /**
+   * A board answering the lines sent to it with scripted responses.
+   * It keeps track of the characters which have been sent, but not
+   * acknowledged yet, i.e. which are in its receive buffer.
+   */
+  private static class ScriptedBoard extends BufferedReader
+  {
+
+    private final LinkedList<String> replies = new LinkedList<String>();
+    private final List<String> received = new ArrayList<String>();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream()
+    {
+      @Override
+      public void flush()
+      {
+        maxPending = Math.max(maxPending, pending());
+      }
+    };
+    //if true, all replies are available without blocking
+    private boolean answerAtOnce = false;
+    private int acks = 0;
+    private int maxPending = 0;
+
+    ScriptedBoard(String... replies)
+    {
+      super(new StringReader(""));
+      this.replies.addAll(Arrays.asList(replies));
+    }
+
+    void connect(GenericGcodeDriver driver) throws IOException
+    {
+      driver.in = this;
+      driver.out = new PrintStream(output, false, "US-ASCII");
+    }
+
+    /**
+     * @return the lines received so far, including their line ends
+     */
+    private List<String> sentLines()
+    {
+      List<String> result = new ArrayList<String>();
+      String text = new String(output.toByteArray());
+      int start = 0;
+      for (int i = 0; i < text.length(); i++)
+      {
+        if (text.charAt(i) == '\n')
+        {
+          result.add(text.substring(start, i + 1));
+          start = i + 1;
+        }
+      }
+      return result;
+    }
+
+    int pending()
+    {
+      int result = 0;
+      List<String> lines = sentLines();
+      for (int i = acks; i < lines.size(); i++)
+      {
+        result += lines.get(i).length();
+      }
+      return result;
+    }
+
+    @Override
+    public boolean ready()
+    {
+      return answerAtOnce && !replies.isEmpty() && acks < sentLines().size();
+    }
+
+    @Override
+    public String readLine() throws IOException
+    {
+      List<String> lines = sentLines();
+      assertTrue("reply without a pending line", acks < lines.size());
+      assertFalse("no reply left for " + lines.get(acks).trim(), replies.isEmpty());
+      received.add(lines.get(acks).trim());
+      acks++;
+      return replies.removeFirst();
+    }
+  }
+
+  private static GenericGcodeDriver streamingDriver(int rxBufferSize)
+  {
+    GenericGcodeDriver driver = new GenericGcodeDriver();
+    driver.setWaitForOKafterEachLine(true);
+    driver.setCharacterCounting(true);
+    driver.setRxBufferSize(rxBufferSize);
+    return driver;
+  }
+
+  private static String[] oks(int count)
+  {
+    String[] result = new String[count];
+    Arrays.fill(result, "ok");
+    return result;
+  }
+
+  @Test
+  public void testCharacterCountingBudget() throws IOException
+  {
+    //each line is 6 characters long including the line end
+    for (int budget : new int[]{5, 6, 17, 18, 19})
+    {
+      GenericGcodeDriver driver = streamingDriver(budget);
+      ScriptedBoard board = new ScriptedBoard(oks(10));
+      board.connect(driver);
+      for (int i = 0; i < 10; i++)
+      {
+        driver.sendLine("G1 X%d", i);
+        assertTrue(board.pending() <= Math.max(budget, 6));
+      }
+      //as many lines as fit into the buffer are sent without waiting
+      assertEquals(Math.max(1, budget / 6) * 6, board.maxPending);
+      driver.waitForPendingLines();
+      assertEquals(0, board.pending());
+      assertEquals(10, board.acks);
+    }
+  }
+
+  @Test
+  public void testAcknowledgementsInOrder() throws IOException
+  {
+    GenericGcodeDriver driver = streamingDriver(127);
+    ScriptedBoard board = new ScriptedBoard("ok", "ok", "error:20", "ok");
+    board.connect(driver);
+    for (int i = 1; i <= 4; i++)
+    {
+      driver.sendLine("G1 X%d", i);
+    }
+    assertEquals(0, board.acks);
+    try
+    {
+      driver.waitForPendingLines();
+      fail("the error was not reported");
+    }
+    catch (IOException e)
+    {
+      //the third line was rejected
+      assertTrue(e.getMessage(), e.getMessage().contains("'G1 X3'"));
+      assertTrue(e.getMessage(), e.getMessage().contains("error:20"));
+    }
+    assertEquals(Arrays.asList("G1 X1", "G1 X2", "G1 X3"), board.received);
+  }
+
+  @Test
+  public void testWaitForPendingLines() throws IOException
+  {
+    GenericGcodeDriver driver = streamingDriver(127);
+    ScriptedBoard board = new ScriptedBoard(oks(6));
+    board.connect(driver);
+    for (int i = 0; i < 3; i++)
+    {
+      driver.sendLine("G1 X%d", i);
+    }
+    assertEquals(18, board.pending());
+    driver.waitForPendingLines();
+    assertEquals(0, board.pending());
+    assertEquals(3, board.acks);
+    //nothing left to wait for, so nothing is read
+    driver.waitForPendingLines();
+    assertEquals(3, board.acks);
+
+    //replies which have already arrived are handled while sending
+    board.answerAtOnce = true;
+    for (int i = 0; i < 3; i++)
+    {
+      driver.sendLine("G1 X%d", i);
+      assertEquals(0, board.pending());
+    }
+    driver.waitForPendingLines();
+    assertEquals(6, board.acks);
+  }
+
+  /**
+   * @return the value of the word starting with letter in the G-code line
+   */
+  private static double word(String line, char letter)
+  {
+    for (String w : line.trim().split(" "))
+    {
+      if (w.charAt(0) == letter)
+      {
+        return Double.parseDouble(w.substring(1));
+      }
+    }
+    return Double.NaN;
+  }
+
+  /**
+   * @return points along the moves of the G-code, at most 0.05 apart
+   */
+  private static List<double[]> trace(String gcode)
+  {
+    List<double[]> result = new ArrayList<double[]>();
+    double x = 0;
+    double y = 0;
+    for (String line : gcode.split("\n"))
+    {
+      if (!line.startsWith("G"))
+      {
+        continue;
+      }
+      double nx = word(line, 'X');
+      double ny = word(line, 'Y');
+      if (line.startsWith("G2 ") || line.startsWith("G3 "))
+      {
+        double cx = x + word(line, 'I');
+        double cy = y + word(line, 'J');
+        double r = Math.hypot(x - cx, y - cy);
+        double a0 = Math.atan2(y - cy, x - cx);
+        double sweep = Math.atan2(ny - cy, nx - cx) - a0;
+        if (line.startsWith("G3 ") && sweep < 0)
+        {
+          sweep += 2 * Math.PI;
+        }
+        if (line.startsWith("G2 ") && sweep > 0)
+        {
+          sweep -= 2 * Math.PI;
+        }
+        int n = (int) Math.ceil(Math.abs(sweep) * r / 0.05) + 1;
+        for (int k = 0; k <= n; k++)
+        {
+          double a = a0 + sweep * k / n;
+          result.add(new double[]{cx + r * Math.cos(a), cy + r * Math.sin(a)});
+        }
+      }
+      else if (line.startsWith("G1 "))
+      {
+        int n = (int) Math.ceil(Math.hypot(nx - x, ny - y) / 0.05) + 1;
+        for (int k = 0; k <= n; k++)
+        {
+          result.add(new double[]{x + (nx - x) * k / n, y + (ny - y) * k / n});
+        }
+      }
+      x = nx;
+      y = ny;
+    }
+    return result;
+  }
+
+  @Test
+  public void testCurves() throws IOException
+  {
+    //an S shaped curve and a loop, in mm at 25.4 dpi
+    int[][] curves = new int[][]{
+      {0, 0, 100, 0, 0, 100, 100, 100},
+      {100, 100, 300, 200, 0, 200, 200, 100}
+    };
+    GenericGcodeDriver driver = new GenericGcodeDriver();
+    driver.setWaitForOKafterEachLine(false);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    driver.out = new PrintStream(bytes, true, "US-ASCII");
+    VectorPart vp = new VectorPart(new FloatPowerSpeedFocusProperty(), 25.4);
+    vp.moveto(curves[0][0], curves[0][1]);
+    for (int[] c : curves)
+    {
+      vp.curveto(c[2], c[3], c[4], c[5], c[6], c[7]);
+    }
+    driver.writeVectorGCode(vp, 25.4);
+    String gcode = bytes.toString("US-ASCII").replace("\r", "");
+
+    int arcs = 0;
+    int lines = 0;
+    String last = null;
+    for (String line : gcode.split("\n"))
+    {
+      if (line.startsWith("G2 ") || line.startsWith("G3 "))
+      {
+        arcs++;
+      }
+      if (line.startsWith("G1 "))
+      {
+        lines++;
+      }
+      last = line;
+    }
+    assertTrue(arcs > 0);
+    assertEquals(0, lines);
+    assertEquals(200, word(last, 'X'), 0.01);
+    assertEquals(100, word(last, 'Y'), 0.01);
+
+    //every point of the curves is close to the cut
+    List<double[]> cut = trace(gcode);
+    for (int[] c : curves)
+    {
+      for (int k = 0; k <= 200; k++)
+      {
+        double t = k / 200d;
+        double u = 1 - t;
+        double px = u * u * u * c[0] + 3 * u * u * t * c[2] + 3 * u * t * t * c[4] + t * t * t * c[6];
+        double py = u * u * u * c[1] + 3 * u * u * t * c[3] + 3 * u * t * t * c[5] + t * t * t * c[7];
+        double best = Double.POSITIVE_INFINITY;
+        for (double[] p : cut)
+        {
+          best = Math.min(best, Math.hypot(p[0] - px, p[1] - py));
+        }
+        assertTrue("distance " + best + " at t=" + t, best <= VectorPart.DEFAULT_FLATNESS + 0.1);
+      }
+    }
+    //far fewer moves than flattening
+    VectorPart flat = vp.flattened();
+    assertTrue(arcs * 2 < flat.getCommandCount());
+  }
+}
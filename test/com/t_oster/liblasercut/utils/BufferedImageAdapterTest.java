@@ -0,0 +1,142 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for BufferedImageAdapter
+ */
+public class BufferedImageAdapterTest
+{
+
+  private static final int[] TYPES = new int[]{
+    BufferedImage.TYPE_INT_RGB,
+    BufferedImage.TYPE_INT_ARGB,
+    BufferedImage.TYPE_3BYTE_BGR,
+    BufferedImage.TYPE_BYTE_GRAY,
+    BufferedImage.TYPE_USHORT_GRAY
+  };
+
+  /**
+   * The grey value as computed before the lookup tables were introduced
+   */
+  private static int expectedGrey(BufferedImage img, int x, int y, int colorShift, boolean invertColors)
+  {
+    Color c = new Color(img.getRGB(x, y));
+    int value = colorShift + (int) (0.3 * c.getRed() + 0.59 * c.getGreen() + 0.11 * c.getBlue());
+    return invertColors ? 255 - Math.max(Math.min(value, 255), 0) : Math.max(Math.min(value, 255), 0);
+  }
+
+  /**
+   * @return an image of the given type with random samples in every band
+   */
+  private static BufferedImage randomImage(int type, int width, int height, Random r)
+  {
+    BufferedImage img = new BufferedImage(width, height, type);
+    WritableRaster raster = img.getRaster();
+    int[] bits = img.getSampleModel().getSampleSize();
+    for (int y = 0; y < height; y++)
+    {
+      for (int x = 0; x < width; x++)
+      {
+        for (int b = 0; b < bits.length; b++)
+        {
+          raster.setSample(x, y, b, r.nextInt(1 << bits[b]));
+        }
+      }
+    }
+    return img;
+  }
+
+  private static void assertSameGreys(String name, BufferedImage img)
+  {
+    for (int colorShift : new int[]{0, -40, 60})
+    {
+      for (boolean invert : new boolean[]{false, true})
+      {
+        BufferedImageAdapter adapter = new BufferedImageAdapter(img, invert);
+        adapter.setColorShift(colorShift);
+        assertEquals(img.getWidth(), adapter.getWidth());
+        assertEquals(img.getHeight(), adapter.getHeight());
+        int[] row = new int[img.getWidth()];
+        for (int y = 0; y < img.getHeight(); y++)
+        {
+          adapter.getRow(y, row);
+          for (int x = 0; x < img.getWidth(); x++)
+          {
+            int expected = expectedGrey(img, x, y, colorShift, invert);
+            String at = name + " at " + x + "," + y + " shift " + colorShift + " invert " + invert;
+            assertEquals(at, expected, adapter.getGreyScale(x, y));
+            assertEquals(at, expected, row[x]);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testImageTypes()
+  {
+    Random r = new Random(6);
+    for (int type : TYPES)
+    {
+      assertSameGreys("type " + type, randomImage(type, 37, 23, r));
+    }
+  }
+
+  @Test
+  public void testSubimages()
+  {
+    Random r = new Random(7);
+    for (int type : TYPES)
+    {
+      BufferedImage img = randomImage(type, 37, 23, r);
+      assertSameGreys("subimage of type " + type, img.getSubimage(5, 3, 20, 11));
+      //a subimage of a subimage
+      BufferedImage sub = img.getSubimage(1, 2, 30, 20).getSubimage(7, 4, 13, 9);
+      assertSameGreys("nested subimage of type " + type, sub);
+    }
+  }
+
+  @Test
+  public void testSetGreyScale()
+  {
+    for (int type : TYPES)
+    {
+      BufferedImage img = new BufferedImage(4, 3, type);
+      BufferedImageAdapter adapter = new BufferedImageAdapter(img.getSubimage(1, 1, 3, 2));
+      adapter.setGreyScale(2, 1, 200);
+      adapter.setRow(0, new int[]{10, 128, 255});
+      assertEquals(expectedGrey(img, 3, 2, 0, false), adapter.getGreyScale(2, 1));
+      assertEquals(expectedGrey(img, 2, 1, 0, false), adapter.getGreyScale(1, 0));
+      //the table based path sees the values written via setRGB
+      int[] row = adapter.getRow(0, new int[3]);
+      for (int x = 0; x < 3; x++)
+      {
+        assertEquals("type " + type, expectedGrey(img, x + 1, 1, 0, false), row[x]);
+      }
+    }
+  }
+}
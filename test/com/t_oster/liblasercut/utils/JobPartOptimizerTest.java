@@ -0,0 +1,139 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.utils;
+
+import com.t_oster.liblasercut.BlackWhiteRaster;
+import com.t_oster.liblasercut.JobPart;
+import com.t_oster.liblasercut.LaserCutter;
+import com.t_oster.liblasercut.LaserJob;
+import com.t_oster.liblasercut.PowerSpeedFocusFrequencyProperty;
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.RasterPart;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.drivers.EpilogZing;
+import com.t_oster.liblasercut.platform.Point;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for JobPartOptimizer
+ */
+public class JobPartOptimizerTest
+{
+
+  private static VectorPart square(int x, int y)
+  {
+    VectorPart result = new VectorPart(new PowerSpeedFocusFrequencyProperty(), 500);
+    result.moveto(x, y);
+    result.lineto(x + 100, y);
+    result.lineto(x + 100, y + 100);
+    result.lineto(x, y + 100);
+    result.lineto(x, y);
+    return result;
+  }
+
+  private static RasterPart raster(int x, int y)
+  {
+    return new RasterPart(new BlackWhiteRaster(100, 100), new PowerSpeedFocusProperty(), new Point(x, y), 500);
+  }
+
+  /**
+   * @return the number of jobs the cutter sends the parts in
+   */
+  private static int jobs(LaserCutter cutter, List<JobPart> parts)
+  {
+    int result = 1;
+    for (int i = 1; i < parts.size(); i++)
+    {
+      if (!cutter.canCombineJobParts(parts.get(i - 1), parts.get(i)))
+      {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testEngraveBeforeCut()
+  {
+    VectorPart right = square(10000, 0);
+    RasterPart raster = raster(0, 0);
+    VectorPart left = square(0, 0);
+    LaserJob job = new LaserJob("title", "name", "user");
+    job.addPart(right);
+    job.addPart(raster);
+    job.addPart(left);
+    job.setStartPoint(5, 10);
+    LaserJob result = new JobPartOptimizer().optimize(job);
+    assertEquals(Arrays.<JobPart>asList(raster, left, right), result.getParts());
+    assertEquals(10, result.getStartY(), 0);
+    //the job itself is not changed
+    assertSame(right, job.getParts().get(0));
+
+    JobPartOptimizer vo = new JobPartOptimizer();
+    vo.addOrderConstraint(right, left);
+    assertEquals(Arrays.<JobPart>asList(raster, right, left), vo.optimize(job.getParts()));
+    vo.setEngraveBeforeCut(false);
+    vo.clearOrderConstraints();
+    assertEquals(Arrays.<JobPart>asList(left, raster, right), vo.optimize(job.getParts()));
+  }
+
+  @Test
+  public void testSplits()
+  {
+    VectorPart left = square(0, 0);
+    RasterPart rightRaster = raster(10000, 0);
+    VectorPart right = square(10000, 0);
+    RasterPart leftRaster = raster(0, 0);
+    List<JobPart> parts = Arrays.<JobPart>asList(left, rightRaster, right, leftRaster);
+    EpilogZing cutter = new EpilogZing();
+    assertEquals(3, jobs(cutter, parts));
+
+    JobPartOptimizer vo = new JobPartOptimizer(cutter);
+    vo.setEngraveBeforeCut(false);
+    List<JobPart> result = vo.optimize(parts);
+    assertEquals(2, jobs(cutter, result));
+    assertSame(leftRaster, result.get(0));
+    assertSame(left, result.get(1));
+
+    vo.setEngraveBeforeCut(true);
+    result = vo.optimize(parts);
+    assertEquals(2, jobs(cutter, result));
+    assertTrue(result.get(1) instanceof RasterPart);
+    assertTrue(result.get(2) instanceof VectorPart);
+  }
+
+  @Test
+  public void testStartPoint()
+  {
+    //500 dpi, so the parts are at 0 mm and about 508 mm
+    VectorPart near = square(0, 0);
+    VectorPart far = square(10000, 0);
+    LaserJob job = new LaserJob("title", "name", "user");
+    job.addPart(near);
+    job.addPart(far);
+    assertEquals(Arrays.<JobPart>asList(near, far), new JobPartOptimizer().optimize(job).getParts());
+    //the head starts next to the far part
+    job.setStartPoint(500, 0);
+    assertEquals(Arrays.<JobPart>asList(far, near), new JobPartOptimizer().optimize(job).getParts());
+    assertEquals(Arrays.<JobPart>asList(far, near), new JobPartOptimizer().optimize(job.getParts(), 500, 0));
+  }
+}
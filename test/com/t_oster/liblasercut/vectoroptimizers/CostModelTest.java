@@ -0,0 +1,99 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Util;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the cost models and their use in the optimizers
+ */
+public class CostModelTest
+{
+
+  @Test
+  public void testMachineCostModel()
+  {
+    MachineCostModel m = new MachineCostModel(100, 50);
+    assertEquals(1, m.getTravelCost(100, 0), 0.0001);
+    assertEquals(2, m.getTravelCost(100, -100), 0.0001);
+    m.setAcceleration(1000);
+    //reaches full speed after 10 mm
+    assertEquals(1.1, m.getTravelCost(100, 0), 0.0001);
+    assertEquals(2 * Math.sqrt(0.005), m.getTravelCost(5, 0), 0.0001);
+
+    PowerSpeedFocusProperty a = new PowerSpeedFocusProperty();
+    PowerSpeedFocusProperty b = new PowerSpeedFocusProperty();
+    assertEquals(0, m.getPropertySwitchCost(a, b), 0);
+    m.setPropertySwitchTime(0.5);
+    m.setFocusSpeed(2);
+    b.setFocus(3);
+    assertEquals(2, m.getPropertySwitchCost(a, b), 0.0001);
+    assertEquals(2, m.getPropertySwitchCost(b, a), 0.0001);
+    b.setFocus(0);
+    b.setPower(30);
+    assertEquals(0.5, m.getPropertySwitchCost(a, b), 0.0001);
+  }
+
+  @Test
+  public void testNearestUsesAxisSpeeds()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), Util.inch2mm(1));
+    vp.moveto(0, 0);
+    vp.lineto(10, 0);
+    //nearer, but along the slow Y axis
+    vp.moveto(10, 60);
+    vp.lineto(20, 60);
+    vp.moveto(90, 0);
+    vp.lineto(100, 0);
+    VectorOptimizer vo = new NearestVectorOptimizer();
+    assertEquals(60, vo.optimize(vp).getY(3));
+    vo.setCostModel(new MachineCostModel(100, 10));
+    VectorPart result = vo.optimize(vp);
+    assertEquals(90, result.getX(3));
+    //0.8 s to the second path and 6 s to the third one
+    assertEquals(6.8, vo.getCost(result), 0.0001);
+  }
+
+  @Test
+  public void testPropertySwitchPenalty()
+  {
+    PowerSpeedFocusProperty cut = new PowerSpeedFocusProperty();
+    PowerSpeedFocusProperty engrave = new PowerSpeedFocusProperty();
+    engrave.setPower(50);
+    VectorPart vp = new VectorPart(cut, Util.inch2mm(1));
+    for (int i = 0; i < 10; i++)
+    {
+      vp.setProperty(i % 2 == 0 ? cut : engrave);
+      vp.moveto(10 * i, 0);
+      vp.lineto(10 * i + 5, 0);
+    }
+    MachineCostModel m = new MachineCostModel(100, 100);
+    m.setPropertySwitchTime(10);
+    VectorOptimizer vo = VectorOptimizer.create(VectorOptimizer.OrderStrategy.NEAREST, m);
+    double before = vo.getCost(vp);
+    VectorPart result = vo.optimize(vp);
+    assertTrue(vo.getCost(result) < before - 50);
+    vo = VectorOptimizer.create(VectorOptimizer.OrderStrategy.TSP_OPTIMIZER, m);
+    assertTrue(vo.getCost(vo.optimize(vp)) < before - 50);
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for DeleteDuplicatePathsOptimizer
+ */
+public class DeleteDuplicatePathsOptimizerTest
+{
+
+  @Test
+  public void testDuplicates()
+  {
+    PowerSpeedFocusProperty cut = new PowerSpeedFocusProperty();
+    VectorPart vp = new VectorPart(cut, 500);
+    //an open path, the same one and the reversed one
+    vp.moveto(0, 0);
+    vp.lineto(10, 0);
+    vp.lineto(10, 10);
+    vp.moveto(0, 0);
+    vp.lineto(10, 0);
+    vp.lineto(10, 10);
+    vp.moveto(10, 10);
+    vp.lineto(10, 0);
+    vp.lineto(0, 0);
+    //a square, rotated and reversed
+    vp.moveto(20, 20);
+    vp.lineto(30, 20);
+    vp.lineto(30, 30);
+    vp.lineto(20, 30);
+    vp.lineto(20, 20);
+    vp.moveto(30, 30);
+    vp.lineto(20, 30);
+    vp.lineto(20, 20);
+    vp.lineto(30, 20);
+    vp.lineto(30, 30);
+    vp.moveto(30, 20);
+    vp.lineto(20, 20);
+    vp.lineto(20, 30);
+    vp.lineto(30, 30);
+    vp.lineto(30, 20);
+    //different paths through the same points
+    vp.moveto(0, 0);
+    vp.lineto(10, 10);
+    vp.lineto(10, 0);
+    vp.moveto(20, 20);
+    vp.lineto(30, 30);
+    vp.lineto(20, 30);
+    vp.lineto(30, 20);
+    vp.lineto(20, 20);
+    assertEquals(24, count(vp, VectorCommand.CmdType.LINETO));
+    assertEquals(12, count(new DeleteDuplicatePathsOptimizer().optimize(vp), VectorCommand.CmdType.LINETO));
+  }
+
+  @Test
+  public void testDifferentProperties()
+  {
+    PowerSpeedFocusProperty engrave = new PowerSpeedFocusProperty();
+    engrave.setPower(50);
+    VectorPart vp = new VectorPart(engrave, 500);
+    vp.moveto(0, 0);
+    vp.lineto(10, 0);
+    vp.setProperty(new PowerSpeedFocusProperty());
+    vp.moveto(10, 0);
+    vp.lineto(0, 0);
+    assertEquals(2, count(new DeleteDuplicatePathsOptimizer().optimize(vp), VectorCommand.CmdType.LINETO));
+  }
+}
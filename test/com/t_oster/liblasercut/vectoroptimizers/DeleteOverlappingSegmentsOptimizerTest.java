@@ -0,0 +1,117 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Random;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for DeleteOverlappingSegmentsOptimizer
+ */
+public class DeleteOverlappingSegmentsOptimizerTest
+{
+
+  private static void rectangle(VectorPart vp, int x1, int y1, int x2, int y2)
+  {
+    vp.moveto(x1, y1);
+    vp.lineto(x2, y1);
+    vp.lineto(x2, y2);
+    vp.lineto(x1, y2);
+    vp.lineto(x1, y1);
+  }
+
+  @Test
+  public void testSharedEdge()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    rectangle(vp, 0, 0, 100, 50);
+    rectangle(vp, 100, 10, 200, 40);
+    //a slightly shifted copy of the top edge
+    vp.moveto(20, 1);
+    vp.lineto(60, 1);
+    assertEquals(600, cutLength(vp), 0.001);
+    VectorPart result = new DeleteOverlappingSegmentsOptimizer().optimize(vp);
+    assertEquals(530, cutLength(result), 0.001);
+    result = new DeleteOverlappingSegmentsOptimizer(0.5).optimize(vp);
+    assertEquals(570, cutLength(result), 0.001);
+  }
+
+  @Test
+  public void testDifferentProperties()
+  {
+    PowerSpeedFocusProperty engrave = new PowerSpeedFocusProperty();
+    engrave.setPower(50);
+    VectorPart vp = new VectorPart(engrave, 500);
+    rectangle(vp, 0, 0, 100, 50);
+    vp.setProperty(new PowerSpeedFocusProperty());
+    rectangle(vp, 0, 0, 100, 50);
+    assertEquals(600, cutLength(new DeleteOverlappingSegmentsOptimizer().optimize(vp)), 0.001);
+  }
+
+  @Test
+  public void testRandomLines()
+  {
+    //random horizontal and vertical segments on a few lines
+    Random r = new Random(7);
+    int lines = 20;
+    int size = 2000;
+    boolean[][] horizontal = new boolean[lines][size];
+    boolean[][] vertical = new boolean[lines][size];
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    for (int i = 0; i < 20000; i++)
+    {
+      int line = r.nextInt(lines);
+      int a = r.nextInt(size);
+      int b = Math.min(size - 1, a + 1 + r.nextInt(50));
+      boolean h = r.nextBoolean();
+      for (int j = a; j < b; j++)
+      {
+        (h ? horizontal : vertical)[line][j] = true;
+      }
+      boolean reverse = r.nextBoolean();
+      int from = reverse ? b : a;
+      int to = reverse ? a : b;
+      if (h)
+      {
+        vp.moveto(from, 100 * line + 5);
+        vp.lineto(to, 100 * line + 5);
+      }
+      else
+      {
+        vp.moveto(100 * line + 5, from);
+        vp.lineto(100 * line + 5, to);
+      }
+    }
+    int expected = 0;
+    for (int line = 0; line < lines; line++)
+    {
+      for (int j = 0; j < size; j++)
+      {
+        expected += (horizontal[line][j] ? 1 : 0) + (vertical[line][j] ? 1 : 0);
+      }
+    }
+    VectorPart result = new DeleteOverlappingSegmentsOptimizer(0.5).optimize(vp);
+    assertEquals(expected, cutLength(result), 0.001);
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for DeleteRedundantCommandsOptimizer
+ */
+public class DeleteRedundantCommandsOptimizerTest
+{
+
+  @Test
+  public void testRedundantCommands()
+  {
+    PowerSpeedFocusProperty a = new PowerSpeedFocusProperty();
+    PowerSpeedFocusProperty equal = new PowerSpeedFocusProperty();
+    PowerSpeedFocusProperty b = new PowerSpeedFocusProperty();
+    b.setPower(50);
+    VectorPart vp = new VectorPart(a, 500);
+    vp.moveto(5, 5);
+    vp.moveto(0, 0);
+    vp.lineto(10, 0);
+    vp.lineto(10, 0);
+    vp.setProperty(equal);
+    vp.lineto(20, 0);
+    vp.lineto(30, 0);
+    vp.lineto(30, 10);
+    vp.moveto(30, 10);
+    vp.lineto(30, 20);
+    vp.setProperty(a);
+    vp.setProperty(b);
+    vp.moveto(100, 100);
+    //a dot
+    vp.lineto(100, 100);
+    vp.arcto(90, 100, Math.PI);
+    vp.setProperty(a);
+    DeleteRedundantCommandsOptimizer vo = new DeleteRedundantCommandsOptimizer();
+    VectorPart result = vo.optimize(vp);
+
+    VectorCommand.CmdType[] types = new VectorCommand.CmdType[]{
+      VectorCommand.CmdType.SETPROPERTY,
+      VectorCommand.CmdType.MOVETO,
+      VectorCommand.CmdType.LINETO,
+      VectorCommand.CmdType.LINETO,
+      VectorCommand.CmdType.SETPROPERTY,
+      VectorCommand.CmdType.MOVETO,
+      VectorCommand.CmdType.LINETO,
+      VectorCommand.CmdType.ARCTO,
+      VectorCommand.CmdType.SETPROPERTY
+    };
+    assertEquals(types.length, result.getCommandCount());
+    for (int i = 0; i < types.length; i++)
+    {
+      assertEquals(types[i], result.getCommandType(i));
+    }
+    assertEquals(30, result.getX(2));
+    assertEquals(0, result.getY(2));
+    assertEquals(20, result.getY(3));
+    assertSame(b, result.getProperty(4));
+    assertEquals(100, result.getX(6));
+    assertEquals(80, result.getX(7));
+    assertSame(a, result.getProperty(8));
+    assertEquals(vp.getCurrentCuttingProperty(), result.getCurrentCuttingProperty());
+    assertEquals(vp.getCommandCount() - result.getCommandCount(), vo.getRemovedCommands());
+  }
+
+  @Test
+  public void testRandom()
+  {
+    Random r = new Random(7);
+    PowerSpeedFocusProperty[] props = new PowerSpeedFocusProperty[3];
+    for (int i = 0; i < props.length; i++)
+    {
+      props[i] = new PowerSpeedFocusProperty();
+      props[i].setPower(10 * i);
+    }
+    VectorPart vp = new VectorPart(props[0], 500);
+    for (int i = 0; i < 100000; i++)
+    {
+      switch (r.nextInt(6))
+      {
+        case 0:
+          vp.setProperty(props[r.nextInt(props.length)]);
+          break;
+        case 1:
+          vp.moveto(r.nextInt(4), r.nextInt(4));
+          break;
+        default:
+          vp.lineto(r.nextInt(4), r.nextInt(4));
+      }
+    }
+    DeleteRedundantCommandsOptimizer vo = new DeleteRedundantCommandsOptimizer();
+    VectorPart result = vo.optimize(vp);
+    assertTrue(result.getCommandCount() < vp.getCommandCount() * 9 / 10);
+    Map<LaserProperty, Double> before = cutLengths(vp);
+    Map<LaserProperty, Double> after = cutLengths(result);
+    for (LaserProperty p : props)
+    {
+      assertEquals(before.get(p), after.get(p), 1e-6);
+    }
+    assertEquals(vp.getCommandCount() - result.getCommandCount(), vo.getRemovedCommands());
+    //nothing left to remove
+    assertEquals(result.getCommandCount(), vo.optimize(result).getCommandCount());
+    assertEquals(0, vo.getRemovedCommands());
+  }
+
+  @Test
+  public void testPipelineStage()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    for (int i = 0; i < 10; i++)
+    {
+      vp.moveto(0, 10 * i);
+      for (int x = 1; x <= 100; x++)
+      {
+        vp.lineto(x, 10 * i);
+      }
+    }
+    VectorOptimizerPipeline pipeline = new VectorOptimizerPipeline();
+    DeleteRedundantCommandsOptimizer vo = new DeleteRedundantCommandsOptimizer();
+    pipeline.addStage(vo);
+    pipeline.addStage(VectorOptimizer.OrderStrategy.NEAREST);
+    VectorPart result = pipeline.optimize(vp);
+    assertEquals(1 + 10 * 2, result.getCommandCount());
+    assertEquals(990, vo.getRemovedCommands());
+    //counted per call
+    pipeline.optimize(vp);
+    assertEquals(990, vo.getRemovedCommands());
+  }
+}
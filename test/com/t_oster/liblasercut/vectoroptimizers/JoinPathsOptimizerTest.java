@@ -0,0 +1,112 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for JoinPathsOptimizer
+ */
+public class JoinPathsOptimizerTest
+{
+
+  /**
+   * adds the segments of the polyline (xs[i], ys[i]) in random order
+   * and direction
+   */
+  private static void exploded(VectorPart vp, Random r, int[] xs, int[] ys)
+  {
+    List<Integer> order = new ArrayList<Integer>();
+    for (int i = 0; i + 1 < xs.length; i++)
+    {
+      order.add(i);
+    }
+    Collections.shuffle(order, r);
+    for (int i : order)
+    {
+      int a = r.nextBoolean() ? i : i + 1;
+      int b = 2 * i + 1 - a;
+      vp.moveto(xs[a], ys[a]);
+      vp.lineto(xs[b], ys[b]);
+    }
+  }
+
+  @Test
+  public void testJoinPolyline()
+  {
+    Random r = new Random(3);
+    int n = 1000;
+    int[] xs = new int[n];
+    int[] ys = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+      xs[i] = i;
+      ys[i] = (i * i) % 97;
+    }
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    exploded(vp, r, xs, ys);
+    assertEquals(n - 1, count(vp, VectorCommand.CmdType.MOVETO));
+    VectorPart result = new JoinPathsOptimizer().optimize(vp);
+    assertEquals(1, count(result, VectorCommand.CmdType.MOVETO));
+    assertEquals(n + 1, result.getCommandCount());
+    assertEquals(TSPOptimizerTest.segments(vp), TSPOptimizerTest.segments(result));
+  }
+
+  @Test
+  public void testJoinLoop()
+  {
+    Random r = new Random(5);
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    exploded(vp, r, new int[]{0, 10, 10, 0, 0}, new int[]{0, 0, 10, 10, 0});
+    //a closed path touching the loop is not joined
+    vp.moveto(10, 10);
+    vp.lineto(20, 10);
+    vp.lineto(20, 20);
+    vp.lineto(10, 10);
+    VectorPart result = new JoinPathsOptimizer().optimize(vp);
+    assertEquals(2, count(result, VectorCommand.CmdType.MOVETO));
+    assertEquals(TSPOptimizerTest.segments(vp), TSPOptimizerTest.segments(result));
+  }
+
+  @Test
+  public void testDifferentProperties()
+  {
+    PowerSpeedFocusProperty engrave = new PowerSpeedFocusProperty();
+    engrave.setPower(50);
+    VectorPart vp = new VectorPart(engrave, 500);
+    vp.moveto(0, 0);
+    vp.lineto(10, 0);
+    vp.setProperty(new PowerSpeedFocusProperty());
+    vp.moveto(10, 0);
+    vp.lineto(20, 0);
+    vp.moveto(30, 0);
+    vp.lineto(20, 0);
+    VectorPart result = new JoinPathsOptimizer().optimize(vp);
+    assertEquals(2, count(result, VectorCommand.CmdType.MOVETO));
+  }
+}
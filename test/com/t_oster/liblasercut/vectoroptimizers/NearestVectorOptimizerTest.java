@@ -0,0 +1,166 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for NearestVectorOptimizer
+ */
+public class NearestVectorOptimizerTest
+{
+
+  /**
+   * Creates count random paths in a square of the given size. Small sizes
+   * produce many paths with equal distances.
+   */
+  static VectorPart randomPart(Random r, int count, int size)
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    for (int i = 0; i < count; i++)
+    {
+      int sx = r.nextInt(size);
+      int sy = r.nextInt(size);
+      vp.moveto(sx, sy);
+      int points = 1 + r.nextInt(4);
+      for (int k = 0; k < points; k++)
+      {
+        vp.lineto(r.nextInt(size), r.nextInt(size));
+      }
+      if (r.nextInt(3) == 0)
+      {
+        vp.lineto(sx, sy);
+      }
+    }
+    return vp;
+  }
+
+  /**
+   * Straightforward greedy tour: always continue with the lowest path
+   * having the nearest start point or (for open paths) end point
+   */
+  static List<int[]> greedy(VectorPart vp)
+  {
+    List<int[]> paths = new ArrayList<int[]>();
+    int[] cur = null;
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      switch (vp.getCommandType(i))
+      {
+        case MOVETO:
+          cur = new int[]{vp.getX(i), vp.getY(i)};
+          paths.add(cur);
+          break;
+        case LINETO:
+          int[] grown = new int[cur.length + 2];
+          System.arraycopy(cur, 0, grown, 0, cur.length);
+          grown[cur.length] = vp.getX(i);
+          grown[cur.length + 1] = vp.getY(i);
+          paths.set(paths.size() - 1, grown);
+          cur = grown;
+          break;
+      }
+    }
+    List<int[]> result = new ArrayList<int[]>();
+    result.add(paths.remove(0));
+    while (!paths.isEmpty())
+    {
+      int[] last = result.get(result.size() - 1);
+      int ex = last[last.length - 2];
+      int ey = last[last.length - 1];
+      int best = -1;
+      boolean invert = false;
+      long bestDistance = Long.MAX_VALUE;
+      for (int i = 0; i < paths.size(); i++)
+      {
+        int[] p = paths.get(i);
+        long d = (long) (p[0] - ex) * (p[0] - ex) + (long) (p[1] - ey) * (p[1] - ey);
+        if (d < bestDistance)
+        {
+          best = i;
+          bestDistance = d;
+          invert = false;
+        }
+        boolean closed = p[0] == p[p.length - 2] && p[1] == p[p.length - 1];
+        d = (long) (p[p.length - 2] - ex) * (p[p.length - 2] - ex) + (long) (p[p.length - 1] - ey) * (p[p.length - 1] - ey);
+        if (!closed && d < bestDistance)
+        {
+          best = i;
+          bestDistance = d;
+          invert = true;
+        }
+      }
+      int[] p = paths.remove(best);
+      if (invert)
+      {
+        int[] inv = new int[p.length];
+        for (int k = 0; k < p.length; k += 2)
+        {
+          inv[k] = p[p.length - 2 - k];
+          inv[k + 1] = p[p.length - 1 - k];
+        }
+        p = inv;
+      }
+      result.add(p);
+    }
+    return result;
+  }
+
+  @Test
+  public void testSameAsGreedySearch()
+  {
+    Random r = new Random(4711);
+    for (int size : new int[]{5, 50, 5000})
+    {
+      VectorPart vp = randomPart(r, 300, size);
+      List<int[]> expected = greedy(vp);
+      VectorPart result = new NearestVectorOptimizer().optimize(vp);
+      int path = -1;
+      int k = 0;
+      for (int i = 0; i < result.getCommandCount(); i++)
+      {
+        switch (result.getCommandType(i))
+        {
+          case MOVETO:
+            path++;
+            k = 0;
+          case LINETO:
+            assertEquals(expected.get(path)[k++], result.getX(i));
+            assertEquals(expected.get(path)[k++], result.getY(i));
+            break;
+        }
+      }
+      assertEquals(expected.size() - 1, path);
+    }
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    //only the initial property is left
+    assertEquals(1, new NearestVectorOptimizer().optimize(vp).getCommandCount());
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Rectangle;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for NestedInnerFirstVectorOptimizer
+ */
+public class NestedInnerFirstVectorOptimizerTest
+{
+
+  private static void polygon(VectorPart vp, int... coords)
+  {
+    vp.moveto(coords[0], coords[1]);
+    for (int i = 2; i < coords.length; i += 2)
+    {
+      vp.lineto(coords[i], coords[i + 1]);
+    }
+    vp.lineto(coords[0], coords[1]);
+  }
+
+  private static void square(VectorPart vp, int x, int y, int size)
+  {
+    polygon(vp, x, y, x + size, y, x + size, y + size, x, y + size);
+  }
+
+  /**
+   * @return the position of each element in the optimized part,
+   * by the lower left corner and width of its bounding box
+   * and its number of points
+   */
+  private static Map<String, Integer> order(VectorPart vp)
+  {
+    VectorOptimizer vo = new NestedInnerFirstVectorOptimizer();
+    List<VectorOptimizer.Element> elements = vo.divide(vo.optimize(vp));
+    Map<String, Integer> result = new HashMap<String, Integer>();
+    for (int i = 0; i < elements.size(); i++)
+    {
+      Rectangle bb = elements.get(i).boundingBox();
+      result.put(bb.getXMin() + "," + bb.getYMin() + "," + (bb.getXMax() - bb.getXMin())
+        + "," + elements.get(i).getPointCount(), i);
+    }
+    return result;
+  }
+
+  @Test
+  public void testEqualBoundingBoxes()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    square(vp, 0, 0, 100);
+    //an octagon with the same bounding box and a square inside
+    polygon(vp, 30, 0, 70, 0, 100, 30, 100, 70, 70, 100, 30, 100, 0, 70, 0, 30);
+    square(vp, 40, 40, 20);
+    //a square between the octagon and the outer square
+    square(vp, 2, 2, 5);
+    Map<String, Integer> order = order(vp);
+    assertEquals(4, order.size());
+    assertTrue(order.get("40,40,20,5") < order.get("0,0,100,9"));
+    assertTrue(order.get("0,0,100,9") < order.get("0,0,100,5"));
+    assertTrue(order.get("2,2,5,5") < order.get("0,0,100,5"));
+  }
+
+  @Test
+  public void testHoleSticksOut()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    square(vp, 0, 0, 100);
+    //a hole going over the border by 2 pixels
+    square(vp, 80, 50, 22);
+    //and an open path inside
+    vp.moveto(10, 10);
+    vp.lineto(20, 20);
+    Map<String, Integer> order = order(vp);
+    assertTrue(order.get("80,50,22,5") < order.get("0,0,100,5"));
+    assertTrue(order.get("10,10,10,2") < order.get("0,0,100,5"));
+  }
+
+  @Test
+  public void testManyParts()
+  {
+    //parts with two holes each, one of them with a hole itself
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    int parts = 100;
+    for (int i = 0; i < parts; i++)
+    {
+      for (int j = 0; j < parts; j++)
+      {
+        square(vp, 100 * i, 100 * j, 90);
+        square(vp, 100 * i + 10, 100 * j + 10, 30);
+        square(vp, 100 * i + 15, 100 * j + 15, 20);
+        square(vp, 100 * i + 50, 100 * j + 50, 30);
+      }
+    }
+    long time = System.currentTimeMillis();
+    Map<String, Integer> order = order(vp);
+    time = System.currentTimeMillis() - time;
+    assertEquals(4 * parts * parts, order.size());
+    for (int i = 0; i < parts; i++)
+    {
+      for (int j = 0; j < parts; j++)
+      {
+        int part = order.get((100 * i) + "," + (100 * j) + ",90,5");
+        int hole = order.get((100 * i + 10) + "," + (100 * j + 10) + ",30,5");
+        assertTrue(order.get((100 * i + 15) + "," + (100 * j + 15) + ",20,5") < hole);
+        assertTrue(hole < part);
+        assertTrue(order.get((100 * i + 50) + "," + (100 * j + 50) + ",30,5") < part);
+      }
+    }
+    assertTrue("took " + time + " ms", time < 10000);
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Util;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for PropertyGroupsOptimizer
+ */
+public class PropertyGroupsOptimizerTest
+{
+
+  private static PowerSpeedFocusProperty[] createProperties(int count)
+  {
+    PowerSpeedFocusProperty[] result = new PowerSpeedFocusProperty[count];
+    for (int i = 0; i < count; i++)
+    {
+      result[i] = new PowerSpeedFocusProperty();
+      result[i].setPower(30 + i);
+    }
+    return result;
+  }
+
+  private static void square(VectorPart vp, int x, int y)
+  {
+    vp.moveto(x, y);
+    vp.lineto(x + 10, y);
+    vp.lineto(x + 10, y + 10);
+    vp.lineto(x, y + 10);
+    vp.lineto(x, y);
+  }
+
+  @Test
+  public void testMixedProperties()
+  {
+    Random r = new Random(2);
+    PowerSpeedFocusProperty[] props = createProperties(4);
+    VectorPart vp = new VectorPart(props[0], Util.inch2mm(1));
+    for (int i = 0; i < 1000; i++)
+    {
+      vp.setProperty(props[r.nextInt(props.length)]);
+      square(vp, r.nextInt(1000), r.nextInt(1000));
+    }
+    MachineCostModel model = new MachineCostModel(100, 100);
+    model.setPropertySwitchTime(5);
+    PropertyGroupsOptimizer vo = new PropertyGroupsOptimizer();
+    vo.setCostModel(model);
+    VectorPart result = vo.optimize(vp);
+    assertEquals(props.length, properties(result).size());
+
+    NearestVectorOptimizer nearest = new NearestVectorOptimizer();
+    nearest.setCostModel(model);
+    assertTrue(vo.getCost(result) < vo.getCost(nearest.optimize(vp)));
+  }
+
+  @Test
+  public void testGroupOrder()
+  {
+    PowerSpeedFocusProperty[] props = createProperties(3);
+    VectorPart vp = new VectorPart(props[0], Util.inch2mm(1));
+    //the groups lie on a line, with the last one in the middle
+    for (int i = 0; i < 10; i++)
+    {
+      vp.setProperty(props[0]);
+      square(vp, 20 * i, 0);
+      vp.setProperty(props[1]);
+      square(vp, 20000 + 20 * i, 0);
+      vp.setProperty(props[2]);
+      square(vp, 10000 + 20 * i, 0);
+    }
+    PropertyGroupsOptimizer vo = new PropertyGroupsOptimizer();
+    List<LaserProperty> order = properties(vo.optimize(vp));
+    assertEquals(3, order.size());
+    assertSame(props[0], order.get(0));
+    assertSame(props[2], order.get(1));
+    assertSame(props[1], order.get(2));
+
+    //e.g. engrave before cut
+    vo.addOrderConstraint(props[1], props[2]);
+    order = properties(vo.optimize(vp));
+    assertSame(props[0], order.get(0));
+    assertSame(props[1], order.get(1));
+    assertSame(props[2], order.get(2));
+
+    vo.clearOrderConstraints();
+    vo.addOrderConstraint(props[2], props[0]);
+    vo.addOrderConstraint(props[1], props[0]);
+    order = properties(vo.optimize(vp));
+    assertSame(props[0], order.get(2));
+  }
+
+  @Test
+  public void testContinueAtPreviousGroup()
+  {
+    PowerSpeedFocusProperty[] props = createProperties(2);
+    VectorPart vp = new VectorPart(props[0], Util.inch2mm(1));
+    square(vp, 0, 0);
+    vp.setProperty(props[1]);
+    square(vp, 1000, 0);
+    square(vp, 100, 0);
+    VectorPart result = new PropertyGroupsOptimizer().optimize(vp);
+    assertEquals(2, properties(result).size());
+    //the second group starts with the square closest to the first one
+    int i = 1;
+    while (result.getCommandType(i) != VectorCommand.CmdType.SETPROPERTY)
+    {
+      i++;
+    }
+    assertEquals(VectorCommand.CmdType.MOVETO, result.getCommandType(i + 1));
+    assertEquals(100, result.getX(i + 1));
+  }
+
+  @Test
+  public void testManyGroups()
+  {
+    Random r = new Random(4);
+    PowerSpeedFocusProperty[] props = createProperties(40);
+    VectorPart vp = new VectorPart(props[0], 500);
+    for (int i = 0; i < 2000; i++)
+    {
+      vp.setProperty(props[r.nextInt(props.length)]);
+      square(vp, r.nextInt(10000), r.nextInt(10000));
+    }
+    PropertyGroupsOptimizer vo = new PropertyGroupsOptimizer();
+    //reverse order of the powers
+    for (int i = 1; i < props.length; i++)
+    {
+      vo.addOrderConstraint(props[i], props[i - 1]);
+    }
+    List<LaserProperty> order = properties(vo.optimize(vp));
+    assertEquals(props.length, order.size());
+    for (int i = 0; i < props.length; i++)
+    {
+      assertSame(props[props.length - 1 - i], order.get(i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testContradictingConstraints()
+  {
+    PowerSpeedFocusProperty[] props = createProperties(2);
+    VectorPart vp = new VectorPart(props[0], 500);
+    square(vp, 0, 0);
+    vp.setProperty(props[1]);
+    square(vp, 100, 0);
+    PropertyGroupsOptimizer vo = new PropertyGroupsOptimizer();
+    vo.addOrderConstraint(props[0], props[1]);
+    vo.addOrderConstraint(props[1], props[0]);
+    vo.optimize(vp);
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for VectorOptimizer.setRotateClosedPaths
+ */
+public class RotateClosedPathsTest
+{
+
+  @Test
+  public void testRotateTo()
+  {
+    VectorOptimizer.Element e = new VectorOptimizer.Element(null, 0, 0);
+    e.lineto(100, 0);
+    e.lineto(100, 100);
+    e.lineto(0, 100);
+    e.lineto(0, 0);
+    //nearest to a vertex
+    e.rotateTo(110, 120);
+    assertEquals(100, e.getStartX());
+    assertEquals(100, e.getStartY());
+    assertEquals(5, e.getPointCount());
+    assertTrue(e.isClosedPath());
+    assertEquals(400, e.getLength(), 0.001);
+    //nearest to the inside of an edge
+    e.invert();
+    e.rotateTo(30, -10);
+    assertEquals(30, e.getStartX());
+    assertEquals(0, e.getStartY());
+    assertEquals(6, e.getPointCount());
+    assertTrue(e.isClosedPath());
+    assertEquals(400, e.getLength(), 0.001);
+    //the direction is kept: (30,0) is followed by (0,0) after the invert
+    assertEquals(0, e.getX(1));
+    assertEquals(0, e.getY(1));
+  }
+
+  /**
+   * @return count small circles with random start points, like a perforation
+   */
+  private static VectorPart circles(int count)
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    Random r = new Random(2);
+    for (int i = 0; i < count; i++)
+    {
+      int cx = r.nextInt(5000);
+      int cy = r.nextInt(5000);
+      int s = r.nextInt(12);
+      for (int k = 0; k <= 12; k++)
+      {
+        double angle = 2 * Math.PI * ((s + k) % 12) / 12;
+        int x = cx + (int) Math.round(60 * Math.cos(angle));
+        int y = cy + (int) Math.round(60 * Math.sin(angle));
+        if (k == 0)
+        {
+          vp.moveto(x, y);
+        }
+        else
+        {
+          vp.lineto(x, y);
+        }
+      }
+    }
+    return vp;
+  }
+
+  @Test
+  public void testLessTravel()
+  {
+    VectorPart vp = circles(1000);
+    VectorOptimizer vo = new NearestVectorOptimizer();
+    double plain = vo.getCost(vo.optimize(vp));
+    vo.setRotateClosedPaths(true);
+    assertTrue(vo.getCost(vo.optimize(vp)) < 0.8 * plain);
+    vo = new TSPOptimizer(500);
+    plain = vo.getCost(vo.optimize(vp));
+    vo.setRotateClosedPaths(true);
+    assertTrue(vo.getCost(vo.optimize(vp)) < 0.9 * plain);
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Util;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for SimplifyPathsOptimizer
+ */
+public class SimplifyPathsOptimizerTest
+{
+
+  private static void circle(VectorPart vp, int cx, int cy, int r, int points)
+  {
+    vp.moveto(cx + r, cy);
+    for (int i = 1; i <= points; i++)
+    {
+      double a = 2 * Math.PI * i / points;
+      vp.lineto(i == points ? cx + r : (int) Math.round(cx + r * Math.cos(a)),
+        i == points ? cy : (int) Math.round(cy + r * Math.sin(a)));
+    }
+  }
+
+  /**
+   * @return the distance of (x, y) from the closest segment of vp
+   */
+  private static double distance(VectorPart vp, double x, double y)
+  {
+    double result = Double.MAX_VALUE;
+    for (int i = 1; i < vp.getCommandCount(); i++)
+    {
+      if (vp.getCommandType(i) != VectorCommand.CmdType.LINETO)
+      {
+        continue;
+      }
+      double ax = vp.getX(i - 1);
+      double ay = vp.getY(i - 1);
+      double dx = vp.getX(i) - ax;
+      double dy = vp.getY(i) - ay;
+      double len = dx * dx + dy * dy;
+      double t = len == 0 ? 0 : Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / len));
+      result = Math.min(result, Math.hypot(x - ax - t * dx, y - ay - t * dy));
+    }
+    return result;
+  }
+
+  @Test
+  public void testStraightLines()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    //a square with a point per pixel and a repeated point
+    vp.moveto(0, 0);
+    for (int i = 1; i <= 100; i++)
+    {
+      vp.lineto(i, 0);
+    }
+    vp.lineto(100, 0);
+    for (int i = 1; i <= 100; i++)
+    {
+      vp.lineto(100, i);
+    }
+    for (int i = 99; i >= 0; i--)
+    {
+      vp.lineto(i, 100);
+    }
+    for (int i = 99; i >= 0; i--)
+    {
+      vp.lineto(0, i);
+    }
+    VectorPart result = new SimplifyPathsOptimizer(0).optimize(vp);
+    assertEquals(4, count(result, VectorCommand.CmdType.LINETO));
+    assertEquals(0, result.getX(1));
+    assertEquals(0, result.getY(1));
+    assertEquals(100, result.getX(2));
+    assertEquals(0, result.getY(2));
+    assertEquals(0, result.getX(result.getCommandCount() - 1));
+    assertEquals(0, result.getY(result.getCommandCount() - 1));
+  }
+
+  @Test
+  public void testTolerance()
+  {
+    double dpi = 1000;
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), dpi);
+    circle(vp, 5000, 5000, 2000, 2000);
+    double tolerance = 0.05;
+    VectorPart result = new SimplifyPathsOptimizer(tolerance).optimize(vp);
+    int lines = count(result, VectorCommand.CmdType.LINETO);
+    assertTrue(lines < 200);
+    assertTrue(lines > 10);
+    double tolPx = Util.mm2px(tolerance, dpi);
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      if (vp.getCommandType(i) != VectorCommand.CmdType.SETPROPERTY)
+      {
+        assertTrue(distance(result, vp.getX(i), vp.getY(i)) <= tolPx + 1e-9);
+      }
+    }
+    //at a lower resolution the circle is bigger, so more points are kept
+    VectorPart low = new VectorPart(new PowerSpeedFocusProperty(), dpi / 4);
+    circle(low, 5000, 5000, 2000, 2000);
+    assertTrue(count(new SimplifyPathsOptimizer(tolerance).optimize(low), VectorCommand.CmdType.LINETO) > lines);
+  }
+
+  @Test
+  public void testParallel()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 1000);
+    for (int i = 0; i < 100; i++)
+    {
+      circle(vp, 1000 * (i % 10), 1000 * (i / 10), 100 + 3 * i, 1000);
+    }
+    SimplifyPathsOptimizer single = new SimplifyPathsOptimizer();
+    single.setThreads(1);
+    SimplifyPathsOptimizer parallel = new SimplifyPathsOptimizer();
+    parallel.setThreads(4);
+    VectorPart a = single.optimize(vp);
+    VectorPart b = parallel.optimize(vp);
+    assertTrue(a.getCommandCount() < vp.getCommandCount() / 2);
+    assertEquals(a.getCommandCount(), b.getCommandCount());
+    for (int i = 0; i < a.getCommandCount(); i++)
+    {
+      assertEquals(a.getCommandType(i), b.getCommandType(i));
+      if (a.getCommandType(i) != VectorCommand.CmdType.SETPROPERTY)
+      {
+        assertEquals(a.getX(i), b.getX(i));
+        assertEquals(a.getY(i), b.getY(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for TSPOptimizer
+ */
+public class TSPOptimizerTest
+{
+
+  /**
+   * @return the length of all moves between the paths
+   */
+  static double travel(VectorPart vp)
+  {
+    double result = 0;
+    int lx = 0;
+    int ly = 0;
+    boolean first = true;
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      switch (vp.getCommandType(i))
+      {
+        case MOVETO:
+          if (!first)
+          {
+            result += Math.hypot(vp.getX(i) - lx, vp.getY(i) - ly);
+          }
+          first = false;
+        case LINETO:
+          lx = vp.getX(i);
+          ly = vp.getY(i);
+          break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return all cut segments with sorted endpoints
+   */
+  static List<String> segments(VectorPart vp)
+  {
+    List<String> result = new ArrayList<String>();
+    int lx = 0;
+    int ly = 0;
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      switch (vp.getCommandType(i))
+      {
+        case LINETO:
+          String a = lx + "," + ly;
+          String b = vp.getX(i) + "," + vp.getY(i);
+          result.add(a.compareTo(b) < 0 ? a + " " + b : b + " " + a);
+        case MOVETO:
+          lx = vp.getX(i);
+          ly = vp.getY(i);
+          break;
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  @Test
+  public void testImprovesNearestTour()
+  {
+    Random r = new Random(42);
+    for (int count : new int[]{1, 2, 3, 10, 500})
+    {
+      VectorPart vp = NearestVectorOptimizerTest.randomPart(r, count, 10000);
+      VectorPart nearest = new NearestVectorOptimizer().optimize(vp);
+      VectorPart tsp = new TSPOptimizer(5000).optimize(vp);
+      assertEquals(segments(vp), segments(tsp));
+      assertTrue(travel(tsp) <= travel(nearest) + 1e-6);
+      if (count == 500)
+      {
+        assertTrue(travel(tsp) < 0.95 * travel(nearest));
+      }
+    }
+  }
+
+  @Test
+  public void testTimeLimit()
+  {
+    VectorPart vp = NearestVectorOptimizerTest.randomPart(new Random(1), 20000, 100000);
+    long start = System.currentTimeMillis();
+    VectorPart tsp = new TSPOptimizer(200).optimize(vp);
+    assertTrue(System.currentTimeMillis() - start < 5000);
+    assertEquals(segments(vp), segments(tsp));
+  }
+}
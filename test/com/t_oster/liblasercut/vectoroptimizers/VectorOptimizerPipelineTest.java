@@ -0,0 +1,186 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.Random;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for VectorOptimizerPipeline
+ */
+public class VectorOptimizerPipelineTest
+{
+
+  /**
+   * 100 staircases of 10 steps, each cut twice as single segments
+   * in both directions
+   */
+  private static VectorPart createStairs(PowerSpeedFocusProperty[] props)
+  {
+    Random r = new Random(5);
+    VectorPart vp = new VectorPart(props[0], 500);
+    for (int copy = 0; copy < 2; copy++)
+    {
+      for (int s = 0; s < 100; s++)
+      {
+        vp.setProperty(props[s % props.length]);
+        int x0 = 1000 * (s % 10);
+        int y0 = 1000 * (s / 10);
+        for (int i = 0; i < 20; i++)
+        {
+          int ax = x0 + 20 * ((i + 1) / 2);
+          int ay = y0 + 20 * (i / 2);
+          int bx = x0 + 20 * ((i + 2) / 2);
+          int by = y0 + 20 * ((i + 1) / 2);
+          if (r.nextBoolean())
+          {
+            vp.moveto(ax, ay);
+            vp.lineto(bx, by);
+          }
+          else
+          {
+            vp.moveto(bx, by);
+            vp.lineto(ax, ay);
+          }
+        }
+      }
+    }
+    return vp;
+  }
+
+  @Test
+  public void testStages()
+  {
+    PowerSpeedFocusProperty p = new PowerSpeedFocusProperty();
+    VectorPart vp = createStairs(new PowerSpeedFocusProperty[]{p});
+    VectorOptimizerPipeline vo = new VectorOptimizerPipeline(
+      VectorOptimizer.OrderStrategy.DELETE_DUPLICATE_PATHS,
+      VectorOptimizer.OrderStrategy.JOIN_PATHS,
+      VectorOptimizer.OrderStrategy.TSP_OPTIMIZER);
+    assertEquals(3, vo.getStages().size());
+    VectorPart result = vo.optimize(vp);
+    assertEquals(100, count(result, VectorCommand.CmdType.MOVETO));
+    assertEquals(2000, count(result, VectorCommand.CmdType.LINETO));
+    long[] times = vo.getStageTimes();
+    assertEquals(3, times.length);
+    for (long t : times)
+    {
+      assertTrue(t > 0);
+    }
+
+    //the same as running the optimizers one after the other
+    VectorPart chained = vp;
+    for (VectorOptimizer.OrderStrategy s : new VectorOptimizer.OrderStrategy[]{
+      VectorOptimizer.OrderStrategy.DELETE_DUPLICATE_PATHS,
+      VectorOptimizer.OrderStrategy.JOIN_PATHS,
+      VectorOptimizer.OrderStrategy.TSP_OPTIMIZER})
+    {
+      chained = VectorOptimizer.create(s).optimize(chained);
+    }
+    assertEquals(count(chained, VectorCommand.CmdType.LINETO), count(result, VectorCommand.CmdType.LINETO));
+    assertEquals(count(chained, VectorCommand.CmdType.MOVETO), count(result, VectorCommand.CmdType.MOVETO));
+  }
+
+  @Test
+  public void testGroupByProperty()
+  {
+    PowerSpeedFocusProperty[] props = new PowerSpeedFocusProperty[3];
+    for (int i = 0; i < props.length; i++)
+    {
+      props[i] = new PowerSpeedFocusProperty();
+      props[i].setPower(30 + 10 * i);
+    }
+    VectorPart vp = createStairs(props);
+    VectorOptimizerPipeline vo = new VectorOptimizerPipeline(
+      VectorOptimizer.OrderStrategy.DELETE_DUPLICATE_PATHS,
+      VectorOptimizer.OrderStrategy.JOIN_PATHS,
+      VectorOptimizer.OrderStrategy.NEAREST);
+    vo.setGroupByProperty(true);
+    vo.setThreads(3);
+    VectorPart result = vo.optimize(vp);
+    assertEquals(100, count(result, VectorCommand.CmdType.MOVETO));
+    assertEquals(2000, count(result, VectorCommand.CmdType.LINETO));
+    //the initial property and one switch per further group
+    assertEquals(3, count(result, VectorCommand.CmdType.SETPROPERTY));
+    assertEquals(3, vo.getStageTimes().length);
+  }
+
+  /**
+   * A distance cost model counting how often moves are priced
+   */
+  private static class CountingCostModel implements CostModel
+  {
+
+    int moves = 0;
+
+    @Override
+    public synchronized double getTravelCost(double dx, double dy)
+    {
+      moves++;
+      return Math.hypot(dx, dy);
+    }
+
+    @Override
+    public double getPropertySwitchCost(LaserProperty from, LaserProperty to)
+    {
+      return 0;
+    }
+
+    @Override
+    public double getPierceCost(LaserProperty property)
+    {
+      return 0;
+    }
+  }
+
+  @Test
+  public void testStageSettings()
+  {
+    VectorPart vp = createStairs(new PowerSpeedFocusProperty[]{new PowerSpeedFocusProperty()});
+    CountingCostModel own = new CountingCostModel();
+    CountingCostModel inherited = new CountingCostModel();
+    VectorOptimizer stage = new NearestVectorOptimizer();
+    stage.setCostModel(own);
+    VectorOptimizerPipeline vo = new VectorOptimizerPipeline();
+    vo.addStage(stage);
+    vo.setCostModel(inherited);
+    vo.optimize(vp);
+    //the cost model of the stage is kept
+    assertTrue(own.moves > 0);
+    assertEquals(0, inherited.moves);
+    assertSame(own, stage.getCostModel());
+
+    //a stage without settings uses the ones of the pipeline, but is not changed
+    stage = new NearestVectorOptimizer();
+    vo = new VectorOptimizerPipeline();
+    vo.addStage(stage);
+    vo.setCostModel(inherited);
+    vo.setRotateClosedPaths(true);
+    vo.optimize(vp);
+    assertTrue(inherited.moves > 0);
+    assertTrue(stage.getCostModel() instanceof DistanceCostModel);
+    assertFalse(stage.isRotateClosedPaths());
+  }
+}
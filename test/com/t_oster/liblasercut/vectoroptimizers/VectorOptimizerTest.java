@@ -0,0 +1,178 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.PowerSpeedFocusProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import com.t_oster.liblasercut.platform.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static com.t_oster.liblasercut.vectoroptimizers.VectorPartStats.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for VectorOptimizer.Element
+ */
+public class VectorOptimizerTest
+{
+
+  @Test
+  public void testElement()
+  {
+    VectorOptimizer.Element e = new VectorOptimizer.Element(null, 0, 0);
+    e.lineto(30, 0);
+    e.lineto(30, 40);
+    assertEquals(3, e.getPointCount());
+    assertEquals(70, e.getLength(), 0.001);
+    assertFalse(e.isClosedPath());
+    e.invert();
+    assertEquals(30, e.getStartX());
+    assertEquals(40, e.getStartY());
+    assertEquals(0, e.getEndX());
+    assertEquals(0, e.getEndY());
+    Rectangle bb = e.boundingBox();
+    assertEquals(0, bb.getXMin());
+    assertEquals(30, bb.getXMax());
+    assertEquals(40, bb.getYMax());
+    //appending to an inverted element continues in the current direction
+    e.lineto(30, 40);
+    assertTrue(e.isClosedPath());
+    assertEquals(120, e.getLength(), 0.001);
+    assertEquals(30, e.getX(1));
+    assertEquals(0, e.getY(1));
+    assertEquals(0, e.getX(2));
+  }
+
+  @Test
+  public void testDivideAndOptimize()
+  {
+    VectorPart vp = NearestVectorOptimizerTest.randomPart(new Random(1), 100, 1000);
+    VectorOptimizer vo = new NearestVectorOptimizer();
+    List<VectorOptimizer.Element> elements = vo.divide(vp);
+    assertEquals(100, elements.size());
+    assertEquals(TSPOptimizerTest.segments(vp), TSPOptimizerTest.segments(vo.optimize(vp)));
+  }
+
+  @Test
+  public void testGroupByProperty()
+  {
+    PowerSpeedFocusProperty[] props = new PowerSpeedFocusProperty[3];
+    for (int i = 0; i < props.length; i++)
+    {
+      props[i] = new PowerSpeedFocusProperty();
+      props[i].setPower(10 * (i + 1));
+    }
+    Random r = new Random(3);
+    VectorPart vp = new VectorPart(props[1], 500);
+    for (int i = 0; i < 300; i++)
+    {
+      vp.setProperty(props[r.nextInt(3)]);
+      vp.moveto(r.nextInt(1000), r.nextInt(1000));
+      vp.lineto(r.nextInt(1000), r.nextInt(1000));
+    }
+    VectorOptimizer vo = new TSPOptimizer(100);
+    vo.setGroupByProperty(true);
+    VectorPart result = vo.optimize(vp);
+    assertEquals(TSPOptimizerTest.segments(vp), TSPOptimizerTest.segments(result));
+    //groups are in the order their properties first appear
+    assertEquals(vo.divide(vp).get(0).prop, result.getProperty(0));
+    assertEquals(3, properties(result).size());
+
+    vo.setGroupOrder(Arrays.<LaserProperty>asList(props[2], props[0]));
+    result = vo.optimize(vp);
+    assertEquals(TSPOptimizerTest.segments(vp), TSPOptimizerTest.segments(result));
+    assertEquals(props[2], result.getProperty(0));
+    assertEquals(Arrays.<LaserProperty>asList(props[2], props[0], props[1]), properties(result));
+  }
+
+  @Test
+  public void testOptimizeGroupOrder()
+  {
+    PowerSpeedFocusProperty far = new PowerSpeedFocusProperty();
+    far.setPower(50);
+    VectorPart vp = new VectorPart(far, 500);
+    vp.moveto(1000, 1000);
+    vp.lineto(1010, 1000);
+    vp.setProperty(new PowerSpeedFocusProperty());
+    vp.moveto(10, 0);
+    vp.lineto(20, 0);
+    VectorOptimizer vo = new NearestVectorOptimizer();
+    vo.setGroupByProperty(true);
+    assertEquals(far, vo.optimize(vp).getProperty(0));
+    vo.setOptimizeGroupOrder(true);
+    assertEquals(new PowerSpeedFocusProperty(), vo.optimize(vp).getProperty(0));
+    //the group order and the order constraints are kept when optimizing
+    vo.setGroupOrder(Arrays.<LaserProperty>asList(far, new PowerSpeedFocusProperty()));
+    assertEquals(far, vo.optimize(vp).getProperty(0));
+    vo.setGroupOrder(null);
+    vo.addOrderConstraint(far, new PowerSpeedFocusProperty());
+    assertEquals(far, vo.optimize(vp).getProperty(0));
+    //and without optimizing
+    vo.setOptimizeGroupOrder(false);
+    vo.clearOrderConstraints();
+    vo.addOrderConstraint(new PowerSpeedFocusProperty(), far);
+    assertEquals(new PowerSpeedFocusProperty(), vo.optimize(vp).getProperty(0));
+  }
+
+  @Test
+  public void testCurves()
+  {
+    VectorPart vp = new VectorPart(new PowerSpeedFocusProperty(), 500);
+    vp.moveto(0, 0);
+    vp.lineto(5, 0);
+    vp.moveto(1000, 0);
+    vp.lineto(1000, 500);
+    vp.arcto(500, 500, Math.PI);
+    vp.curveto(0, 300, 100, 100, 10, 0);
+    //the curved path ends next to the line, so it is cut backwards
+    VectorPart result = new NearestVectorOptimizer().optimize(vp);
+    VectorCommand.CmdType[] types = new VectorCommand.CmdType[]{
+      VectorCommand.CmdType.SETPROPERTY,
+      VectorCommand.CmdType.MOVETO,
+      VectorCommand.CmdType.LINETO,
+      VectorCommand.CmdType.MOVETO,
+      VectorCommand.CmdType.CURVETO,
+      VectorCommand.CmdType.ARCTO,
+      VectorCommand.CmdType.LINETO
+    };
+    assertEquals(types.length, result.getCommandCount());
+    for (int i = 0; i < types.length; i++)
+    {
+      assertEquals(types[i], result.getCommandType(i));
+    }
+    assertEquals(10, result.getX(3));
+    assertEquals(100, result.getControlX(4, 0));
+    assertEquals(300, result.getControlY(4, 1));
+    assertEquals(0, result.getX(4));
+    assertEquals(500, result.getY(4));
+    assertEquals(-Math.PI, result.getSweep(5), 1e-9);
+    assertEquals(1000, result.getX(5));
+    assertEquals(500, result.getY(5));
+    assertEquals(0, result.getY(6));
+
+    //and so do paths in a pipeline which are not joined with others
+    VectorPart simplified = new VectorOptimizerPipeline(VectorOptimizer.OrderStrategy.JOIN_PATHS,
+      VectorOptimizer.OrderStrategy.NEAREST).optimize(vp);
+    assertEquals(1, count(simplified, VectorCommand.CmdType.CURVETO));
+  }
+}
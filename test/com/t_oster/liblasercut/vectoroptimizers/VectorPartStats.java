@@ -0,0 +1,108 @@
+/**
+ * This file is part of LibLaserCut.
+ * Copyright (C) 2011 - 2014 Thomas Oster <mail@thomas-oster.de>
+ *
+ * LibLaserCut is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LibLaserCut is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with LibLaserCut. If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package com.t_oster.liblasercut.vectoroptimizers;
+
+import com.t_oster.liblasercut.LaserProperty;
+import com.t_oster.liblasercut.VectorCommand;
+import com.t_oster.liblasercut.VectorPart;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts and measures the commands of a VectorPart, to compare the
+ * results of the optimizers
+ */
+class VectorPartStats
+{
+
+  /**
+   * @return the number of commands of the given type
+   */
+  static int count(VectorPart vp, VectorCommand.CmdType type)
+  {
+    int result = 0;
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      if (vp.getCommandType(i) == type)
+      {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the properties of the part in the order they are set,
+   * including the initial one
+   */
+  static List<LaserProperty> properties(VectorPart vp)
+  {
+    List<LaserProperty> result = new ArrayList<LaserProperty>();
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      if (vp.getCommandType(i) == VectorCommand.CmdType.SETPROPERTY)
+      {
+        result.add(vp.getProperty(i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the length of the lines cut with each property
+   */
+  static Map<LaserProperty, Double> cutLengths(VectorPart vp)
+  {
+    Map<LaserProperty, Double> result = new HashMap<LaserProperty, Double>();
+    LaserProperty prop = null;
+    int x = 0;
+    int y = 0;
+    for (int i = 0; i < vp.getCommandCount(); i++)
+    {
+      if (vp.getCommandType(i) == VectorCommand.CmdType.SETPROPERTY)
+      {
+        prop = vp.getProperty(i);
+        continue;
+      }
+      if (vp.getCommandType(i) == VectorCommand.CmdType.LINETO)
+      {
+        Double l = result.get(prop);
+        result.put(prop, (l == null ? 0 : l) + Math.hypot(vp.getX(i) - x, vp.getY(i) - y));
+      }
+      x = vp.getX(i);
+      y = vp.getY(i);
+    }
+    return result;
+  }
+
+  /**
+   * @return the total length of all lines
+   */
+  static double cutLength(VectorPart vp)
+  {
+    double result = 0;
+    for (double l : cutLengths(vp).values())
+    {
+      result += l;
+    }
+    return result;
+  }
+}